@@ -0,0 +1,95 @@
+package com.github.nikolay_martynov.java_coding_problems;
+
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Compares {@link Chapter5.FrozenSuffixTree} with mutable {@link Chapter5.SuffixTree} layouts
+ * by build time, retained heap and latency of {@link Set#contains}.
+ * <p>
+ * Words are random base 36 numbers. Misses are words with an extra character so that lookups walk whole words.
+ * Run with {@code ./gradlew :lib:frozenSuffixTreeBenchmark} or pass the number of words as the argument.
+ */
+public final class FrozenSuffixTreeBenchmark {
+
+    private static final int DEFAULT_WORD_COUNT = 300_000;
+
+    private FrozenSuffixTreeBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        int wordCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_WORD_COUNT;
+        Random random = new Random(1);
+        String[] words = new String[wordCount];
+        String[] misses = new String[wordCount];
+        for (int i = 0; i < wordCount; i++) {
+            words[i] = Long.toString(random.nextLong() & 0xFF_FFFF_FFFFL, 36);
+            misses[i] = words[i] + '~';
+        }
+        System.out.println(wordCount + " words");
+        System.out.printf("%-32s %10s %10s %14s %14s%n", "", "build ms", "heap MB", "hit ns", "miss ns");
+        Chapter5.SuffixTree compact = null;
+        for (String layout : new String[]{"hash map nodes", "compact nodes", "compact path compressed nodes"}) {
+            Supplier<Chapter5.SuffixTree> build = () -> {
+                Chapter5.SuffixTree.Builder builder = Chapter5.SuffixTree.builder();
+                if (!layout.equals("hash map nodes")) {
+                    builder.compact();
+                }
+                if (layout.equals("compact path compressed nodes")) {
+                    builder.pathCompressed();
+                }
+                Chapter5.SuffixTree tree = builder.build();
+                for (String word : words) {
+                    tree.add(word);
+                }
+                return tree;
+            };
+            Chapter5.SuffixTree tree = measure(layout, build, words, misses);
+            if (layout.equals("compact nodes")) {
+                compact = tree;
+            }
+        }
+        Chapter5.SuffixTree source = compact;
+        measure("frozen from compact nodes", source::freeze, words, misses);
+        System.out.println("(" + Timing.sink() + ")");
+    }
+
+    /**
+     * Builds a set, measures it and prints a row.
+     *
+     * @param name   Name of the row.
+     * @param build  Creates a new set with the words.
+     * @param words  Words in the set.
+     * @param misses Words that are not in the set.
+     * @param <T>    Type of the set.
+     * @return The last built set.
+     */
+    private static <T extends Set<String>> T measure(String name, Supplier<T> build,
+                                                                String[] words, String[] misses) {
+        Object[] kept = new Object[1];
+        long buildNanos = Timing.nanosOfFastestCall(() -> {
+            kept[0] = null;
+            kept[0] = build.get();
+            return 1;
+        });
+        kept[0] = null;
+        long retainedBytes = Timing.retainedBytes(() -> kept[0] = build.get());
+        @SuppressWarnings("unchecked")
+        T set = (T) kept[0];
+        int[] next = new int[1];
+        double hitNanos = Timing.nanosPerCall(() -> {
+            int i = next[0];
+            next[0] = i + 1 == words.length ? 0 : i + 1;
+            return set.contains(words[i]) ? 1 : 0;
+        });
+        double missNanos = Timing.nanosPerCall(() -> {
+            int i = next[0];
+            next[0] = i + 1 == misses.length ? 0 : i + 1;
+            return set.contains(misses[i]) ? 1 : 0;
+        });
+        System.out.printf("%-32s %10.1f %10.1f %14.1f %14.1f%n", name,
+                buildNanos / 1e6, retainedBytes / (1024.0 * 1024.0), hitNanos, missNanos);
+        return set;
+    }
+}
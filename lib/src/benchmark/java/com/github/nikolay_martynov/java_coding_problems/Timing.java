@@ -0,0 +1,104 @@
+package com.github.nikolay_martynov.java_coding_problems;
+
+import java.util.function.IntSupplier;
+
+/**
+ * Times operations for benchmark harnesses.
+ * <p>
+ * An operation is called in loops for a second so that it is compiled by the JIT compiler
+ * and the number of calls per loop is tuned to take a round of 100 ms.
+ * Then a few rounds are timed and the fastest one is taken.
+ */
+final class Timing {
+
+    private static final long WARM_UP_NANOS = 1_000_000_000L;
+
+    private static final long ROUND_NANOS = 100_000_000L;
+
+    private static final int ROUNDS = 5;
+
+    /**
+     * Keeps results of operations so that the JIT compiler cannot drop the calls.
+     */
+    private static int sink;
+
+    private Timing() {
+    }
+
+    /**
+     * Measures the time of an operation.
+     *
+     * @param operation Operation to call. Its result is consumed so that the work is not eliminated.
+     * @return Nanoseconds per call in the fastest round.
+     */
+    static double nanosPerCall(IntSupplier operation) {
+        int calls = 1;
+        long warmUpNanos = 0;
+        while (warmUpNanos < WARM_UP_NANOS) {
+            long elapsed = run(operation, calls);
+            warmUpNanos += elapsed;
+            // Aim at a round per batch while the code gets compiled and faster.
+            calls = (int) Math.max(1, Math.min(Math.min(calls * 2L, Integer.MAX_VALUE),
+                    calls * ROUND_NANOS / Math.max(elapsed, 1)));
+        }
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            best = Math.min(best, run(operation, calls));
+        }
+        return (double) best / calls;
+    }
+
+    /**
+     * Measures the time of an operation that is too slow to be repeated many times.
+     *
+     * @param operation Operation to call.
+     * @return Nanoseconds of the fastest of a few calls.
+     */
+    static long nanosOfFastestCall(IntSupplier operation) {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            best = Math.min(best, run(operation, 1));
+        }
+        return best;
+    }
+
+    /**
+     * Estimates the heap retained by objects that an operation creates.
+     *
+     * @param operation Operation that creates objects and keeps them reachable after the call.
+     * @return Bytes by which the used heap has grown after the call and a garbage collection.
+     */
+    static long retainedBytes(Runnable operation) {
+        long before = usedHeap();
+        operation.run();
+        return usedHeap() - before;
+    }
+
+    /**
+     * Makes results of operations visible so that the JIT compiler cannot drop the calls.
+     *
+     * @return Combination of the results.
+     */
+    static int sink() {
+        return sink;
+    }
+
+    private static long run(IntSupplier operation, int calls) {
+        int result = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            result += operation.getAsInt();
+        }
+        long elapsed = System.nanoTime() - start;
+        sink += result;
+        return elapsed;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,47 @@
+package com.github.nikolay_martynov.java_coding_problems;
+
+import java.util.Arrays;
+
+/**
+ * Times character class scans of {@link Chapter1} across input lengths.
+ * <p>
+ * Scans use {@code Chapter1.VectorKernels} only when the JVM is started with
+ * {@code --add-modules jdk.incubator.vector}, so the vector kernels are compared with the scalar code
+ * by running this class with and without the module:
+ * {@code ./gradlew :lib:scalarKernelsBenchmark :lib:vectorKernelsBenchmark}.
+ */
+public final class VectorKernelsBenchmark {
+
+    private static final int[] LENGTHS = {16, 64, 256, 4096, 65536};
+
+    private VectorKernelsBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        boolean vectorModule = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+        System.out.println("jdk.incubator.vector " + (vectorModule ? "added" : "not added")
+                + ", ns/call for input lengths " + Arrays.toString(LENGTHS));
+        for (int length : LENGTHS) {
+            String digits = repeat("0123456789", length);
+            String text = repeat("Modern car\t", length);
+            String noWhitespace = repeat("Moderncar", length);
+            print("isDigitsOnly", length,
+                    Timing.nanosPerCall(() -> Chapter1.isDigitsOnly(digits) ? 1 : 0));
+            print("countVowelsAndConsonants", length,
+                    Timing.nanosPerCall(() -> Chapter1.countVowelsAndConsonants(text).vowels()));
+            print("deleteWhitespace of text", length,
+                    Timing.nanosPerCall(() -> Chapter1.deleteWhitespace(text).length()));
+            print("deleteWhitespace without whitespace", length,
+                    Timing.nanosPerCall(() -> Chapter1.deleteWhitespace(noWhitespace).length()));
+        }
+        System.out.println("(" + Timing.sink() + ")");
+    }
+
+    private static String repeat(String s, int length) {
+        return s.repeat(length / s.length() + 1).substring(0, length);
+    }
+
+    private static void print(String operation, int length, double nanos) {
+        System.out.printf("%-36s %6d %12.1f%n", operation, length, nanos);
+    }
+}
@@ -1,8 +1,29 @@
 package com.github.nikolay_martynov.java_coding_problems;
 
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class Chapter1 {
 
@@ -19,11 +40,7 @@ public class Chapter1 {
         if (source == null || source.length() == 0) {
             return Collections.emptyMap();
         }
-        Map<Character, Integer> counts = new HashMap<>();
-        for (int i = 0; i < source.length(); i++) {
-            counts.compute(source.charAt(i), (k, v) -> v == null ? 1 : ++v);
-        }
-        return counts;
+        return CharHistogram.of(source).toMap();
     }
 
     /**
@@ -39,11 +56,357 @@ public class Chapter1 {
         if (source == null || source.length() == 0) {
             return Optional.empty();
         }
-        LinkedHashMap<Character, Boolean> seenOnce = new LinkedHashMap<>();
-        for (int i = 0; i < source.length(); i++) {
-            seenOnce.compute(source.charAt(i), (k, v) -> v == null);
+        int first = new NonRepeatingSymbolTracker().accept(source).first();
+        return first < 0 ? Optional.empty() : Optional.of((char) first);
+    }
+
+    /**
+     * First non-repeating symbol of a stream of characters that is updated as characters arrive.
+     * <p>
+     * Each symbol gets a slot with its count from a small open addressing table as it arrives,
+     * so memory grows with the number of different symbols rather than with the range of characters
+     * and tracking a short text allocates only a few hundred bytes.
+     * <p>
+     * Without a window, slots of symbols seen exactly once are kept in an intrusive doubly linked list
+     * in the order of their occurrence, so accepting a character and finding the first non-repeating symbol
+     * take constant time.
+     * <p>
+     * With a window, symbols are counted among the last window characters only.
+     * A symbol could become non-repeating again when its earlier occurrence leaves the window,
+     * and then it goes somewhere in the middle of the order. So slots of non-repeating symbols are kept in
+     * a binary heap by their positions instead, which takes logarithmic time in the number of such symbols.
+     * <p>
+     * This implementation is not thread safe.
+     * <p>
+     * Task 2.
+     */
+    public static final class NonRepeatingSymbolTracker {
+
+        private static final int NONE = -1;
+        private static final int INITIAL_SLOTS = 8;
+        private static final int LATIN1_SIZE = 256;
+        /**
+         * Number of characters after which slots of Latin-1 symbols are indexed directly.
+         */
+        private static final long LATIN1_INDEX_POSITION = 1024;
+
+        /**
+         * Open addressing table of slots plus one with 0 in empty entries.
+         */
+        private int[] table = new int[INITIAL_SLOTS * 2];
+        /**
+         * Symbols by their slots in the order of arrival.
+         */
+        private char[] symbols = new char[INITIAL_SLOTS];
+        private int slots;
+        /**
+         * Slots plus one of Latin-1 symbols with 0 for symbols without slots
+         * or null until the text is long enough to pay for the table.
+         */
+        private int[] latin1Slots;
+        /**
+         * Numbers of occurrences of symbols of slots.
+         * Without a window, it stops at 2 since it only matters whether a symbol repeated.
+         */
+        private int[] counts = new int[INITIAL_SLOTS];
+        /**
+         * Links between slots in the list of non-repeating symbols or null if there is a window.
+         */
+        private int[] previous;
+        private int[] next;
+        private int head = NONE;
+        private int tail = NONE;
+        /**
+         * Slots of the last window characters by their positions modulo the window or null if there is no window.
+         */
+        private final int[] recent;
+        /**
+         * Positions of the latest occurrences of symbols of slots or null if there is no window.
+         */
+        private long[] latestPositions;
+        /**
+         * Slots of non-repeating symbols in a heap ordered by their positions or null if there is no window.
+         */
+        private int[] heap;
+        private int[] heapIndexes;
+        private int heapSize;
+        private long position;
+
+        /**
+         * Creates a tracker that remembers all characters.
+         */
+        public NonRepeatingSymbolTracker() {
+            recent = null;
+            previous = new int[INITIAL_SLOTS];
+            next = new int[INITIAL_SLOTS];
+        }
+
+        /**
+         * Creates a tracker that only looks at recent characters.
+         *
+         * @param window Number of the most recent characters where to find a non-repeating symbol.
+         * @throws IllegalArgumentException If the window is not positive.
+         */
+        public NonRepeatingSymbolTracker(int window) {
+            if (window <= 0) {
+                throw new IllegalArgumentException("window must be positive but was " + window);
+            }
+            recent = new int[window];
+            latestPositions = new long[INITIAL_SLOTS];
+            heap = new int[INITIAL_SLOTS];
+            heapIndexes = new int[INITIAL_SLOTS];
+        }
+
+        /**
+         * Accepts the next character.
+         *
+         * @param c Character that has arrived.
+         * @return This tracker.
+         */
+        public NonRepeatingSymbolTracker accept(char c) {
+            if (position == LATIN1_INDEX_POSITION) {
+                indexLatin1();
+            }
+            int slot = slot(c);
+            if (recent == null) {
+                int count = counts[slot];
+                if (count == 0) {
+                    counts[slot] = 1;
+                    link(slot);
+                } else if (count == 1) {
+                    counts[slot] = 2;
+                    unlink(slot);
+                }
+            } else {
+                int index = (int) (position % recent.length);
+                if (position >= recent.length) {
+                    int expired = recent[index];
+                    int count = --counts[expired];
+                    if (count == 0) {
+                        remove(expired);
+                    } else if (count == 1) {
+                        // The occurrence that is left is the latest one.
+                        insert(expired);
+                    }
+                }
+                recent[index] = slot;
+                int count = ++counts[slot];
+                if (count == 2) {
+                    remove(slot);
+                }
+                latestPositions[slot] = position;
+                if (count == 1) {
+                    insert(slot);
+                }
+            }
+            position++;
+            return this;
+        }
+
+        /**
+         * Accepts next characters from a part of an array.
+         *
+         * @param characters Array with the characters.
+         * @param from       Position of the first character.
+         * @param to         Position after the last character.
+         * @return This tracker.
+         * @throws NullPointerException      If the array is null.
+         * @throws IndexOutOfBoundsException If the positions are out of bounds of the array.
+         */
+        public NonRepeatingSymbolTracker accept(char[] characters, int from, int to) {
+            Objects.checkFromToIndex(from, to, characters.length);
+            for (int i = from; i < to; i++) {
+                accept(characters[i]);
+            }
+            return this;
+        }
+
+        /**
+         * Accepts next characters from a sequence.
+         *
+         * @param characters Sequence with the characters.
+         * @return This tracker.
+         * @throws NullPointerException If the sequence is null.
+         */
+        public NonRepeatingSymbolTracker accept(CharSequence characters) {
+            for (int i = 0; i < characters.length(); i++) {
+                accept(characters.charAt(i));
+            }
+            return this;
+        }
+
+        /**
+         * Provides the first non-repeating symbol among characters accepted so far or in the window.
+         *
+         * @return The earliest symbol seen exactly once or -1 if there is none.
+         */
+        public int first() {
+            int slot = recent == null ? head : heapSize == 0 ? NONE : heap[0];
+            return slot == NONE ? -1 : symbols[slot];
+        }
+
+        /**
+         * Provides the number of accepted characters.
+         *
+         * @return Number of characters accepted so far.
+         */
+        public long position() {
+            return position;
+        }
+
+        private int slot(char c) {
+            if (c < LATIN1_SIZE && latin1Slots != null) {
+                int entry = latin1Slots[c];
+                if (entry != 0) {
+                    return entry - 1;
+                }
+            }
+            int mask = table.length - 1;
+            int index = hash(c) & mask;
+            for (int entry = table[index]; entry != 0; entry = table[index]) {
+                if (symbols[entry - 1] == c) {
+                    return entry - 1;
+                }
+                index = (index + 1) & mask;
+            }
+            if (slots == symbols.length) {
+                growSlots();
+            }
+            int slot = slots++;
+            symbols[slot] = c;
+            table[index] = slot + 1;
+            if (c < LATIN1_SIZE && latin1Slots != null) {
+                latin1Slots[c] = slot + 1;
+            }
+            if (slots * 2 > table.length) {
+                rehash();
+            }
+            return slot;
+        }
+
+        private void indexLatin1() {
+            latin1Slots = new int[LATIN1_SIZE];
+            for (int slot = 0; slot < slots; slot++) {
+                if (symbols[slot] < LATIN1_SIZE) {
+                    latin1Slots[symbols[slot]] = slot + 1;
+                }
+            }
+        }
+
+        private void rehash() {
+            table = new int[table.length * 2];
+            int mask = table.length - 1;
+            for (int slot = 0; slot < slots; slot++) {
+                int index = hash(symbols[slot]) & mask;
+                while (table[index] != 0) {
+                    index = (index + 1) & mask;
+                }
+                table[index] = slot + 1;
+            }
+        }
+
+        private void growSlots() {
+            int capacity = symbols.length * 2;
+            symbols = Arrays.copyOf(symbols, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            if (recent == null) {
+                previous = Arrays.copyOf(previous, capacity);
+                next = Arrays.copyOf(next, capacity);
+            } else {
+                latestPositions = Arrays.copyOf(latestPositions, capacity);
+                heap = Arrays.copyOf(heap, capacity);
+                heapIndexes = Arrays.copyOf(heapIndexes, capacity);
+            }
+        }
+
+        private static int hash(char c) {
+            // Scripts occupy consecutive ranges so spread neighbouring characters.
+            return c * 0x9E3779B1 >>> 15;
+        }
+
+        private void link(int slot) {
+            previous[slot] = tail;
+            next[slot] = NONE;
+            if (tail == NONE) {
+                head = slot;
+            } else {
+                next[tail] = slot;
+            }
+            tail = slot;
+        }
+
+        private void unlink(int slot) {
+            int before = previous[slot];
+            int after = next[slot];
+            if (before == NONE) {
+                head = after;
+            } else {
+                next[before] = after;
+            }
+            if (after == NONE) {
+                tail = before;
+            } else {
+                previous[after] = before;
+            }
+        }
+
+        private void insert(int slot) {
+            siftUp(heapSize++, slot);
+        }
+
+        private void remove(int slot) {
+            int index = heapIndexes[slot];
+            int last = heap[--heapSize];
+            if (index == heapSize) {
+                return;
+            }
+            if (index > 0 && latestPositions[last] < latestPositions[heap[(index - 1) / 2]]) {
+                siftUp(index, last);
+            } else {
+                siftDown(index, last);
+            }
+        }
+
+        private void siftUp(int index, int slot) {
+            long key = latestPositions[slot];
+            while (index > 0) {
+                int parent = (index - 1) / 2;
+                if (latestPositions[heap[parent]] <= key) {
+                    break;
+                }
+                place(index, heap[parent]);
+                index = parent;
+            }
+            place(index, slot);
+        }
+
+        private void siftDown(int index, int slot) {
+            long key = latestPositions[slot];
+            for (int child = index * 2 + 1; child < heapSize; child = index * 2 + 1) {
+                if (child + 1 < heapSize && latestPositions[heap[child + 1]] < latestPositions[heap[child]]) {
+                    child++;
+                }
+                if (key <= latestPositions[heap[child]]) {
+                    break;
+                }
+                place(index, heap[child]);
+                index = child;
+            }
+            place(index, slot);
+        }
+
+        private void place(int index, int slot) {
+            heap[index] = slot;
+            heapIndexes[slot] = index;
+        }
+
+        @Override
+        public String toString() {
+            int first = first();
+            return "NonRepeatingSymbolTracker[position=" + position
+                    + (recent == null ? "" : ", window=" + recent.length)
+                    + ", first=" + (first < 0 ? "none" : String.valueOf((char) first)) + "]";
         }
-        return seenOnce.entrySet().stream().filter(Map.Entry::getValue).map(Map.Entry::getKey).findFirst();
     }
 
     /**
@@ -67,21 +430,129 @@ public class Chapter1 {
         if (source == null || source.isEmpty()) {
             return source;
         }
-        StringBuilder result = new StringBuilder(source.length());
-        int wordStart = 0;
-        while (wordStart < source.length()) {
-            for (; wordStart < source.length() && !Character.isLetter(source.charAt(wordStart)); wordStart++) {
-                result.append(source.charAt(wordStart));
+        char[] result = source.toCharArray();
+        reverseLettersInWords(result, 0, result.length);
+        return new String(result);
+    }
+
+    /**
+     * Reverses letters in words of a range of an array in place.
+     *
+     * @param chars Array where to reverse letters in words.
+     * @param from  Position of the first character of the range.
+     * @param to    Position after the last character of the range.
+     * @throws NullPointerException      If the array is null.
+     * @throws IndexOutOfBoundsException If the range is out of the array.
+     * @see #reverseLettersInWords(String)
+     */
+    public static void reverseLettersInWords(char[] chars, int from, int to) {
+        Objects.checkFromToIndex(from, to, chars.length);
+        int i = from;
+        while (i < to) {
+            while (i < to && !isLetter(chars[i])) {
+                i++;
+            }
+            int wordStart = i;
+            while (i < to && isLetter(chars[i])) {
+                i++;
+            }
+            for (int left = wordStart, right = i - 1; left < right; left++, right--) {
+                char tmp = chars[left];
+                chars[left] = chars[right];
+                chars[right] = tmp;
+            }
+        }
+    }
+
+    /**
+     * Reverses letters in words of a range of Latin-1 characters in place.
+     *
+     * @param latin1 Array of Latin-1 characters where to reverse letters in words.
+     * @param from   Position of the first character of the range.
+     * @param to     Position after the last character of the range.
+     * @throws NullPointerException      If the array is null.
+     * @throws IndexOutOfBoundsException If the range is out of the array.
+     * @see #reverseLettersInWords(String)
+     */
+    public static void reverseLettersInWords(byte[] latin1, int from, int to) {
+        Objects.checkFromToIndex(from, to, latin1.length);
+        int i = from;
+        while (i < to) {
+            while (i < to && !isLetter(latin1[i] & 0xFF)) {
+                i++;
+            }
+            int wordStart = i;
+            while (i < to && isLetter(latin1[i] & 0xFF)) {
+                i++;
+            }
+            for (int left = wordStart, right = i - 1; left < right; left++, right--) {
+                byte tmp = latin1[left];
+                latin1[left] = latin1[right];
+                latin1[right] = tmp;
+            }
+        }
+    }
+
+    /**
+     * Reverses letters in words of a range of a sequence into an array.
+     * <p>
+     * The range is copied at once and then words are reversed in the array,
+     * so the array could also be the one behind the sequence.
+     *
+     * @param source Sequence where to reverse letters in words.
+     * @param from   Position of the first character of the range.
+     * @param to     Position after the last character of the range.
+     * @param target Array where to put the result.
+     * @param offset Position in the array where to put the result.
+     * @return Number of characters written which is the length of the range.
+     * @throws NullPointerException      If the sequence or the array is null.
+     * @throws IndexOutOfBoundsException If the range is out of the sequence or the result does not fit into the array.
+     * @see #reverseLettersInWords(String)
+     */
+    public static int reverseLettersInWords(CharSequence source, int from, int to, char[] target, int offset) {
+        Objects.checkFromToIndex(from, to, source.length());
+        Objects.checkFromIndexSize(offset, to - from, target.length);
+        getChars(source, from, to, target, offset);
+        reverseLettersInWords(target, offset, offset + to - from);
+        return to - from;
+    }
+
+    /**
+     * Reverses letters in words of a range of a sequence and appends the result.
+     * <p>
+     * A {@link CharBuffer} backed by an array is written directly.
+     * Other targets receive characters between words in bulk and letters of words one by one.
+     *
+     * @param source Sequence where to reverse letters in words.
+     * @param from   Position of the first character of the range.
+     * @param to     Position after the last character of the range.
+     * @param target Where to append the result.
+     * @throws NullPointerException      If the sequence or the target is null.
+     * @throws IndexOutOfBoundsException If the range is out of the sequence.
+     * @throws BufferOverflowException   If the result does not fit into a buffer.
+     * @throws IOException               If the target fails to append.
+     * @see #reverseLettersInWords(String)
+     */
+    public static void reverseLettersInWords(CharSequence source, int from, int to, Appendable target) throws IOException {
+        Objects.checkFromToIndex(from, to, source.length());
+        if (transformIntoArray(source, from, to, target, Chapter1::reverseLettersInWords)) {
+            return;
+        }
+        int i = from;
+        while (i < to) {
+            int wordStart = i;
+            while (wordStart < to && !isLetter(source.charAt(wordStart))) {
+                wordStart++;
             }
-            int wordEnd = wordStart;
-            for (; wordEnd < source.length() && Character.isLetter(source.charAt(wordEnd)); wordEnd++) {
+            target.append(source, i, wordStart);
+            i = wordStart;
+            while (i < to && isLetter(source.charAt(i))) {
+                i++;
             }
-            for (int letter = wordEnd - 1; letter >= wordStart; letter--) {
-                result.append(source.charAt(letter));
+            for (int letter = i - 1; letter >= wordStart; letter--) {
+                target.append(source.charAt(letter));
             }
-            wordStart = wordEnd;
         }
-        return result.toString();
     }
 
     /**
@@ -107,31 +578,150 @@ public class Chapter1 {
         if (source == null || source.isEmpty()) {
             return source;
         }
-        StringBuilder result = new StringBuilder(source.length());
-        int leftWordStart = 0;
-        int rightWordEnd = source.length() - 1;
-        while (leftWordStart < source.length()) {
-            for (; leftWordStart < source.length() && Character.isWhitespace(source.charAt(leftWordStart)); leftWordStart++) {
-                result.append(source.charAt(leftWordStart));
+        char[] result = new char[source.length()];
+        reverseWords(source, 0, result.length, result, 0);
+        return new String(result);
+    }
+
+    /**
+     * Reverses words of a range of a sequence into an array.
+     * <p>
+     * Whitespaces and words are copied in bulk.
+     *
+     * @param source Sequence which words to reverse.
+     * @param from   Position of the first character of the range.
+     * @param to     Position after the last character of the range.
+     * @param target Array where to put the result. It must not overlap with the sequence.
+     * @param offset Position in the array where to put the result.
+     * @return Number of characters written which is the length of the range.
+     * @throws NullPointerException      If the sequence or the array is null.
+     * @throws IndexOutOfBoundsException If the range is out of the sequence or the result does not fit into the array.
+     * @see #reverseWords(String)
+     */
+    public static int reverseWords(CharSequence source, int from, int to, char[] target, int offset) {
+        Objects.checkFromToIndex(from, to, source.length());
+        Objects.checkFromIndexSize(offset, to - from, target.length);
+        int written = offset;
+        int leftWordStart = from;
+        int rightWordEnd = to;
+        while (leftWordStart < to) {
+            int whitespaceStart = leftWordStart;
+            while (leftWordStart < to && isWhitespace(source.charAt(leftWordStart))) {
+                leftWordStart++;
+            }
+            getChars(source, whitespaceStart, leftWordStart, target, written);
+            written += leftWordStart - whitespaceStart;
+            if (leftWordStart == to) {
+                break;
+            }
+            while (isWhitespace(source.charAt(rightWordEnd - 1))) {
+                rightWordEnd--;
+            }
+            int rightWordStart = rightWordEnd - 1;
+            while (rightWordStart > from && !isWhitespace(source.charAt(rightWordStart - 1))) {
+                rightWordStart--;
+            }
+            getChars(source, rightWordStart, rightWordEnd, target, written);
+            written += rightWordEnd - rightWordStart;
+            rightWordEnd = rightWordStart;
+            while (leftWordStart < to && !isWhitespace(source.charAt(leftWordStart))) {
+                leftWordStart++;
+            }
+        }
+        return written - offset;
+    }
+
+    /**
+     * Reverses words of a range of Latin-1 characters into another array.
+     *
+     * @param latin1 Array of Latin-1 characters which words to reverse.
+     * @param from   Position of the first character of the range.
+     * @param to     Position after the last character of the range.
+     * @param target Array where to put the result. It must not overlap with the range.
+     * @param offset Position in the array where to put the result.
+     * @return Number of characters written which is the length of the range.
+     * @throws NullPointerException      If an array is null.
+     * @throws IndexOutOfBoundsException If the range is out of the array or the result does not fit into the target.
+     * @see #reverseWords(String)
+     */
+    public static int reverseWords(byte[] latin1, int from, int to, byte[] target, int offset) {
+        Objects.checkFromToIndex(from, to, latin1.length);
+        Objects.checkFromIndexSize(offset, to - from, target.length);
+        int written = offset;
+        int leftWordStart = from;
+        int rightWordEnd = to;
+        while (leftWordStart < to) {
+            int whitespaceStart = leftWordStart;
+            while (leftWordStart < to && isWhitespace(latin1[leftWordStart] & 0xFF)) {
+                leftWordStart++;
             }
-            if (leftWordStart == source.length()) {
+            System.arraycopy(latin1, whitespaceStart, target, written, leftWordStart - whitespaceStart);
+            written += leftWordStart - whitespaceStart;
+            if (leftWordStart == to) {
                 break;
             }
-            for (; rightWordEnd >= 0 && Character.isWhitespace(source.charAt(rightWordEnd)); rightWordEnd--) {
+            while (isWhitespace(latin1[rightWordEnd - 1] & 0xFF)) {
+                rightWordEnd--;
+            }
+            int rightWordStart = rightWordEnd - 1;
+            while (rightWordStart > from && !isWhitespace(latin1[rightWordStart - 1] & 0xFF)) {
+                rightWordStart--;
+            }
+            System.arraycopy(latin1, rightWordStart, target, written, rightWordEnd - rightWordStart);
+            written += rightWordEnd - rightWordStart;
+            rightWordEnd = rightWordStart;
+            while (leftWordStart < to && !isWhitespace(latin1[leftWordStart] & 0xFF)) {
+                leftWordStart++;
+            }
+        }
+        return written - offset;
+    }
+
+    /**
+     * Reverses words of a range of a sequence and appends the result.
+     * <p>
+     * A {@link CharBuffer} backed by an array is written directly.
+     * Other targets receive whitespaces and words in bulk.
+     *
+     * @param source Sequence which words to reverse.
+     * @param from   Position of the first character of the range.
+     * @param to     Position after the last character of the range.
+     * @param target Where to append the result. It must not overlap with the sequence.
+     * @throws NullPointerException      If the sequence or the target is null.
+     * @throws IndexOutOfBoundsException If the range is out of the sequence.
+     * @throws BufferOverflowException   If the result does not fit into a buffer.
+     * @throws IOException               If the target fails to append.
+     * @see #reverseWords(String)
+     */
+    public static void reverseWords(CharSequence source, int from, int to, Appendable target) throws IOException {
+        Objects.checkFromToIndex(from, to, source.length());
+        if (transformIntoArray(source, from, to, target, Chapter1::reverseWords)) {
+            return;
+        }
+        int leftWordStart = from;
+        int rightWordEnd = to;
+        while (leftWordStart < to) {
+            int whitespaceStart = leftWordStart;
+            while (leftWordStart < to && isWhitespace(source.charAt(leftWordStart))) {
+                leftWordStart++;
+            }
+            target.append(source, whitespaceStart, leftWordStart);
+            if (leftWordStart == to) {
+                break;
             }
-            int rightWordStart = rightWordEnd;
-            for (; rightWordStart >= 0 && !Character.isWhitespace(source.charAt(rightWordStart)); rightWordStart--) {
+            while (isWhitespace(source.charAt(rightWordEnd - 1))) {
+                rightWordEnd--;
             }
-            for (int letter = rightWordStart + 1; letter <= rightWordEnd; letter++) {
-                result.append(source.charAt(letter));
+            int rightWordStart = rightWordEnd - 1;
+            while (rightWordStart > from && !isWhitespace(source.charAt(rightWordStart - 1))) {
+                rightWordStart--;
             }
+            target.append(source, rightWordStart, rightWordEnd);
             rightWordEnd = rightWordStart;
-            int leftWordEnd = leftWordStart;
-            for (; leftWordEnd < source.length() && !Character.isWhitespace(source.charAt(leftWordEnd)); leftWordEnd++) {
+            while (leftWordStart < to && !isWhitespace(source.charAt(leftWordStart))) {
+                leftWordStart++;
             }
-            leftWordStart = leftWordEnd;
         }
-        return result.toString();
     }
 
     /**
@@ -147,6 +737,9 @@ public class Chapter1 {
         if (source == null || source.isEmpty()) {
             return false;
         }
+        if (VECTOR_KERNELS && source.length() >= VECTOR_MIN_LENGTH) {
+            return VectorKernels.isDigitsOnly(source);
+        }
         for (int i = 0; i < source.length(); i++) {
             if (!Character.isDigit(source.charAt(i))) {
                 return false;
@@ -179,15 +772,15 @@ public class Chapter1 {
      * Task 5.
      */
     static public VowelsAndConsonants countVowelsAndConsonants(String source) {
+        if (VECTOR_KERNELS && source != null && source.length() >= VECTOR_MIN_LENGTH) {
+            return VectorKernels.countVowelsAndConsonants(source);
+        }
         int vowels = 0;
         int consonants = 0;
         for (int i = 0; source != null && i < source.length(); i++) {
-            char c = Character.toLowerCase(source.charAt(i));
-            if (VOWELS.contains(c)) {
-                vowels++;
-            } else if (CONSONANTS.contains(c)) {
-                consonants++;
-            }
+            int classes = classes(source.charAt(i));
+            vowels += classes & VOWEL;
+            consonants += (classes & CONSONANT) >>> 1;
         }
         return new VowelsAndConsonants(vowels, consonants);
     }
@@ -205,84 +798,498 @@ public class Chapter1 {
         if (source == null || source.isEmpty()) {
             return "";
         }
-        StringBuilder result = new StringBuilder(source.length());
-        for (int i = 0; i < source.length(); i++) {
-            char c = source.charAt(i);
-            if (!Character.isWhitespace(c)) {
-                result.append(c);
-            }
+        char[] result = source.toCharArray();
+        return new String(result, 0, deleteWhitespace(result, 0, result.length));
+    }
+
+    /**
+     * Deletes whitespaces from a range of an array in place.
+     * <p>
+     * Characters before the first whitespace are left untouched.
+     *
+     * @param chars Array from which to delete whitespaces.
+     * @param from  Position of the first character of the range.
+     * @param to    Position after the last character of the range.
+     * @return Number of characters left at the beginning of the range.
+     * @throws NullPointerException      If the array is null.
+     * @throws IndexOutOfBoundsException If the range is out of the array.
+     * @see #deleteWhitespace(String)
+     */
+    public static int deleteWhitespace(char[] chars, int from, int to) {
+        Objects.checkFromToIndex(from, to, chars.length);
+        int i = from;
+        if (VECTOR_KERNELS && to - from >= VECTOR_MIN_LENGTH) {
+            i = VectorKernels.indexOfWhitespace(chars, from, to);
+        }
+        while (i < to && !isWhitespace(chars[i])) {
+            i++;
+        }
+        // Every character is written and the position advances past non-whitespaces only,
+        // which has no branches to mispredict at short words.
+        int written = i;
+        for (; i < to; i++) {
+            char c = chars[i];
+            chars[written] = c;
+            written += isWhitespace(c) ? 0 : 1;
         }
-        return result.toString();
+        return written - from;
     }
 
     /**
-     * Generates all permutations of a given string.
+     * Deletes whitespaces from a range of Latin-1 characters in place.
      *
-     * @param source String from which to generate permutations.
-     * @return Iterator that returns all (not only unique) permutations of a given string or returns nothing
-     * if the given string is null or empty.
+     * @param latin1 Array of Latin-1 characters from which to delete whitespaces.
+     * @param from   Position of the first character of the range.
+     * @param to     Position after the last character of the range.
+     * @return Number of characters left at the beginning of the range.
+     * @throws NullPointerException      If the array is null.
+     * @throws IndexOutOfBoundsException If the range is out of the array.
+     * @see #deleteWhitespace(String)
+     */
+    public static int deleteWhitespace(byte[] latin1, int from, int to) {
+        Objects.checkFromToIndex(from, to, latin1.length);
+        int i = from;
+        while (i < to && !isWhitespace(latin1[i] & 0xFF)) {
+            i++;
+        }
+        // Every character is written and the position advances past non-whitespaces only,
+        // which has no branches to mispredict at short words.
+        int written = i;
+        for (; i < to; i++) {
+            byte c = latin1[i];
+            latin1[written] = c;
+            written += isWhitespace(c & 0xFF) ? 0 : 1;
+        }
+        return written - from;
+    }
+
+    /**
+     * Deletes whitespaces from a range of a sequence into an array.
      * <p>
-     * Task 10.
+     * The range is copied at once and then whitespaces are deleted in the array,
+     * so the array could also be the one behind the sequence.
+     *
+     * @param source Sequence from which to delete whitespaces.
+     * @param from   Position of the first character of the range.
+     * @param to     Position after the last character of the range.
+     * @param target Array where to put the result. It must have room for the whole range.
+     * @param offset Position in the array where to put the result.
+     * @return Number of characters written.
+     * @throws NullPointerException      If the sequence or the array is null.
+     * @throws IndexOutOfBoundsException If the range is out of the sequence or does not fit into the array.
+     * @see #deleteWhitespace(String)
      */
-    public static Iterator<String> generatePermutations(String source) {
-        if (source == null || source.isEmpty()) {
-            return new Iterator<String>() {
-                @Override
-                public boolean hasNext() {
-                    return false;
-                }
+    public static int deleteWhitespace(CharSequence source, int from, int to, char[] target, int offset) {
+        Objects.checkFromToIndex(from, to, source.length());
+        Objects.checkFromIndexSize(offset, to - from, target.length);
+        getChars(source, from, to, target, offset);
+        return deleteWhitespace(target, offset, offset + to - from);
+    }
 
-                @Override
-                public String next() {
-                    throw new NoSuchElementException("No permutations for null or empty string");
-                }
-            };
+    /**
+     * Deletes whitespaces from a range of a sequence and appends the result.
+     * <p>
+     * A {@link CharBuffer} backed by an array is written directly.
+     * Other targets receive runs of characters between whitespaces in bulk.
+     *
+     * @param source Sequence from which to delete whitespaces.
+     * @param from   Position of the first character of the range.
+     * @param to     Position after the last character of the range.
+     * @param target Where to append the result.
+     * @throws NullPointerException      If the sequence or the target is null.
+     * @throws IndexOutOfBoundsException If the range is out of the sequence.
+     * @throws BufferOverflowException   If a buffer has no room for the whole range.
+     * @throws IOException               If the target fails to append.
+     * @see #deleteWhitespace(String)
+     */
+    public static void deleteWhitespace(CharSequence source, int from, int to, Appendable target) throws IOException {
+        Objects.checkFromToIndex(from, to, source.length());
+        if (transformIntoArray(source, from, to, target, Chapter1::deleteWhitespace)) {
+            return;
         }
-        return new Iterator<String>() {
-            /**
-             * We can take all permutations of 0123...(source.length()-1)
-             * and treat number in each position as an index in the source string.
-             * Then we can re-compose each permutation of the original string from those indexes.
-             *
-             * Each indexes[i] contains a character position in the source string
-             * that should be used in the i-th position of the current permutation.
-             * Means, permutation.charAt(i)==source.charAt(indexes[i]).
-             *
-             * We'll generate permutations of indexes in lexicographical order.
-             * The first permutation would be 0123...(source.length()-1) - this is just a copy of the source string.
-             * The last permutation would be (source.length()-1)...3210.
-             */
-            final int[] indexes;
+        int i = from;
+        while (i < to) {
+            int runStart = i;
+            while (i < to && !isWhitespace(source.charAt(i))) {
+                i++;
+            }
+            target.append(source, runStart, i);
+            while (i < to && isWhitespace(source.charAt(i))) {
+                i++;
+            }
+        }
+    }
 
-            /**
-             * Indicates if we have already returned the last permutation or not yet.
-             *
-             * Reminder: last permutation corresponds to (source.length()-1)...3210 indexes since we use
-             * lexicographical order.
-             */
-            boolean hasMore;
+    /**
+     * Latin-1 characters that are letters as per {@link Character#isLetter}.
+     */
+    private static final boolean[] LATIN1_LETTERS = new boolean[256];
+    /**
+     * Latin-1 characters that are whitespaces as per {@link Character#isWhitespace}.
+     */
+    private static final boolean[] LATIN1_WHITESPACES = new boolean[256];
+    /**
+     * Class of characters counted as vowels by {@link #countVowelsAndConsonants}.
+     */
+    private static final int VOWEL = 1;
+    /**
+     * Class of characters counted as consonants by {@link #countVowelsAndConsonants}.
+     */
+    private static final int CONSONANT = 2;
+    /**
+     * Class of characters that are not digits as per {@link Character#isDigit}.
+     */
+    private static final int NON_DIGIT = 4;
+    /**
+     * Classes of Latin-1 characters as combinations of {@link #VOWEL}, {@link #CONSONANT} and {@link #NON_DIGIT}.
+     */
+    private static final byte[] LATIN1_CLASSES = new byte[256];
 
-            {
-                // Reminder: first permutation is 0123...(source.length()-1) - the same as source string.
-                indexes = new int[source.length()];
-                for (int i = 0; i < source.length(); i++) {
-                    indexes[i] = i;
-                }
-                // We've already covered the case with an empty string, so we always have at least one permutation
-                // in the beginning - the original string itself.
-                // Even when it is a single character.
-                hasMore = true;
-            }
+    static {
+        for (int c = 0; c < 256; c++) {
+            LATIN1_LETTERS[c] = Character.isLetter(c);
+            LATIN1_WHITESPACES[c] = Character.isWhitespace(c);
+            LATIN1_CLASSES[c] = (byte) classify((char) c);
+        }
+    }
 
-            @Override
-            public boolean hasNext() {
-                return hasMore;
-            }
+    /**
+     * Checks if a character is a letter looking Latin-1 characters up in a table.
+     *
+     * @param c Character to check.
+     * @return Same as {@link Character#isLetter(int)}.
+     */
+    private static boolean isLetter(int c) {
+        return c < LATIN1_LETTERS.length ? LATIN1_LETTERS[c] : Character.isLetter(c);
+    }
 
-            @Override
-            public String next() {
-                if (!hasNext()) {
-                    throw new NoSuchElementException("No more permutations");
+    /**
+     * Checks if a character is a whitespace looking Latin-1 characters up in a table.
+     *
+     * @param c Character to check.
+     * @return Same as {@link Character#isWhitespace(int)}.
+     */
+    private static boolean isWhitespace(int c) {
+        return c < LATIN1_WHITESPACES.length ? LATIN1_WHITESPACES[c] : Character.isWhitespace(c);
+    }
+
+    /**
+     * Classifies a character looking Latin-1 characters up in a table.
+     *
+     * @param c Character to classify.
+     * @return Combination of {@link #VOWEL}, {@link #CONSONANT} and {@link #NON_DIGIT}.
+     */
+    private static int classes(char c) {
+        return c < LATIN1_CLASSES.length ? LATIN1_CLASSES[c] : classify(c);
+    }
+
+    private static int classify(char c) {
+        // Some characters beyond ASCII, like the Kelvin sign, are lower cased to latin letters.
+        char lower = Character.toLowerCase(c);
+        int kind = VOWELS.contains(lower) ? VOWEL : CONSONANTS.contains(lower) ? CONSONANT : 0;
+        return kind | (Character.isDigit(c) ? 0 : NON_DIGIT);
+    }
+
+    /**
+     * Transformation of a range of a sequence into an array.
+     */
+    private interface ArrayTransform {
+
+        /**
+         * Transforms a range of a sequence into an array.
+         *
+         * @param source Sequence to transform.
+         * @param from   Position of the first character of the range.
+         * @param to     Position after the last character of the range.
+         * @param target Array where to put the result.
+         * @param offset Position in the array where to put the result.
+         * @return Number of characters written.
+         */
+        int apply(CharSequence source, int from, int to, char[] target, int offset);
+    }
+
+    /**
+     * Transforms a range of a sequence directly into the array behind a buffer.
+     *
+     * @param source    Sequence to transform.
+     * @param from      Position of the first character of the range.
+     * @param to        Position after the last character of the range.
+     * @param target    Where to append the result.
+     * @param transform Transformation which writes at most as many characters as there are in the range.
+     * @return false if the target is not a buffer backed by an array and nothing was done.
+     * @throws BufferOverflowException If the buffer has no room for the whole range.
+     */
+    private static boolean transformIntoArray(CharSequence source, int from, int to, Appendable target,
+                                              ArrayTransform transform) {
+        if (!(target instanceof CharBuffer buffer) || !buffer.hasArray()) {
+            return false;
+        }
+        if (buffer.remaining() < to - from) {
+            throw new BufferOverflowException();
+        }
+        int written = transform.apply(source, from, to, buffer.array(), buffer.arrayOffset() + buffer.position());
+        buffer.position(buffer.position() + written);
+        return true;
+    }
+
+    /**
+     * Copies a range of a sequence into an array in bulk where the sequence allows that.
+     *
+     * @param source Sequence to copy from.
+     * @param from   Position of the first character of the range.
+     * @param to     Position after the last character of the range.
+     * @param target Array where to copy.
+     * @param offset Position in the array where to copy.
+     */
+    private static void getChars(CharSequence source, int from, int to, char[] target, int offset) {
+        if (source instanceof String string) {
+            string.getChars(from, to, target, offset);
+        } else if (source instanceof StringBuilder builder) {
+            builder.getChars(from, to, target, offset);
+        } else if (source instanceof CharBuffer buffer && buffer.hasArray()) {
+            System.arraycopy(buffer.array(), buffer.arrayOffset() + buffer.position() + from, target, offset, to - from);
+        } else {
+            for (int i = from; i < to; i++) {
+                target[offset + i - from] = source.charAt(i);
+            }
+        }
+    }
+
+    /**
+     * Whether character class scans use {@link VectorKernels}.
+     * <p>
+     * The incubator module is only resolved when the application is started with
+     * {@code --add-modules jdk.incubator.vector}, otherwise the scans stay scalar.
+     */
+    private static final boolean VECTOR_KERNELS =
+            ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent() && VectorKernels.isUseful();
+
+    /**
+     * Length from which character class scans are vectorized.
+     */
+    private static final int VECTOR_MIN_LENGTH = 64;
+
+    /**
+     * Character class scans with the Vector API that classify a whole vector of characters at once.
+     * <p>
+     * Latin-1 characters are classified by comparisons of vectors.
+     * A vector that has other characters is classified by the same scalar code as in the rest of the class,
+     * so results are the same as without vectors.
+     * <p>
+     * Must only be used when {@link #VECTOR_KERNELS} is true.
+     */
+    static final class VectorKernels {
+
+        private static final VectorSpecies<Short> CHARS = ShortVector.SPECIES_PREFERRED;
+        private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+        /**
+         * Number of characters of a string that are copied into an array at once.
+         */
+        private static final int CHUNK = 512;
+
+        private VectorKernels() {
+        }
+
+        /**
+         * Checks if vectors are actually supported by the processor rather than emulated.
+         *
+         * @return true if a vector holds at least 8 characters.
+         */
+        static boolean isUseful() {
+            return CHARS.length() >= 8;
+        }
+
+        /**
+         * Checks if a string contains only digits.
+         *
+         * @param source String to check.
+         * @return Same as {@link Chapter1#isDigitsOnly(String)} for a non-empty string.
+         */
+        static boolean isDigitsOnly(String source) {
+            char[] chunk = new char[Math.min(source.length(), CHUNK)];
+            for (int start = 0; start < source.length(); start += chunk.length) {
+                int length = Math.min(chunk.length, source.length() - start);
+                source.getChars(start, start + length, chunk, 0);
+                int i = 0;
+                for (int bound = CHARS.loopBound(length); i < bound; i += CHARS.length()) {
+                    ShortVector v = ShortVector.fromCharArray(CHARS, chunk, i);
+                    // Only '0'..'9' are digits among Latin-1 characters.
+                    if (v.sub((short) '0').compare(VectorOperators.UNSIGNED_GE, 10).anyTrue()
+                            && !isDigitsOnly(chunk, i, i + CHARS.length())) {
+                        return false;
+                    }
+                }
+                if (!isDigitsOnly(chunk, i, length)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Finds the first whitespace in a range of an array.
+         *
+         * @param chars Array where to look for a whitespace.
+         * @param from  Position of the first character of the range.
+         * @param to    Position after the last character of the range.
+         * @return Position of the first whitespace as per {@link Character#isWhitespace} or {@code to} if there is none.
+         */
+        static int indexOfWhitespace(char[] chars, int from, int to) {
+            int i = from;
+            for (int bound = from + CHARS.loopBound(to - from); i < bound; i += CHARS.length()) {
+                ShortVector v = ShortVector.fromCharArray(CHARS, chars, i);
+                // Latin-1 whitespaces are 0x09..0x0D, 0x1C..0x1F and 0x20.
+                if (v.sub((short) 0x09).compare(VectorOperators.UNSIGNED_LT, 5)
+                        .or(v.sub((short) 0x1C).compare(VectorOperators.UNSIGNED_LT, 5))
+                        .or(v.compare(VectorOperators.UNSIGNED_GE, 0x100))
+                        .anyTrue()) {
+                    break;
+                }
+            }
+            while (i < to && !isWhitespace(chars[i])) {
+                i++;
+            }
+            return i;
+        }
+
+        private static boolean isDigitsOnly(char[] chars, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (!Character.isDigit(chars[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Counts vowels and consonants in a string.
+         *
+         * @param source String where to count vowels and consonants.
+         * @return Same as {@link Chapter1#countVowelsAndConsonants(String)}.
+         */
+        static VowelsAndConsonants countVowelsAndConsonants(String source) {
+            char[] chunk = new char[Math.min(source.length(), CHUNK)];
+            int vowels = 0;
+            int consonants = 0;
+            for (int start = 0; start < source.length(); start += chunk.length) {
+                int length = Math.min(chunk.length, source.length() - start);
+                source.getChars(start, start + length, chunk, 0);
+                int i = 0;
+                for (int bound = CHARS.loopBound(length); i < bound; i += CHARS.length()) {
+                    ShortVector v = ShortVector.fromCharArray(CHARS, chunk, i);
+                    if (v.compare(VectorOperators.UNSIGNED_GE, 0x100).anyTrue()) {
+                        int vowelsAndConsonants = countVowelsAndConsonants(chunk, i, i + CHARS.length());
+                        vowels += vowelsAndConsonants >>> 16;
+                        consonants += vowelsAndConsonants & 0xFFFF;
+                        continue;
+                    }
+                    // Setting 0x20 turns upper case latin letters into lower case ones
+                    // and no other Latin-1 character into a latin letter.
+                    ShortVector lower = v.or((short) 0x20);
+                    int letters = lower.sub((short) 'a').compare(VectorOperators.UNSIGNED_LT, 26).trueCount();
+                    int vowelCount = lower.eq((short) 'a')
+                            .or(lower.eq((short) 'e'))
+                            .or(lower.eq((short) 'i'))
+                            .or(lower.eq((short) 'o'))
+                            .or(lower.eq((short) 'u'))
+                            .trueCount();
+                    vowels += vowelCount;
+                    consonants += letters - vowelCount;
+                }
+                int vowelsAndConsonants = countVowelsAndConsonants(chunk, i, length);
+                vowels += vowelsAndConsonants >>> 16;
+                consonants += vowelsAndConsonants & 0xFFFF;
+            }
+            return new VowelsAndConsonants(vowels, consonants);
+        }
+
+        /**
+         * Counts vowels and consonants in a short range of characters one by one.
+         *
+         * @return Number of vowels in the upper half and number of consonants in the lower half.
+         */
+        private static int countVowelsAndConsonants(char[] chars, int from, int to) {
+            int vowels = 0;
+            int consonants = 0;
+            for (int i = from; i < to; i++) {
+                int classes = classes(chars[i]);
+                vowels += classes & VOWEL;
+                consonants += (classes & CONSONANT) >>> 1;
+            }
+            return vowels << 16 | consonants;
+        }
+
+    }
+
+    /**
+     * Generates all permutations of a given string.
+     *
+     * @param source String from which to generate permutations.
+     * @return Iterator that returns all (not only unique) permutations of a given string or returns nothing
+     * if the given string is null or empty.
+     * <p>
+     * Task 10.
+     * @see Permutations
+     */
+    public static Iterator<String> generatePermutations(String source) {
+        if (source == null || source.isEmpty()) {
+            return new Iterator<String>() {
+                @Override
+                public boolean hasNext() {
+                    return false;
+                }
+
+                @Override
+                public String next() {
+                    throw new NoSuchElementException("No permutations for null or empty string");
+                }
+            };
+        }
+        return new Iterator<String>() {
+            /**
+             * We can take all permutations of 0123...(source.length()-1)
+             * and treat number in each position as an index in the source string.
+             * Then we can re-compose each permutation of the original string from those indexes.
+             *
+             * Each indexes[i] contains a character position in the source string
+             * that should be used in the i-th position of the current permutation.
+             * Means, permutation.charAt(i)==source.charAt(indexes[i]).
+             *
+             * We'll generate permutations of indexes in lexicographical order.
+             * The first permutation would be 0123...(source.length()-1) - this is just a copy of the source string.
+             * The last permutation would be (source.length()-1)...3210.
+             */
+            final int[] indexes;
+
+            /**
+             * Indicates if we have already returned the last permutation or not yet.
+             *
+             * Reminder: last permutation corresponds to (source.length()-1)...3210 indexes since we use
+             * lexicographical order.
+             */
+            boolean hasMore;
+
+            {
+                // Reminder: first permutation is 0123...(source.length()-1) - the same as source string.
+                indexes = new int[source.length()];
+                for (int i = 0; i < source.length(); i++) {
+                    indexes[i] = i;
+                }
+                // We've already covered the case with an empty string, so we always have at least one permutation
+                // in the beginning - the original string itself.
+                // Even when it is a single character.
+                hasMore = true;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return hasMore;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException("No more permutations");
                 }
                 // We reconstruct and return string from permutation of indices
                 // that has been generated either during initialization or previous iteration.
@@ -365,122 +1372,2146 @@ public class Chapter1 {
     }
 
     /**
-     * Finds most occurring character in a given string.
-     *
-     * @param source String where to search for most occurring characters.
-     * @return Most occurring character or an empty value if given string is null or empty.
+     * Permutations of characters of a string that could be started from any rank and split for parallel processing.
      * <p>
-     * Task 14.
+     * Permutations are ranked in lexicographical order.
+     * Permutations of all characters are ordered by positions of characters in the source string
+     * like in {@link #generatePermutations} and repeat if the string has equal characters.
+     * Distinct permutations are ordered by characters and each of them is produced once.
+     * <p>
+     * A permutation is unranked with the factorial number system generalized to repeated characters:
+     * the number of permutations that start with a given symbol is the number of permutations of the rest.
+     * This takes O(n * k) for n characters and k different symbols.
+     * The number of permutations has to fit into a long, so there could be up to 20 characters
+     * unless they repeat and only distinct permutations are needed.
+     * <p>
+     * Task 10 part 2.
      */
-    static public Optional<Character> findMostOccurringCharacter(String source) {
-        if (source == null || source.isEmpty()) {
-            return Optional.empty();
+    public static final class Permutations {
+
+        /**
+         * Symbols which are permuted in their order:
+         * characters by their positions or different characters in ascending order.
+         */
+        private final char[] symbols;
+        /**
+         * Number of occurrences of each symbol.
+         */
+        private final int[] counts;
+        private final int length;
+        private final boolean distinct;
+        private final long size;
+
+        private Permutations(char[] symbols, int[] counts, int length, boolean distinct) {
+            this.symbols = symbols;
+            this.counts = counts;
+            this.length = length;
+            this.distinct = distinct;
+            // The multinomial coefficient is built from binomial coefficients that are divided exactly at each step.
+            long size = length == 0 ? 0 : 1;
+            int placed = 0;
+            try {
+                for (int count : counts) {
+                    for (int j = 1; j <= count; j++) {
+                        placed++;
+                        size = Math.addExact(Math.multiplyExact(size / j, placed), size % j * placed / j);
+                    }
+                }
+            } catch (ArithmeticException e) {
+                throw new IllegalArgumentException("too many permutations of " + length + " characters", e);
+            }
+            this.size = size;
         }
-        Map<Character, Integer> occurrences = new HashMap<>();
-        for (int i = 0; i < source.length(); i++) {
-            occurrences.compute(source.charAt(i), (k, v) -> v == null ? 1 : ++v);
+
+        /**
+         * Prepares all permutations of characters of a string.
+         *
+         * @param source String which characters to permute.
+         * @return Permutations that are ordered and repeat like in {@link #generatePermutations}.
+         * @throws NullPointerException     If the string is null.
+         * @throws IllegalArgumentException If there are more permutations than fit into a long.
+         */
+        public static Permutations of(String source) {
+            char[] symbols = source.toCharArray();
+            int[] counts = new int[symbols.length];
+            Arrays.fill(counts, 1);
+            return new Permutations(symbols, counts, symbols.length, false);
         }
-        Optional<Character> mostOccurringCharacter = Optional.empty();
-        int maxOccurrences = 0;
-        for (Map.Entry<Character, Integer> characterInfo : occurrences.entrySet()) {
-            if (characterInfo.getValue() > maxOccurrences) {
-                maxOccurrences = characterInfo.getValue();
-                mostOccurringCharacter = Optional.of(characterInfo.getKey());
+
+        /**
+         * Prepares distinct permutations of characters of a string.
+         *
+         * @param source String which characters to permute.
+         * @return Permutations that are ordered by characters and never repeat.
+         * @throws NullPointerException     If the string is null.
+         * @throws IllegalArgumentException If there are more permutations than fit into a long.
+         */
+        public static Permutations distinct(String source) {
+            char[] sorted = source.toCharArray();
+            Arrays.sort(sorted);
+            char[] symbols = new char[sorted.length];
+            int[] counts = new int[sorted.length];
+            int k = 0;
+            for (char c : sorted) {
+                if (k == 0 || symbols[k - 1] != c) {
+                    symbols[k++] = c;
+                }
+                counts[k - 1]++;
             }
+            return new Permutations(Arrays.copyOf(symbols, k), Arrays.copyOf(counts, k), sorted.length, true);
         }
-        return mostOccurringCharacter;
-    }
 
-    /**
-     * Counts substring in a given string.
-     *
-     * @param source    String where to search for a substring.
-     * @param substring Substring to count.
-     * @return Number of all occurrences of substring in a string or 0 if source or substring are null or empty.
-     * All occurrences' means that all overlapping substrings will be counted separately.
-     * For example,
-     * countSubstring('aaaa', 'aa') == 3
-     * <p>
-     * Task 17 part 2.
-     */
-    static public int countSubstring(String source, String substring) {
-        if (source == null || source.isEmpty() || substring == null || substring.isEmpty()) {
-            return 0;
+        /**
+         * Provides the length of each permutation.
+         *
+         * @return Number of characters.
+         */
+        public int length() {
+            return length;
         }
-        int count = 0;
-        int start = 0;
-        while ((start = source.indexOf(substring, start)) >= 0) {
-            count++;
-            start++;
+
+        /**
+         * Provides the number of permutations.
+         *
+         * @return Number of permutations or 0 if the string is empty.
+         */
+        public long size() {
+            return size;
         }
-        return count;
-    }
 
-    /**
-     * Checks if a given string is a repetition of some other string.
-     *
-     * @param source String to check for repetition.
-     * @return false if a given string is null or shorter than two characters and is not a repetition of some substring.
-     * <ul>
-     *     <li>null -> false</li>
-     *     <li>"" -> false</li>
-     *     <li>"a" -> false</li>
-     *     <li>"aa" -> true</li>
-     *     <li>"ab" -> false</li>
-     *     <li>"aba" -> false</li>
-     *     <li>"abab" -> true</li>
-     * </ul>
-     *
-     * Task 20 part 2.
-     */
-    static public boolean isRepeatingSubstrings(String source) {
-        if (source == null || source.isEmpty()) {
-            return false;
+        /**
+         * Checks if only distinct permutations are produced.
+         *
+         * @return true if permutations never repeat.
+         */
+        public boolean isDistinct() {
+            return distinct;
         }
-        List<Integer> possibleSubstringsLengths = new LinkedList<>();
-        for (int substringLength = 1; substringLength <= source.length(); substringLength++) {
-            if (possibleSubstringsLengths.isEmpty() && substringLength > source.length() / 2) {
-                break;
+
+        /**
+         * Finds a permutation by its rank.
+         *
+         * @param rank Rank of a permutation.
+         * @return Permutation.
+         * @throws IndexOutOfBoundsException If the rank is negative or not less than the number of permutations.
+         */
+        public String unrank(long rank) {
+            return new String(new Cursor(rank).permutation);
+        }
+
+        /**
+         * Finds the rank of a permutation.
+         * <p>
+         * When permutations of all characters repeat, the rank of the first of equal permutations is found.
+         *
+         * @param permutation Permutation.
+         * @return Rank of the permutation.
+         * @throws NullPointerException     If the permutation is null.
+         * @throws IllegalArgumentException If the given string is not a permutation of the source characters.
+         */
+        public long rank(CharSequence permutation) {
+            if (size == 0 || permutation.length() != length) {
+                throw new IllegalArgumentException("not a permutation: " + permutation);
             }
-            {
-                ListIterator<Integer> possibleSubstringsIterator = possibleSubstringsLengths.listIterator();
-                while (possibleSubstringsIterator.hasNext()) {
-                    int possibleSubstringLength = possibleSubstringsIterator.next();
-                    boolean substringStillRepeats =
-                            source.charAt(substringLength - 1)
-                                    == source.charAt((substringLength - 1) % possibleSubstringLength);
-                    if (!substringStillRepeats) {
-                        possibleSubstringsIterator.remove();
+            int[] left = counts.clone();
+            long block = size;
+            long rank = 0;
+            for (int position = 0; position < length; position++) {
+                char c = permutation.charAt(position);
+                int remaining = length - position;
+                int symbol = 0;
+                while (symbol < symbols.length && (left[symbol] == 0 || symbols[symbol] != c)) {
+                    if (left[symbol] > 0) {
+                        rank += share(block, left[symbol], remaining);
                     }
+                    symbol++;
+                }
+                if (symbol == symbols.length) {
+                    throw new IllegalArgumentException("not a permutation: " + permutation);
                 }
+                block = share(block, left[symbol], remaining);
+                left[symbol]--;
             }
-            boolean lengthIsMatching = source.length() % substringLength == 0;
-            if (lengthIsMatching && substringLength < source.length()) {
-                boolean prefixIsRepetitionOfOtherSubstring = false;
-                {
-                    ListIterator<Integer> candidatesIterator = possibleSubstringsLengths.listIterator();
-                    while (candidatesIterator.hasNext() && !prefixIsRepetitionOfOtherSubstring) {
-                        int otherCandidateLength = candidatesIterator.next();
-                        if (substringLength % otherCandidateLength != 0) {
-                            continue;
-                        }
-                        prefixIsRepetitionOfOtherSubstring = true;
-                        int indexInOther = 0;
-                        for (int indexInCurrent = 0; indexInCurrent < substringLength; indexInCurrent++) {
-                            if (source.charAt(indexInCurrent) != source.charAt(indexInOther)) {
-                                prefixIsRepetitionOfOtherSubstring = false;
+            return rank;
+        }
+
+        /**
+         * Passes a range of permutations to an action without allocating memory for each of them.
+         *
+         * @param from   Rank of the first permutation.
+         * @param to     Rank after the last permutation.
+         * @param action Action to receive permutations. The same array is passed each time
+         *               and it must not be modified or kept after the action returns.
+         * @throws NullPointerException      If the action is null.
+         * @throws IndexOutOfBoundsException If the range is out of ranks of permutations.
+         */
+        public void forEach(long from, long to, Consumer<char[]> action) {
+            Objects.checkFromToIndex(from, to, size);
+            Objects.requireNonNull(action);
+            if (from == to) {
+                return;
+            }
+            Cursor cursor = new Cursor(from);
+            action.accept(cursor.permutation);
+            for (long rank = from + 1; rank < to; rank++) {
+                cursor.advance();
+                action.accept(cursor.permutation);
+            }
+        }
+
+        /**
+         * Passes all permutations to an action without allocating memory for each of them.
+         *
+         * @param action Action to receive permutations. The same array is passed each time
+         *               and it must not be modified or kept after the action returns.
+         * @throws NullPointerException If the action is null.
+         */
+        public void forEach(Consumer<char[]> action) {
+            forEach(0, size, action);
+        }
+
+        /**
+         * Provides permutations that could be split by ranges.
+         *
+         * @return Spliterator of all permutations.
+         */
+        public Spliterator<String> spliterator() {
+            return new RangeSpliterator(0, size, null);
+        }
+
+        /**
+         * Provides permutations as a stream which could be made parallel.
+         *
+         * @return Stream of all permutations.
+         */
+        public Stream<String> stream() {
+            return StreamSupport.stream(spliterator(), false);
+        }
+
+        /**
+         * Computes the number of permutations that start with a symbol.
+         *
+         * @param block     Number of permutations of the remaining characters.
+         * @param count     Number of remaining occurrences of the symbol.
+         * @param remaining Number of remaining characters.
+         * @return block * count / remaining, which is exact, without overflow.
+         */
+        private static long share(long block, int count, int remaining) {
+            return block / remaining * count + block % remaining * count / remaining;
+        }
+
+        /**
+         * Position within permutations which could be advanced to the next permutation.
+         */
+        private final class Cursor {
+
+            /**
+             * Index of a symbol at each position of the current permutation.
+             */
+            final int[] sequence = new int[length];
+            final char[] permutation = new char[length];
+
+            Cursor(long rank) {
+                Objects.checkIndex(rank, size);
+                int[] left = counts.clone();
+                long block = size;
+                for (int position = 0; position < length; position++) {
+                    int remaining = length - position;
+                    int symbol = 0;
+                    while (true) {
+                        if (left[symbol] > 0) {
+                            long share = share(block, left[symbol], remaining);
+                            if (rank < share) {
+                                block = share;
                                 break;
                             }
-                            indexInOther = (indexInOther + 1) % otherCandidateLength;
+                            rank -= share;
                         }
+                        symbol++;
                     }
+                    left[symbol]--;
+                    sequence[position] = symbol;
+                    permutation[position] = symbols[symbol];
+                }
+            }
+
+            /**
+             * Advances to the next permutation like {@link #generatePermutations} does
+             * but does not swap equal symbols, so repeated ones produce distinct permutations.
+             *
+             * @return false if the current permutation is the last one.
+             */
+            boolean advance() {
+                int k = length - 2;
+                while (k >= 0 && sequence[k] >= sequence[k + 1]) {
+                    k--;
+                }
+                if (k < 0) {
+                    return false;
+                }
+                int t = length - 1;
+                while (sequence[t] <= sequence[k]) {
+                    t--;
+                }
+                int tmp = sequence[t];
+                sequence[t] = sequence[k];
+                sequence[k] = tmp;
+                for (int i = k + 1, j = length - 1; i < j; i++, j--) {
+                    tmp = sequence[j];
+                    sequence[j] = sequence[i];
+                    sequence[i] = tmp;
                 }
-                if (!prefixIsRepetitionOfOtherSubstring) {
-                    possibleSubstringsLengths.add(substringLength);
+                // Only characters from k onwards have changed.
+                for (int i = k; i < length; i++) {
+                    permutation[i] = symbols[sequence[i]];
                 }
+                return true;
+            }
+        }
+
+        /**
+         * Range of permutations that is split in halves and unranks its first permutation only when started.
+         */
+        private final class RangeSpliterator implements Spliterator<String> {
+
+            private long from;
+            private final long to;
+            /**
+             * Cursor at the previous permutation or null if the range has not been started.
+             */
+            private Cursor cursor;
+
+            RangeSpliterator(long from, long to, Cursor cursor) {
+                this.from = from;
+                this.to = to;
+                this.cursor = cursor;
+            }
+
+            @Override
+            public boolean tryAdvance(Consumer<? super String> action) {
+                Objects.requireNonNull(action);
+                if (from >= to) {
+                    return false;
+                }
+                if (cursor == null) {
+                    cursor = new Cursor(from);
+                } else {
+                    cursor.advance();
+                }
+                from++;
+                action.accept(new String(cursor.permutation));
+                return true;
+            }
+
+            @Override
+            public Spliterator<String> trySplit() {
+                if (to - from < 2) {
+                    return null;
+                }
+                long middle = from + (to - from) / 2;
+                Spliterator<String> prefix = new RangeSpliterator(from, middle, cursor);
+                from = middle;
+                cursor = null;
+                return prefix;
+            }
+
+            @Override
+            public long estimateSize() {
+                return to - from;
+            }
+
+            @Override
+            public int characteristics() {
+                return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE | (distinct ? DISTINCT : 0);
+            }
+        }
+    }
+
+    /**
+     * Finds most occurring character in a given string.
+     *
+     * @param source String where to search for most occurring characters.
+     * @return Most occurring character or an empty value if given string is null or empty.
+     * <p>
+     * Task 14.
+     */
+    static public Optional<Character> findMostOccurringCharacter(String source) {
+        if (source == null || source.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of((char) CharHistogram.of(source).mostFrequent());
+    }
+
+    /**
+     * Numbers of occurrences of characters.
+     * <p>
+     * Latin-1 characters are counted in a dense array indexed by a character
+     * and other characters are counted in a small open addressing hash table,
+     * so counting neither boxes characters and counts nor looks up map entries.
+     * Characters are UTF-16 code units like {@link String#charAt}.
+     * <p>
+     * This implementation is not thread safe. Histograms counted in parallel could be combined with {@link #merge}.
+     * <p>
+     * Tasks 1 and 14.
+     */
+    public static final class CharHistogram {
+
+        private static final int DENSE_SIZE = 256;
+        /**
+         * Length of input after which Latin-1 characters are counted in several tables.
+         */
+        private static final int STRIPED_THRESHOLD = 1024;
+        /**
+         * Number of characters copied from a sequence at once.
+         */
+        private static final int CHUNK = 2048;
+
+        private final int[] dense = new int[DENSE_SIZE];
+        /**
+         * Characters beyond Latin-1 with 0 in empty slots.
+         */
+        private char[] sparseKeys = new char[0];
+        private int[] sparseCounts = new int[0];
+        private int sparseSize;
+        private long total;
+        /**
+         * More tables of Latin-1 characters used while counting many characters at once.
+         */
+        private int[] stripe1;
+        private int[] stripe2;
+        private int[] stripe3;
+
+        /**
+         * Creates an empty histogram.
+         */
+        public CharHistogram() {
+        }
+
+        /**
+         * Counts characters of a sequence.
+         *
+         * @param source Sequence which characters to count.
+         * @return New histogram of characters of the sequence.
+         * @throws NullPointerException If the source is null.
+         */
+        public static CharHistogram of(CharSequence source) {
+            return new CharHistogram().add(source);
+        }
+
+        /**
+         * Counts characters of a sequence in addition to already counted ones.
+         *
+         * @param source Sequence which characters to count.
+         * @return This histogram.
+         * @throws NullPointerException If the source is null.
+         */
+        public CharHistogram add(CharSequence source) {
+            return add(source, 0, source.length());
+        }
+
+        /**
+         * Counts characters of a part of a sequence in addition to already counted ones.
+         * <p>
+         * Long parts are copied into a buffer by chunks and counted as an array.
+         *
+         * @param source Sequence which characters to count.
+         * @param start  Position of the first character to count.
+         * @param end    Position after the last character to count.
+         * @return This histogram.
+         * @throws NullPointerException      If the source is null.
+         * @throws IndexOutOfBoundsException If the positions are out of bounds of the sequence.
+         * @see #add(char[], int, int)
+         */
+        public CharHistogram add(CharSequence source, int start, int end) {
+            Objects.checkFromToIndex(start, end, source.length());
+            total += end - start;
+            if (end - start < STRIPED_THRESHOLD) {
+                for (int i = start; i < end; i++) {
+                    increment(source.charAt(i), 1);
+                }
+                return this;
+            }
+            char[] buffer = new char[CHUNK];
+            for (int from = start; from < end; from += CHUNK) {
+                int length = Math.min(CHUNK, end - from);
+                if (source instanceof String string) {
+                    string.getChars(from, from + length, buffer, 0);
+                } else {
+                    for (int i = 0; i < length; i++) {
+                        buffer[i] = source.charAt(from + i);
+                    }
+                }
+                countStriped(buffer, 0, length);
+            }
+            foldStripes();
+            return this;
+        }
+
+        /**
+         * Counts characters of a part of an array in addition to already counted ones.
+         * <p>
+         * When there are many characters, Latin-1 characters are counted in four tables in turn,
+         * so increments of the same counter for a run of the same character do not wait for each other.
+         *
+         * @param characters Array which characters to count.
+         * @param from       Position of the first character to count.
+         * @param to         Position after the last character to count.
+         * @return This histogram.
+         * @throws NullPointerException      If the array is null.
+         * @throws IndexOutOfBoundsException If the positions are out of bounds of the array.
+         */
+        public CharHistogram add(char[] characters, int from, int to) {
+            Objects.checkFromToIndex(from, to, characters.length);
+            total += to - from;
+            if (to - from < STRIPED_THRESHOLD) {
+                increment(characters, from, to);
+                return this;
+            }
+            countStriped(characters, from, to);
+            foldStripes();
+            return this;
+        }
+
+        private void countStriped(char[] characters, int from, int to) {
+            if (stripe1 == null) {
+                stripe1 = new int[DENSE_SIZE];
+                stripe2 = new int[DENSE_SIZE];
+                stripe3 = new int[DENSE_SIZE];
+            }
+            int[] counts0 = dense;
+            int[] counts1 = stripe1;
+            int[] counts2 = stripe2;
+            int[] counts3 = stripe3;
+            int i = from;
+            for (; i + 3 < to; i += 4) {
+                char c0 = characters[i];
+                char c1 = characters[i + 1];
+                char c2 = characters[i + 2];
+                char c3 = characters[i + 3];
+                if ((c0 | c1 | c2 | c3) < DENSE_SIZE) {
+                    counts0[c0]++;
+                    counts1[c1]++;
+                    counts2[c2]++;
+                    counts3[c3]++;
+                } else {
+                    increment(characters, i, i + 4);
+                }
+            }
+            increment(characters, i, to);
+        }
+
+        private void foldStripes() {
+            for (int c = 0; c < DENSE_SIZE; c++) {
+                dense[c] += stripe1[c] + stripe2[c] + stripe3[c];
+            }
+            Arrays.fill(stripe1, 0);
+            Arrays.fill(stripe2, 0);
+            Arrays.fill(stripe3, 0);
+        }
+
+        /**
+         * Counts a character.
+         *
+         * @param c Character to count.
+         * @return This histogram.
+         */
+        public CharHistogram add(char c) {
+            total++;
+            increment(c, 1);
+            return this;
+        }
+
+        /**
+         * Adds counts of another histogram to this one.
+         *
+         * @param other Histogram which counts to add.
+         * @return This histogram.
+         * @throws NullPointerException If other is null.
+         */
+        public CharHistogram merge(CharHistogram other) {
+            for (int c = 0; c < DENSE_SIZE; c++) {
+                dense[c] += other.dense[c];
+            }
+            for (int slot = 0; slot < other.sparseKeys.length; slot++) {
+                if (other.sparseKeys[slot] != 0) {
+                    increment(other.sparseKeys[slot], other.sparseCounts[slot]);
+                }
+            }
+            total += other.total;
+            return this;
+        }
+
+        /**
+         * Provides the number of occurrences of a character.
+         *
+         * @param c Character to look up.
+         * @return Number of times the character has been counted.
+         */
+        public int count(char c) {
+            if (c < DENSE_SIZE) {
+                return dense[c];
+            }
+            if (sparseSize == 0) {
+                return 0;
+            }
+            int mask = sparseKeys.length - 1;
+            for (int slot = hash(c) & mask; sparseKeys[slot] != 0; slot = (slot + 1) & mask) {
+                if (sparseKeys[slot] == c) {
+                    return sparseCounts[slot];
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Provides the number of all counted characters.
+         *
+         * @return Sum of all counts.
+         */
+        public long total() {
+            return total;
+        }
+
+        /**
+         * Provides the number of different characters.
+         *
+         * @return Number of characters with non-zero counts.
+         */
+        public int distinct() {
+            int distinct = sparseSize;
+            for (int count : dense) {
+                if (count > 0) {
+                    distinct++;
+                }
+            }
+            return distinct;
+        }
+
+        /**
+         * Finds the character with the highest count.
+         *
+         * @return The most frequent character with the smallest one being chosen among equally frequent ones
+         * or -1 if nothing has been counted.
+         */
+        public int mostFrequent() {
+            char[] top = topK(1);
+            return top.length == 0 ? -1 : top[0];
+        }
+
+        /**
+         * Finds characters with the highest counts.
+         *
+         * @param k Maximum number of characters to find.
+         * @return At most k characters ordered by descending count and then by character.
+         * @throws IllegalArgumentException If k is negative.
+         */
+        public char[] topK(int k) {
+            if (k < 0) {
+                throw new IllegalArgumentException("k must not be negative but was " + k);
+            }
+            // Characters and counts are packed into longs that sort as required.
+            long[] top = new long[Math.min(k, distinct())];
+            int size = 0;
+            for (int c = 0; c < DENSE_SIZE; c++) {
+                size = offer(top, size, dense[c], (char) c);
+            }
+            for (int slot = 0; slot < sparseKeys.length; slot++) {
+                if (sparseKeys[slot] != 0) {
+                    size = offer(top, size, sparseCounts[slot], sparseKeys[slot]);
+                }
+            }
+            char[] result = new char[size];
+            for (int i = 0; i < size; i++) {
+                result[i] = (char) ~top[i];
+            }
+            return result;
+        }
+
+        /**
+         * Inserts a character into a sorted array of the best characters if it is good enough.
+         *
+         * @param top   Best characters sorted by descending rank.
+         * @param size  Number of characters in the array.
+         * @param count Count of the character to insert.
+         * @param c     Character to insert.
+         * @return New number of characters in the array.
+         */
+        private static int offer(long[] top, int size, int count, char c) {
+            if (count == 0) {
+                return size;
+            }
+            // Higher counts and then smaller characters rank higher.
+            long rank = (long) count << Character.SIZE | (char) ~c;
+            if (size == top.length && (size == 0 || rank <= top[size - 1])) {
+                return size;
+            }
+            int i = size == top.length ? size - 1 : size++;
+            for (; i > 0 && top[i - 1] < rank; i--) {
+                top[i] = top[i - 1];
+            }
+            top[i] = rank;
+            return size;
+        }
+
+        /**
+         * Provides counts as a map.
+         *
+         * @return New map from characters to their non-zero counts.
+         */
+        public Map<Character, Integer> toMap() {
+            Map<Character, Integer> map = new HashMap<>();
+            for (int c = 0; c < DENSE_SIZE; c++) {
+                if (dense[c] > 0) {
+                    map.put((char) c, dense[c]);
+                }
+            }
+            for (int slot = 0; slot < sparseKeys.length; slot++) {
+                if (sparseKeys[slot] != 0) {
+                    map.put(sparseKeys[slot], sparseCounts[slot]);
+                }
+            }
+            return map;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CharHistogram other) || total != other.total || sparseSize != other.sparseSize
+                    || !Arrays.equals(dense, other.dense)) {
+                return false;
+            }
+            for (int slot = 0; slot < sparseKeys.length; slot++) {
+                if (sparseKeys[slot] != 0 && other.count(sparseKeys[slot]) != sparseCounts[slot]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            int hashCode = Arrays.hashCode(dense);
+            for (int slot = 0; slot < sparseKeys.length; slot++) {
+                if (sparseKeys[slot] != 0) {
+                    // Order of slots depends on the order of insertion so it should not matter.
+                    hashCode += sparseKeys[slot] ^ sparseCounts[slot];
+                }
+            }
+            return hashCode;
+        }
+
+        @Override
+        public String toString() {
+            return new TreeMap<>(toMap()).toString();
+        }
+
+        private void increment(char[] characters, int from, int to) {
+            for (int i = from; i < to; i++) {
+                increment(characters[i], 1);
+            }
+        }
+
+        private void increment(char c, int count) {
+            if (c < DENSE_SIZE) {
+                dense[c] += count;
+                return;
+            }
+            if ((sparseSize + 1) * 2 > sparseKeys.length) {
+                resize();
+            }
+            int mask = sparseKeys.length - 1;
+            int slot = hash(c) & mask;
+            while (sparseKeys[slot] != 0 && sparseKeys[slot] != c) {
+                slot = (slot + 1) & mask;
+            }
+            if (sparseKeys[slot] == 0) {
+                sparseKeys[slot] = c;
+                sparseSize++;
+            }
+            sparseCounts[slot] += count;
+        }
+
+        private void resize() {
+            char[] oldKeys = sparseKeys;
+            int[] oldCounts = sparseCounts;
+            sparseKeys = new char[Math.max(16, oldKeys.length * 2)];
+            sparseCounts = new int[sparseKeys.length];
+            int mask = sparseKeys.length - 1;
+            for (int oldSlot = 0; oldSlot < oldKeys.length; oldSlot++) {
+                if (oldKeys[oldSlot] != 0) {
+                    int slot = hash(oldKeys[oldSlot]) & mask;
+                    while (sparseKeys[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    sparseKeys[slot] = oldKeys[oldSlot];
+                    sparseCounts[slot] = oldCounts[oldSlot];
+                }
+            }
+        }
+
+        private static int hash(char c) {
+            // Scripts occupy consecutive ranges so spread neighbouring characters.
+            return c * 0x9E3779B1 >>> 15;
+        }
+    }
+
+    /**
+     * Counts substring in a given string.
+     *
+     * @param source    String where to search for a substring.
+     * @param substring Substring to count.
+     * @return Number of all occurrences of substring in a string or 0 if source or substring are null or empty.
+     * All occurrences' means that all overlapping substrings will be counted separately.
+     * For example,
+     * countSubstring('aaaa', 'aa') == 3
+     * <p>
+     * Task 17 part 2.
+     */
+    static public int countSubstring(String source, String substring) {
+        if (source == null || source.isEmpty() || substring == null || substring.isEmpty()) {
+            return 0;
+        }
+        return SubstringMatcher.cached(substring).count(source);
+    }
+
+    /**
+     * Finder of occurrences of a substring that is prepared once and could be used for many texts.
+     * <p>
+     * An algorithm is chosen by the substring when the matcher is compiled
+     * and every algorithm takes linear time in the worst case:
+     * <ul>
+     *     <li>a single character is searched for directly,</li>
+     *     <li>a short substring is searched for with Boyer-Moore-Horspool algorithm,
+     *     or with {@link String#indexOf(String, int)} in a string,
+     *     which is linear since a window is never compared for more than a few characters,</li>
+     *     <li>a periodic substring, like "abab" or "aaaa", is searched for with Knuth-Morris-Pratt algorithm
+     *     which never compares a character of a text twice however many occurrences overlap,</li>
+     *     <li>other substrings are searched for with Two-Way algorithm
+     *     accelerated by the Horspool shift of the last character of a window.</li>
+     * </ul>
+     * Overlapping occurrences are all counted like in {@link #countSubstring}.
+     * <p>
+     * Matchers are immutable and could be shared by threads.
+     * <p>
+     * Task 17 part 2.
+     */
+    public abstract static class SubstringMatcher {
+
+        /**
+         * Algorithms used to search for substrings.
+         */
+        public enum Algorithm {
+            /**
+             * Direct search for a substring of a single character.
+             */
+            SINGLE_CHARACTER,
+            /**
+             * Boyer-Moore-Horspool algorithm for short substrings.
+             */
+            BOYER_MOORE_HORSPOOL,
+            /**
+             * Knuth-Morris-Pratt algorithm for periodic substrings.
+             */
+            KNUTH_MORRIS_PRATT,
+            /**
+             * Two-Way algorithm for other substrings.
+             */
+            TWO_WAY
+        }
+
+        /**
+         * Length up to which non-periodic substrings are searched for with Boyer-Moore-Horspool algorithm.
+         */
+        private static final int SHORT_LENGTH = 8;
+        /**
+         * Recently used matchers in slots chosen by hash codes of their substrings.
+         * <p>
+         * Slots are read and written without locking since matchers are immutable
+         * and a stale or missing slot only causes a substring to be compiled once more.
+         */
+        private static final SubstringMatcher[] CACHE = new SubstringMatcher[256];
+
+        final String source;
+        final char[] pattern;
+
+        private SubstringMatcher(String pattern) {
+            this.source = pattern;
+            this.pattern = pattern.toCharArray();
+        }
+
+        /**
+         * Prepares a matcher for a substring.
+         *
+         * @param pattern Substring to search for.
+         * @return Matcher of the substring.
+         * @throws NullPointerException     If the pattern is null.
+         * @throws IllegalArgumentException If the pattern is empty.
+         */
+        public static SubstringMatcher compile(String pattern) {
+            if (pattern.isEmpty()) {
+                throw new IllegalArgumentException("pattern must not be empty");
+            }
+            if (pattern.length() == 1) {
+                return new SingleCharacter(pattern);
+            }
+            int[] fallbacks = fallbacks(pattern);
+            int period = pattern.length() - fallbacks[pattern.length() - 1];
+            if (period * 2 <= pattern.length()) {
+                return new KnuthMorrisPratt(pattern, fallbacks);
+            }
+            if (pattern.length() <= SHORT_LENGTH) {
+                return new BoyerMooreHorspool(pattern);
+            }
+            return new TwoWay(pattern);
+        }
+
+        /**
+         * Provides a matcher for a substring from a cache of recently used ones.
+         * <p>
+         * The cache keeps up to 256 matchers and a matcher is evicted
+         * when a substring with a colliding hash code is compiled.
+         *
+         * @param pattern Substring to search for.
+         * @return Matcher of the substring.
+         * @throws NullPointerException     If the pattern is null.
+         * @throws IllegalArgumentException If the pattern is empty.
+         */
+        public static SubstringMatcher cached(String pattern) {
+            int slot = pattern.hashCode() & (CACHE.length - 1);
+            SubstringMatcher matcher = CACHE[slot];
+            if (matcher == null || !matcher.source.equals(pattern)) {
+                matcher = compile(pattern);
+                CACHE[slot] = matcher;
+            }
+            return matcher;
+        }
+
+        /**
+         * Provides the substring this matcher searches for.
+         *
+         * @return Substring.
+         */
+        public String pattern() {
+            return source;
+        }
+
+        /**
+         * Provides the algorithm chosen for the substring.
+         *
+         * @return Algorithm used by this matcher.
+         */
+        public abstract Algorithm algorithm();
+
+        /**
+         * Finds the first occurrence of the substring.
+         *
+         * @param text Text where to search.
+         * @param from Position where to start searching.
+         * @return Position of the first occurrence at or after the given position or -1 if there is none.
+         * @throws NullPointerException      If the text is null.
+         * @throws IndexOutOfBoundsException If the position is negative or greater than the text length.
+         */
+        public int indexOf(CharSequence text, int from) {
+            Objects.checkIndex(from, text.length() + 1);
+            return search(text, from, false);
+        }
+
+        /**
+         * Counts all occurrences of the substring including overlapping ones.
+         *
+         * @param text Text where to search.
+         * @return Number of occurrences.
+         * @throws NullPointerException If the text is null.
+         */
+        public int count(CharSequence text) {
+            return search(text, 0, true);
+        }
+
+        /**
+         * Searches for occurrences.
+         *
+         * @param text Text where to search.
+         * @param from Position where to start searching.
+         * @param all  true to find all occurrences or false to stop at the first one.
+         * @return Number of occurrences if all are searched for
+         * or otherwise the position of the first occurrence or -1 if there is none.
+         */
+        abstract int search(CharSequence text, int from, boolean all);
+
+        @Override
+        public String toString() {
+            return "SubstringMatcher[" + algorithm() + ", " + pattern() + "]";
+        }
+
+        /**
+         * Finds a character in a sequence.
+         * <p>
+         * Strings are searched with {@link String#indexOf(int, int)} which the JVM vectorizes.
+         *
+         * @param text Sequence where to search.
+         * @param c    Character to find.
+         * @param from Position where to start searching.
+         * @return Position of the character at or after the given position or -1 if there is none.
+         */
+        static int indexOf(CharSequence text, char c, int from) {
+            if (text instanceof String string) {
+                return string.indexOf(c, from);
+            }
+            for (int i = from; i < text.length(); i++) {
+                if (text.charAt(i) == c) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Computes the prefix function of a pattern.
+         *
+         * @param pattern Pattern.
+         * @return Length of the longest proper prefix of the pattern that is also a suffix
+         * of the first i + 1 characters of the pattern for each i.
+         */
+        private static int[] fallbacks(String pattern) {
+            return StringPeriodicity.prefixFunction(pattern, 0, pattern.length());
+        }
+
+        /**
+         * Computes Horspool shifts of a window by its last character.
+         *
+         * @param pattern Pattern.
+         * @return Shifts indexed by the lower byte of a character.
+         * Characters that share the lower byte share the smallest of their shifts, so shifts are always safe.
+         */
+        private static int[] shifts(char[] pattern) {
+            int[] shifts = new int[256];
+            Arrays.fill(shifts, pattern.length);
+            for (int i = 0; i < pattern.length - 1; i++) {
+                shifts[pattern[i] & 0xFF] = pattern.length - 1 - i;
+            }
+            return shifts;
+        }
+
+        private static final class SingleCharacter extends SubstringMatcher {
+
+            SingleCharacter(String pattern) {
+                super(pattern);
+            }
+
+            @Override
+            public Algorithm algorithm() {
+                return Algorithm.SINGLE_CHARACTER;
+            }
+
+            @Override
+            int search(CharSequence text, int from, boolean all) {
+                int count = 0;
+                for (int i = indexOf(text, pattern[0], from); i >= 0; i = indexOf(text, pattern[0], i + 1)) {
+                    if (!all) {
+                        return i;
+                    }
+                    count++;
+                }
+                return all ? count : -1;
+            }
+        }
+
+        private static final class BoyerMooreHorspool extends SubstringMatcher {
+
+            private final int[] shifts;
+
+            BoyerMooreHorspool(String pattern) {
+                super(pattern);
+                shifts = shifts(this.pattern);
+            }
+
+            @Override
+            public Algorithm algorithm() {
+                return Algorithm.BOYER_MOORE_HORSPOOL;
+            }
+
+            @Override
+            int search(CharSequence text, int from, boolean all) {
+                if (text instanceof String string) {
+                    // A short substring keeps the vectorized search of the JVM linear too.
+                    int count = 0;
+                    for (int j = string.indexOf(source, from); j >= 0; j = string.indexOf(source, j + 1)) {
+                        if (!all) {
+                            return j;
+                        }
+                        count++;
+                    }
+                    return all ? count : -1;
+                }
+                int last = pattern.length - 1;
+                char lastCharacter = pattern[last];
+                int shift = shifts[lastCharacter & 0xFF];
+                int count = 0;
+                for (int j = from; j <= text.length() - pattern.length; j += shift) {
+                    // Windows that do not end with the last character are skipped at once.
+                    j = indexOf(text, lastCharacter, j + last) - last;
+                    if (j < 0) {
+                        break;
+                    }
+                    int i = last - 1;
+                    while (i >= 0 && pattern[i] == text.charAt(j + i)) {
+                        i--;
+                    }
+                    if (i < 0) {
+                        if (!all) {
+                            return j;
+                        }
+                        count++;
+                    }
+                }
+                return all ? count : -1;
+            }
+        }
+
+        private static final class KnuthMorrisPratt extends SubstringMatcher {
+
+            private final int[] fallbacks;
+
+            KnuthMorrisPratt(String pattern, int[] fallbacks) {
+                super(pattern);
+                this.fallbacks = fallbacks;
+            }
+
+            @Override
+            public Algorithm algorithm() {
+                return Algorithm.KNUTH_MORRIS_PRATT;
+            }
+
+            @Override
+            int search(CharSequence text, int from, boolean all) {
+                int matched = 0;
+                int count = 0;
+                for (int i = from; i < text.length(); i++) {
+                    if (matched == 0) {
+                        // Nothing is matched until the first character of the pattern.
+                        i = indexOf(text, pattern[0], i);
+                        if (i < 0) {
+                            break;
+                        }
+                    }
+                    char c = text.charAt(i);
+                    while (matched > 0 && pattern[matched] != c) {
+                        matched = fallbacks[matched - 1];
+                    }
+                    if (pattern[matched] == c) {
+                        matched++;
+                    }
+                    if (matched == pattern.length) {
+                        if (!all) {
+                            return i - pattern.length + 1;
+                        }
+                        count++;
+                        matched = fallbacks[matched - 1];
+                    }
+                }
+                return all ? count : -1;
+            }
+        }
+
+        /**
+         * Two-Way algorithm by Crochemore and Perrin.
+         * <p>
+         * The pattern is split by its critical factorization into left and right parts.
+         * The right part is compared from left to right and a mismatch shifts the window past it.
+         * Only when the whole right part matches, the left part is compared from right to left.
+         * If the left part repeats after the local period of the factorization then that is the period
+         * of the pattern: after an occurrence the window is shifted by the period and the characters
+         * known to match are not compared again. Otherwise, the period is longer than either part
+         * and the window is shifted by the longer part and could also be shifted by Horspool shift.
+         */
+        private static final class TwoWay extends SubstringMatcher {
+
+            /**
+             * Position of the last character of the left part.
+             */
+            private final int split;
+            /**
+             * Period of the pattern or 0 if the pattern is not periodic around the split.
+             */
+            private final int period;
+            private final int shiftAfterMatch;
+            private final int[] shifts;
+
+            TwoWay(String pattern) {
+                super(pattern);
+                int[] forwardPeriod = new int[1];
+                int[] backwardPeriod = new int[1];
+                int forward = maximalSuffix(this.pattern, false, forwardPeriod);
+                int backward = maximalSuffix(this.pattern, true, backwardPeriod);
+                split = Math.max(forward, backward);
+                int localPeriod = forward > backward ? forwardPeriod[0] : backwardPeriod[0];
+                period = Arrays.equals(this.pattern, 0, split + 1, this.pattern, localPeriod, localPeriod + split + 1)
+                        ? localPeriod
+                        : 0;
+                shiftAfterMatch = period > 0 ? period : Math.max(split + 1, this.pattern.length - split - 1) + 1;
+                shifts = shifts(this.pattern);
+            }
+
+            /**
+             * Finds the maximal suffix of a pattern.
+             *
+             * @param pattern  Pattern.
+             * @param reversed true to use the reversed order of characters.
+             * @param period   Array where to put the period of the suffix.
+             * @return Position before the maximal suffix.
+             */
+            private static int maximalSuffix(char[] pattern, boolean reversed, int[] period) {
+                int suffix = -1;
+                int j = 0;
+                int k = 1;
+                int p = 1;
+                while (j + k < pattern.length) {
+                    char a = pattern[j + k];
+                    char b = pattern[suffix + k];
+                    if (reversed ? a > b : a < b) {
+                        j += k;
+                        k = 1;
+                        p = j - suffix;
+                    } else if (a == b) {
+                        if (k != p) {
+                            k++;
+                        } else {
+                            j += p;
+                            k = 1;
+                        }
+                    } else {
+                        suffix = j;
+                        j = suffix + 1;
+                        k = 1;
+                        p = 1;
+                    }
+                }
+                period[0] = p;
+                return suffix;
+            }
+
+            @Override
+            public Algorithm algorithm() {
+                return Algorithm.TWO_WAY;
+            }
+
+            @Override
+            int search(CharSequence text, int from, boolean all) {
+                int last = pattern.length - 1;
+                int count = 0;
+                // Characters of the window up to this position are known to match.
+                int memory = -1;
+                for (int j = from; j <= text.length() - pattern.length; ) {
+                    if (memory < 0) {
+                        // Windows that mismatch at the first compared character would be shifted by one.
+                        j = indexOf(text, pattern[split + 1], j + split + 1) - split - 1;
+                        if (j < 0 || j > text.length() - pattern.length) {
+                            break;
+                        }
+                        if (period == 0) {
+                            char c = text.charAt(j + last);
+                            if (c != pattern[last]) {
+                                j += shifts[c & 0xFF];
+                                continue;
+                            }
+                        }
+                    }
+                    int i = Math.max(split, memory) + 1;
+                    while (i < pattern.length && pattern[i] == text.charAt(j + i)) {
+                        i++;
+                    }
+                    if (i < pattern.length) {
+                        j += i - split;
+                        memory = -1;
+                        continue;
+                    }
+                    i = split;
+                    while (i > memory && pattern[i] == text.charAt(j + i)) {
+                        i--;
+                    }
+                    if (i <= memory) {
+                        if (!all) {
+                            return j;
+                        }
+                        count++;
+                    }
+                    j += shiftAfterMatch;
+                    if (period > 0) {
+                        memory = pattern.length - period - 1;
+                    }
+                }
+                return all ? count : -1;
+            }
+        }
+    }
+
+    /**
+     * Checks if a given string is a repetition of some other string.
+     *
+     * @param source String to check for repetition.
+     * @return false if a given string is null or shorter than two characters and is not a repetition of some substring.
+     * <ul>
+     *     <li>null -> false</li>
+     *     <li>"" -> false</li>
+     *     <li>"a" -> false</li>
+     *     <li>"aa" -> true</li>
+     *     <li>"ab" -> false</li>
+     *     <li>"aba" -> false</li>
+     *     <li>"abab" -> true</li>
+     * </ul>
+     *
+     * Task 20 part 2.
+     */
+    static public boolean isRepeatingSubstrings(String source) {
+        return source != null && StringPeriodicity.of(source).isRepetition();
+    }
+
+    /**
+     * Periodicity of a string found from its prefix function in a single linear pass.
+     * <p>
+     * A period p of a string of length n is such that each character equals the one p positions later.
+     * The minimal period is n minus the length of the longest border,
+     * a border being a proper prefix that is also a suffix.
+     * The string is a repetition of its first p characters if p divides n and is less than n.
+     * <ul>
+     *     <li>"abcab" -> period 3, borders [2], not a repetition</li>
+     *     <li>"abab" -> period 2, borders [2], 2 repetitions</li>
+     *     <li>"aaaa" -> period 1, borders [3, 2, 1], 4 repetitions</li>
+     * </ul>
+     * Characters are read in place from a sequence or an array without copying.
+     * <p>
+     * Task 20 part 3.
+     */
+    public static final class StringPeriodicity {
+
+        private final int length;
+        private final int period;
+        private final int[] borders;
+
+        private StringPeriodicity(int[] prefixFunction) {
+            length = prefixFunction.length;
+            if (length == 0) {
+                period = 0;
+                borders = new int[0];
+                return;
+            }
+            int count = 0;
+            for (int border = prefixFunction[length - 1]; border > 0; border = prefixFunction[border - 1]) {
+                count++;
+            }
+            borders = new int[count];
+            for (int i = 0, border = prefixFunction[length - 1]; border > 0; border = prefixFunction[border - 1]) {
+                borders[i++] = border;
+            }
+            period = length - (count > 0 ? borders[0] : 0);
+        }
+
+        /**
+         * Analyzes periodicity of a whole sequence.
+         *
+         * @param source Sequence to analyze.
+         * @return Periodicity of the sequence.
+         * @throws NullPointerException If the sequence is null.
+         */
+        public static StringPeriodicity of(CharSequence source) {
+            return of(source, 0, source.length());
+        }
+
+        /**
+         * Analyzes periodicity of a range of a sequence.
+         *
+         * @param source Sequence to analyze.
+         * @param from   Position of the first character of the range.
+         * @param to     Position after the last character of the range.
+         * @return Periodicity of the range.
+         * @throws NullPointerException      If the sequence is null.
+         * @throws IndexOutOfBoundsException If the range is out of the sequence.
+         */
+        public static StringPeriodicity of(CharSequence source, int from, int to) {
+            Objects.checkFromToIndex(from, to, source.length());
+            return new StringPeriodicity(prefixFunction(source, from, to));
+        }
+
+        /**
+         * Analyzes periodicity of a range of an array.
+         *
+         * @param source Array to analyze.
+         * @param from   Position of the first character of the range.
+         * @param to     Position after the last character of the range.
+         * @return Periodicity of the range.
+         * @throws NullPointerException      If the array is null.
+         * @throws IndexOutOfBoundsException If the range is out of the array.
+         */
+        public static StringPeriodicity of(char[] source, int from, int to) {
+            Objects.checkFromToIndex(from, to, source.length);
+            return new StringPeriodicity(prefixFunction(CharBuffer.wrap(source), from, to));
+        }
+
+        /**
+         * Computes the prefix function of a range of a sequence.
+         * <p>
+         * An array could be passed without copying by wrapping it into a {@link CharBuffer}.
+         *
+         * @param source Sequence.
+         * @param from   Position of the first character of the range.
+         * @param to     Position after the last character of the range.
+         * @return Length of the longest border of the first i + 1 characters of the range for each i.
+         */
+        static int[] prefixFunction(CharSequence source, int from, int to) {
+            int[] prefixFunction = new int[to - from];
+            for (int i = 1, k = 0; i < prefixFunction.length; i++) {
+                char c = source.charAt(from + i);
+                while (k > 0 && c != source.charAt(from + k)) {
+                    k = prefixFunction[k - 1];
+                }
+                if (c == source.charAt(from + k)) {
+                    k++;
+                }
+                prefixFunction[i] = k;
+            }
+            return prefixFunction;
+        }
+
+        /**
+         * Provides the length of the analyzed string.
+         *
+         * @return Number of characters.
+         */
+        public int length() {
+            return length;
+        }
+
+        /**
+         * Provides the minimal period.
+         *
+         * @return Minimal period which is the length of the string if it has no borders or 0 if it is empty.
+         */
+        public int period() {
+            return period;
+        }
+
+        /**
+         * Checks if the minimal period fits into the string at least twice, like in "abcabca" or "abab".
+         *
+         * @return true if the minimal period is not longer than half of the string.
+         */
+        public boolean isPeriodic() {
+            return length > 0 && period * 2 <= length;
+        }
+
+        /**
+         * Checks if the string is several copies of some shorter string, like "abab" but not "abcab".
+         *
+         * @return true if the string repeats its root at least twice.
+         */
+        public boolean isRepetition() {
+            return repetitions() > 1;
+        }
+
+        /**
+         * Provides the length of the shortest string which the analyzed one is a repetition of.
+         *
+         * @return Minimal period if it divides the length or the length otherwise.
+         */
+        public int rootLength() {
+            return length > 0 && length % period == 0 ? period : length;
+        }
+
+        /**
+         * Provides how many times the root is repeated.
+         *
+         * @return Number of repetitions of the root or 0 if the string is empty.
+         */
+        public int repetitions() {
+            return length > 0 ? length / rootLength() : 0;
+        }
+
+        /**
+         * Provides lengths of all borders.
+         *
+         * @return Lengths of proper non-empty prefixes that are also suffixes from the longest to the shortest.
+         */
+        public int[] borders() {
+            return borders.clone();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof StringPeriodicity that)) {
+                return false;
+            }
+            return length == that.length && period == that.period && Arrays.equals(borders, that.borders);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Objects.hash(length, period) + Arrays.hashCode(borders);
+        }
+
+        @Override
+        public String toString() {
+            return "StringPeriodicity[length=" + length + ", period=" + period
+                    + ", repetitions=" + repetitions() + ", borders=" + Arrays.toString(borders) + "]";
+        }
+    }
+
+    /**
+     * Analysis of a text that is fed to it chunk by chunk.
+     * <p>
+     * State of an analysis is carried from one chunk to the next,
+     * so a text does not have to be in the heap all at once
+     * and the result does not depend on how the text is split into chunks.
+     * A text could be read from a {@link CharSequence}, a {@link Reader} or a memory mapped file
+     * with a buffer of a constant size or could be fed with {@link #accept} directly.
+     * <p>
+     * An instance analyzes a single text. Results of analyzers created by static methods
+     * are the same as of the corresponding methods of {@link Chapter1} for a string with the whole text.
+     *
+     * @param <R> Type of the result.
+     */
+    public abstract static class TextAnalyzer<R> {
+
+        /**
+         * Number of characters read at once.
+         */
+        private static final int CHUNK = 8192;
+        /**
+         * Number of bytes of a file mapped at once.
+         */
+        private static final long WINDOW = 1L << 26;
+
+        /**
+         * Creates an analyzer that counts symbols.
+         *
+         * @return Analyzer which result is the same as of {@link #countSymbols}.
+         */
+        public static TextAnalyzer<Map<Character, Integer>> symbolCounts() {
+            return new SymbolCounter();
+        }
+
+        /**
+         * Creates an analyzer that counts vowels and consonants.
+         *
+         * @return Analyzer which result is the same as of {@link #countVowelsAndConsonants}.
+         */
+        public static TextAnalyzer<VowelsAndConsonants> vowelsAndConsonants() {
+            return new VowelAndConsonantCounter();
+        }
+
+        /**
+         * Creates an analyzer that checks if a text contains only digits.
+         * <p>
+         * Reading stops at the first character that is not a digit.
+         *
+         * @return Analyzer which result is the same as of {@link #isDigitsOnly}.
+         */
+        public static TextAnalyzer<Boolean> digitsOnly() {
+            return new DigitChecker();
+        }
+
+        /**
+         * Creates an analyzer that counts occurrences of a substring.
+         * <p>
+         * Occurrences are found with the Knuth-Morris-Pratt algorithm
+         * so the part of the substring matched at the end of a chunk is continued in the next one.
+         *
+         * @param substring Substring to count.
+         * @return Analyzer which result is the same as of {@link #countSubstring}
+         * except that it does not overflow for texts longer than {@link Integer#MAX_VALUE}.
+         */
+        public static TextAnalyzer<Long> substringCount(String substring) {
+            return new SubstringCounter(substring);
+        }
+
+        /**
+         * Creates an analyzer that finds the first non-repeating symbol.
+         *
+         * @return Analyzer which result is the same as of {@link #findNonRepeatingSymbol}.
+         */
+        public static TextAnalyzer<Optional<Character>> nonRepeatingSymbol() {
+            return new NonRepeatingSymbolFinder();
+        }
+
+        /**
+         * Analyzes the next chunk of a text.
+         *
+         * @param characters Array with the chunk.
+         * @param from       Position of the first character of the chunk.
+         * @param to         Position after the last character of the chunk.
+         */
+        public abstract void accept(char[] characters, int from, int to);
+
+        /**
+         * Provides the result of the analysis of chunks accepted so far.
+         *
+         * @return Result.
+         */
+        public abstract R result();
+
+        /**
+         * Checks if the result is known regardless of the rest of the text.
+         *
+         * @return true if there is no need to read further.
+         */
+        protected boolean done() {
+            return false;
+        }
+
+        /**
+         * Analyzes the rest of a text.
+         * <p>
+         * A {@link CharBuffer} is analyzed between its position and limit and its position is not changed.
+         *
+         * @param text Text to analyze.
+         * @return Result of the analysis.
+         * @throws NullPointerException If the text is null.
+         */
+        public R analyze(CharSequence text) {
+            if (text instanceof CharBuffer buffer && buffer.hasArray()) {
+                int offset = buffer.arrayOffset() + buffer.position();
+                accept(buffer.array(), offset, offset + buffer.remaining());
+                return result();
+            }
+            char[] chunk = new char[Math.min(CHUNK, text.length())];
+            for (int from = 0; from < text.length() && !done(); from += chunk.length) {
+                int length = Math.min(chunk.length, text.length() - from);
+                if (text instanceof String string) {
+                    string.getChars(from, from + length, chunk, 0);
+                } else if (text instanceof CharBuffer buffer) {
+                    buffer.get(buffer.position() + from, chunk, 0, length);
+                } else {
+                    for (int i = 0; i < length; i++) {
+                        chunk[i] = text.charAt(from + i);
+                    }
+                }
+                accept(chunk, 0, length);
+            }
+            return result();
+        }
+
+        /**
+         * Analyzes the rest of a text from a reader.
+         * <p>
+         * The reader is not closed.
+         *
+         * @param reader Source of the text.
+         * @return Result of the analysis.
+         * @throws IOException          If reading fails.
+         * @throws NullPointerException If the reader is null.
+         */
+        public R analyze(Reader reader) throws IOException {
+            char[] chunk = new char[CHUNK];
+            int length;
+            while (!done() && (length = reader.read(chunk)) >= 0) {
+                accept(chunk, 0, length);
+            }
+            return result();
+        }
+
+        /**
+         * Analyzes a UTF-8 text file.
+         *
+         * @param file File to analyze.
+         * @return Result of the analysis.
+         * @throws IOException          If reading fails or the file is not a valid UTF-8 text.
+         * @throws NullPointerException If the file is null.
+         * @see #analyze(Path, Charset)
+         */
+        public R analyze(Path file) throws IOException {
+            return analyze(file, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Analyzes a text file.
+         * <p>
+         * The file is memory mapped by windows and decoded by chunks,
+         * so neither bytes nor characters of the whole file are kept in the heap.
+         *
+         * @param file    File to analyze.
+         * @param charset Encoding of the file.
+         * @return Result of the analysis.
+         * @throws IOException          If reading fails or the file is not a valid text in the encoding.
+         * @throws NullPointerException If the file or the charset is null.
+         */
+        public R analyze(Path file, Charset charset) throws IOException {
+            return analyze(file, charset, WINDOW);
+        }
+
+        private R analyze(Path file, Charset charset, long window) throws IOException {
+            CharsetDecoder decoder = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT);
+            // Decoders are much faster with heap buffers so mapped bytes are copied by chunks.
+            ByteBuffer bytes = ByteBuffer.allocate(CHUNK * 2);
+            CharBuffer chunk = CharBuffer.allocate(CHUNK);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = channel.size();
+                for (long position = 0; position < size && !done(); position += window) {
+                    ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY,
+                            position, Math.min(window, size - position));
+                    while (mapped.hasRemaining() && !done()) {
+                        int length = Math.min(bytes.remaining(), mapped.remaining());
+                        bytes.put(bytes.position(), mapped, mapped.position(), length);
+                        bytes.position(bytes.position() + length);
+                        mapped.position(mapped.position() + length);
+                        bytes.flip();
+                        decode(decoder, bytes, chunk, false);
+                        // Bytes of a character that is split by the end of a chunk are decoded with the next chunk.
+                        bytes.compact();
+                    }
+                }
+                if (!done()) {
+                    bytes.flip();
+                    decode(decoder, bytes, chunk, true);
+                    while (decoder.flush(chunk).isOverflow()) {
+                        acceptDecoded(chunk);
+                    }
+                    acceptDecoded(chunk);
+                }
+            }
+            return result();
+        }
+
+        private void decode(CharsetDecoder decoder, ByteBuffer bytes, CharBuffer chunk, boolean last)
+                throws IOException {
+            CoderResult result;
+            do {
+                result = decoder.decode(bytes, chunk, last);
+                if (result.isError()) {
+                    result.throwException();
+                }
+                acceptDecoded(chunk);
+            } while (result.isOverflow() && !done());
+        }
+
+        private void acceptDecoded(CharBuffer chunk) {
+            accept(chunk.array(), 0, chunk.position());
+            chunk.clear();
+        }
+
+        private static final class SymbolCounter extends TextAnalyzer<Map<Character, Integer>> {
+
+            private final CharHistogram histogram = new CharHistogram();
+
+            @Override
+            public void accept(char[] characters, int from, int to) {
+                histogram.add(characters, from, to);
+            }
+
+            @Override
+            public Map<Character, Integer> result() {
+                return histogram.total() == 0 ? Collections.emptyMap() : histogram.toMap();
+            }
+        }
+
+        private static final class VowelAndConsonantCounter extends TextAnalyzer<VowelsAndConsonants> {
+
+            private int vowels;
+            private int consonants;
+
+            @Override
+            public void accept(char[] characters, int from, int to) {
+                for (int i = from; i < to; i++) {
+                    int classes = classes(characters[i]);
+                    vowels += classes & VOWEL;
+                    consonants += (classes & CONSONANT) >>> 1;
+                }
+            }
+
+            @Override
+            public VowelsAndConsonants result() {
+                return new VowelsAndConsonants(vowels, consonants);
+            }
+        }
+
+        private static final class DigitChecker extends TextAnalyzer<Boolean> {
+
+            private boolean empty = true;
+            private boolean digitsOnly = true;
+
+            @Override
+            public void accept(char[] characters, int from, int to) {
+                for (int i = from; i < to && digitsOnly; i++) {
+                    digitsOnly = Character.isDigit(characters[i]);
+                }
+                empty &= from == to;
+            }
+
+            @Override
+            public Boolean result() {
+                return !empty && digitsOnly;
+            }
+
+            @Override
+            protected boolean done() {
+                return !digitsOnly;
+            }
+        }
+
+        private static final class SubstringCounter extends TextAnalyzer<Long> {
+
+            private final char[] substring;
+            /**
+             * Length of the longest proper prefix of the substring that is also a suffix
+             * of the first i + 1 characters of the substring.
+             */
+            private final int[] fallbacks;
+            /**
+             * Number of characters of the substring matched by the end of the text so far.
+             */
+            private int matched;
+            private long count;
+
+            SubstringCounter(String substring) {
+                this.substring = substring == null ? new char[0] : substring.toCharArray();
+                fallbacks = StringPeriodicity.prefixFunction(CharBuffer.wrap(this.substring), 0, this.substring.length);
+            }
+
+            @Override
+            public void accept(char[] characters, int from, int to) {
+                if (substring.length == 0) {
+                    return;
+                }
+                for (int i = from; i < to; i++) {
+                    char c = characters[i];
+                    while (matched > 0 && substring[matched] != c) {
+                        matched = fallbacks[matched - 1];
+                    }
+                    if (substring[matched] == c) {
+                        matched++;
+                    }
+                    if (matched == substring.length) {
+                        count++;
+                        // Overlapping occurrences are counted too.
+                        matched = fallbacks[matched - 1];
+                    }
+                }
+            }
+
+            @Override
+            public Long result() {
+                return count;
+            }
+
+            @Override
+            protected boolean done() {
+                return substring.length == 0;
+            }
+        }
+
+        private static final class NonRepeatingSymbolFinder extends TextAnalyzer<Optional<Character>> {
+
+            private final NonRepeatingSymbolTracker tracker = new NonRepeatingSymbolTracker();
+
+            @Override
+            public void accept(char[] characters, int from, int to) {
+                tracker.accept(characters, from, to);
+            }
+
+            @Override
+            public Optional<Character> result() {
+                int first = tracker.first();
+                return first < 0 ? Optional.empty() : Optional.of((char) first);
+            }
+        }
+    }
+
+    /**
+     * Several statistics of a text computed together in a single pass.
+     * <p>
+     * A text is read once by chunks and each chunk is handed to every selected statistic while it is in the cache.
+     * Statistics that need character counts share one {@link CharHistogram},
+     * the first non-repeating symbol is followed by a {@link NonRepeatingSymbolTracker}
+     * and vowels, consonants and digits are found by one lookup of classes of each character.
+     * Results are the same as of the corresponding methods of {@link Chapter1} for a string with the whole text.
+     * <p>
+     * Instances are immutable and could compute statistics of any number of texts concurrently.
+     * <p>
+     * Tasks 1, 2, 4, 5 and 14.
+     */
+    public static final class TextStats {
+
+        /**
+         * Statistics that could be computed.
+         */
+        public enum Statistic {
+            /**
+             * Same as {@link #countSymbols}.
+             */
+            SYMBOL_COUNTS,
+            /**
+             * Same as {@link #findMostOccurringCharacter}.
+             */
+            MOST_OCCURRING_CHARACTER,
+            /**
+             * Same as {@link #findNonRepeatingSymbol}.
+             */
+            NON_REPEATING_SYMBOL,
+            /**
+             * Same as {@link #countVowelsAndConsonants}.
+             */
+            VOWELS_AND_CONSONANTS,
+            /**
+             * Same as {@link #isDigitsOnly}.
+             */
+            DIGITS_ONLY
+        }
+
+        private final Set<Statistic> statistics;
+        /**
+         * Whether selected statistics need a {@link CharHistogram}.
+         */
+        private final boolean counting;
+        /**
+         * Whether selected statistics need a {@link NonRepeatingSymbolTracker}.
+         */
+        private final boolean tracking;
+        /**
+         * Whether selected statistics need classes of characters.
+         */
+        private final boolean classifying;
+        /**
+         * Whether reading could stop at the first character that is not a digit.
+         */
+        private final boolean digitsOnly;
+
+        private TextStats(Set<Statistic> statistics) {
+            this.statistics = Collections.unmodifiableSet(EnumSet.copyOf(statistics));
+            counting = statistics.contains(Statistic.SYMBOL_COUNTS)
+                    || statistics.contains(Statistic.MOST_OCCURRING_CHARACTER);
+            tracking = statistics.contains(Statistic.NON_REPEATING_SYMBOL);
+            classifying = statistics.contains(Statistic.VOWELS_AND_CONSONANTS)
+                    || statistics.contains(Statistic.DIGITS_ONLY);
+            digitsOnly = statistics.equals(EnumSet.of(Statistic.DIGITS_ONLY));
+        }
+
+        /**
+         * Selects statistics to compute.
+         *
+         * @param first First statistic to compute.
+         * @param rest  Other statistics to compute.
+         * @return Engine that computes the given statistics.
+         * @throws NullPointerException If any statistic is null.
+         */
+        public static TextStats of(Statistic first, Statistic... rest) {
+            return new TextStats(EnumSet.of(first, rest));
+        }
+
+        /**
+         * Selects all statistics.
+         *
+         * @return Engine that computes every statistic.
+         */
+        public static TextStats all() {
+            return new TextStats(EnumSet.allOf(Statistic.class));
+        }
+
+        /**
+         * Provides selected statistics.
+         *
+         * @return Unmodifiable set of statistics that are computed.
+         */
+        public Set<Statistic> statistics() {
+            return statistics;
+        }
+
+        /**
+         * Computes statistics of a text.
+         *
+         * @param text Text which statistics to compute.
+         * @return Selected statistics of the text.
+         * @throws NullPointerException If the text is null.
+         */
+        public Result compute(CharSequence text) {
+            return analyzer().analyze(text);
+        }
+
+        /**
+         * Creates an analyzer that computes statistics of a text fed to it chunk by chunk.
+         *
+         * @return New analyzer of a single text.
+         */
+        public TextAnalyzer<Result> analyzer() {
+            return new Analyzer(this);
+        }
+
+        /**
+         * Statistics of a text.
+         * <p>
+         * Only selected statistics are available.
+         */
+        public static final class Result {
+
+            private final Set<Statistic> statistics;
+            private final Map<Character, Integer> symbolCounts;
+            private final Optional<Character> mostOccurringCharacter;
+            private final Optional<Character> nonRepeatingSymbol;
+            private final VowelsAndConsonants vowelsAndConsonants;
+            private final boolean digitsOnly;
+
+            private Result(Set<Statistic> statistics, Map<Character, Integer> symbolCounts,
+                           Optional<Character> mostOccurringCharacter, Optional<Character> nonRepeatingSymbol,
+                           VowelsAndConsonants vowelsAndConsonants, boolean digitsOnly) {
+                this.statistics = statistics;
+                this.symbolCounts = symbolCounts;
+                this.mostOccurringCharacter = mostOccurringCharacter;
+                this.nonRepeatingSymbol = nonRepeatingSymbol;
+                this.vowelsAndConsonants = vowelsAndConsonants;
+                this.digitsOnly = digitsOnly;
+            }
+
+            /**
+             * Provides counts of symbols.
+             *
+             * @return Same as {@link #countSymbols}.
+             * @throws IllegalStateException If {@link Statistic#SYMBOL_COUNTS} was not selected.
+             */
+            public Map<Character, Integer> symbolCounts() {
+                check(Statistic.SYMBOL_COUNTS);
+                return symbolCounts;
+            }
+
+            /**
+             * Provides the most occurring character.
+             *
+             * @return Same as {@link #findMostOccurringCharacter}.
+             * @throws IllegalStateException If {@link Statistic#MOST_OCCURRING_CHARACTER} was not selected.
+             */
+            public Optional<Character> mostOccurringCharacter() {
+                check(Statistic.MOST_OCCURRING_CHARACTER);
+                return mostOccurringCharacter;
+            }
+
+            /**
+             * Provides the first non-repeating symbol.
+             *
+             * @return Same as {@link #findNonRepeatingSymbol}.
+             * @throws IllegalStateException If {@link Statistic#NON_REPEATING_SYMBOL} was not selected.
+             */
+            public Optional<Character> nonRepeatingSymbol() {
+                check(Statistic.NON_REPEATING_SYMBOL);
+                return nonRepeatingSymbol;
+            }
+
+            /**
+             * Provides numbers of vowels and consonants.
+             *
+             * @return Same as {@link #countVowelsAndConsonants}.
+             * @throws IllegalStateException If {@link Statistic#VOWELS_AND_CONSONANTS} was not selected.
+             */
+            public VowelsAndConsonants vowelsAndConsonants() {
+                check(Statistic.VOWELS_AND_CONSONANTS);
+                return vowelsAndConsonants;
+            }
+
+            /**
+             * Checks if the text contains only digits.
+             *
+             * @return Same as {@link #isDigitsOnly}.
+             * @throws IllegalStateException If {@link Statistic#DIGITS_ONLY} was not selected.
+             */
+            public boolean digitsOnly() {
+                check(Statistic.DIGITS_ONLY);
+                return digitsOnly;
+            }
+
+            private void check(Statistic statistic) {
+                if (!statistics.contains(statistic)) {
+                    throw new IllegalStateException(statistic + " was not selected");
+                }
+            }
+
+            @Override
+            public String toString() {
+                StringBuilder builder = new StringBuilder("TextStats.Result[");
+                for (Statistic statistic : statistics) {
+                    if (builder.charAt(builder.length() - 1) != '[') {
+                        builder.append(", ");
+                    }
+                    builder.append(statistic).append('=').append(switch (statistic) {
+                        case SYMBOL_COUNTS -> symbolCounts;
+                        case MOST_OCCURRING_CHARACTER -> mostOccurringCharacter;
+                        case NON_REPEATING_SYMBOL -> nonRepeatingSymbol;
+                        case VOWELS_AND_CONSONANTS -> vowelsAndConsonants;
+                        case DIGITS_ONLY -> digitsOnly;
+                    });
+                }
+                return builder.append(']').toString();
+            }
+        }
+
+        private static final class Analyzer extends TextAnalyzer<Result> {
+
+            private final TextStats stats;
+            /**
+             * Counts of characters or null if no selected statistic needs them.
+             */
+            private final CharHistogram histogram;
+            /**
+             * Tracker of the first non-repeating symbol or null if it is not selected.
+             */
+            private final NonRepeatingSymbolTracker tracker;
+            private long length;
+            private int vowels;
+            private int consonants;
+            private long nonDigits;
+
+            Analyzer(TextStats stats) {
+                this.stats = stats;
+                histogram = stats.counting ? new CharHistogram() : null;
+                tracker = stats.tracking ? new NonRepeatingSymbolTracker() : null;
+            }
+
+            @Override
+            public void accept(char[] characters, int from, int to) {
+                Objects.checkFromToIndex(from, to, characters.length);
+                if (histogram != null) {
+                    histogram.add(characters, from, to);
+                }
+                if (tracker != null) {
+                    tracker.accept(characters, from, to);
+                }
+                if (stats.classifying) {
+                    int chunkVowels = 0;
+                    int chunkConsonants = 0;
+                    int chunkNonDigits = 0;
+                    for (int i = from; i < to; i++) {
+                        int classes = classes(characters[i]);
+                        chunkVowels += classes & VOWEL;
+                        chunkConsonants += (classes & CONSONANT) >>> 1;
+                        chunkNonDigits += classes >>> 2;
+                    }
+                    vowels += chunkVowels;
+                    consonants += chunkConsonants;
+                    nonDigits += chunkNonDigits;
+                }
+                length += to - from;
+            }
+
+            @Override
+            protected boolean done() {
+                return stats.digitsOnly && nonDigits > 0;
+            }
+
+            @Override
+            public Result result() {
+                Set<Statistic> statistics = stats.statistics;
+                boolean empty = length == 0;
+                Map<Character, Integer> symbolCounts = statistics.contains(Statistic.SYMBOL_COUNTS) && !empty
+                        ? histogram.toMap() : Collections.emptyMap();
+                Optional<Character> mostOccurring = statistics.contains(Statistic.MOST_OCCURRING_CHARACTER) && !empty
+                        ? Optional.of((char) histogram.mostFrequent()) : Optional.empty();
+                int first = tracker == null ? -1 : tracker.first();
+                Optional<Character> nonRepeating = first < 0 ? Optional.empty() : Optional.of((char) first);
+                return new Result(statistics, symbolCounts, mostOccurring, nonRepeating,
+                        new VowelsAndConsonants(vowels, consonants), !empty && nonDigits == 0);
             }
         }
-        return !possibleSubstringsLengths.isEmpty();
     }
 
 }
@@ -1,7 +1,35 @@
 package com.github.nikolay_martynov.java_coding_problems;
 
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ObjLongConsumer;
 import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 public class Chapter5 {
 
@@ -9,20 +37,29 @@ public class Chapter5 {
      * Set based on a suffix tree.
      * <p>
      * This set could require less space if many similarly starting strings are stored.
+     * Layout of nodes and path compression could be chosen with {@link #builder()}.
      * <p>
      * {@link #add}, {@link #remove}, {@link #contains} complexity is proportional to string length.
+     * Words with a given prefix could be counted, viewed and completed without visiting other words.
+     * Words could also be walked with {@link #cursor} or {@link #visit} without creating a string per word.
      * <p>
      * This implementation is not thread safe and requires external synchronization.
      * <p>
      * This implementation does not permit null elements.
      * <p>
-     * Iterator provided by this implementation is read-only and does not support element removal.
+     * Iterator provided by this implementation returns words in lexicographical order.
+     * It is read-only and does not support element removal.
      * Additionally, this implementation does not permit modifications while iterating using an iterator.
      * Using an old iterator after a collection has been modified will throw {@link ConcurrentModificationException}.
      * <p>
+     * Words are ordered lexicographically regardless of the layout of nodes,
+     * so this is also a {@link NavigableSet}. Navigation methods descend the tree once
+     * and take time proportional to the key length. Range views are backed by this set,
+     * count their words with sizes of subtrees and support element removal by their iterators.
+     * <p>
      * Task 124.
      */
-    static public class SuffixTree extends AbstractSet<String> implements Set<String> {
+    static public class SuffixTree extends AbstractSet<String> implements NavigableSet<String> {
 
         private int size;
 
@@ -30,13 +67,27 @@ public class Chapter5 {
 
         private int modCount;
 
-        private final Supplier<Map<Character, Node>> characterMapSupplier;
+        private final NodeFactory nodeFactory;
+
+        private final boolean pathCompressed;
+
+        private final Metrics metrics;
+
+        private final boolean weighted;
+
+        /**
+         * Nodes from the root on the way to the word of the last {@link #insert} or {@link #delete}.
+         * Kept between operations so that they do not allocate.
+         */
+        private Node[] pathNodes = new Node[16];
+
+        private int pathLength;
 
         /**
          * Creates a new instance.
          */
         public SuffixTree() {
-            this(HashMap::new);
+            this(builder());
         }
 
         /**
@@ -46,85 +97,369 @@ public class Chapter5 {
          * @throws NullPointerException If characterMapSupplier is null.
          */
         public SuffixTree(Supplier<Map<Character, Node>> characterMapSupplier) {
-            this.characterMapSupplier = Objects.requireNonNull(characterMapSupplier,
-                    "characterMapSupplier must not be null");
+            this(builder().characterMapSupplier(characterMapSupplier));
         }
 
-        @Override
-        public boolean contains(Object o) {
-            String s = (String) Objects.requireNonNull(o);
-            if (root == null) {
-                return false;
+        private SuffixTree(Builder builder) {
+            this(builder, false);
+        }
+
+        /**
+         * Creates a new instance.
+         *
+         * @param builder Builder that defines how words are kept.
+         * @param values  true to create nodes that keep values of map keys, see {@link Node#value()}.
+         */
+        private SuffixTree(Builder builder, boolean values) {
+            pathCompressed = builder.pathCompressed;
+            metrics = builder.metrics;
+            weighted = builder.weighted && !values;
+            if (builder.compact) {
+                nodeFactory = values ? CompactValueNode::new
+                        : weighted ? WeightedCompactNode::new
+                        : CompactNode::new;
+            } else {
+                Supplier<Map<Character, Node>> characterMapSupplier = builder.characterMapSupplier;
+                nodeFactory = values ? () -> new MapValueNode(characterMapSupplier.get())
+                        : weighted ? () -> new WeightedMapNode(characterMapSupplier.get())
+                        : () -> new MapNode(characterMapSupplier.get());
             }
-            Node currentNode = root;
-            for (int i = 0; i < s.length(); i++) {
-                Node child = currentNode.children.get(s.charAt(i));
-                if (child == null) {
-                    return false;
+        }
+
+        /**
+         * Creates a builder of a new instance.
+         *
+         * @return Builder which by default creates the same instance as {@link #SuffixTree()}.
+         */
+        public static Builder builder() {
+            return new Builder();
+        }
+
+        /**
+         * Builder of {@link SuffixTree}.
+         */
+        public static final class Builder {
+
+            private Supplier<Map<Character, Node>> characterMapSupplier = HashMap::new;
+
+            private boolean compact;
+
+            private boolean pathCompressed;
+
+            private boolean weighted;
+
+            private Metrics metrics = Metrics.NONE;
+
+            private Builder() {
+            }
+
+            /**
+             * Makes tree nodes keep children in maps.
+             * <p>
+             * This is the default layout with {@link HashMap} being used as the map.
+             *
+             * @param characterMapSupplier Supplier of new character maps for tree nodes.
+             * @return This builder.
+             * @throws NullPointerException If characterMapSupplier is null.
+             */
+            public Builder characterMapSupplier(Supplier<Map<Character, Node>> characterMapSupplier) {
+                this.characterMapSupplier = Objects.requireNonNull(characterMapSupplier,
+                        "characterMapSupplier must not be null");
+                this.compact = false;
+                return this;
+            }
+
+            /**
+             * Makes tree nodes keep children in primitive arrays.
+             * <p>
+             * Nodes with a few children keep sorted parallel {@code char[]} and node arrays
+             * and locate a child with a binary search.
+             * Wide nodes which children characters are close to each other switch to a dense array
+             * indexed directly by a character.
+             * This avoids boxed characters and map entries and requires several times less memory
+             * than the default {@link HashMap} based layout.
+             *
+             * @return This builder.
+             */
+            public Builder compact() {
+                this.compact = true;
+                return this;
+            }
+
+            /**
+             * Makes the tree a radix tree.
+             * <p>
+             * Nodes that are not ends of words and have a single child are merged with the child
+             * and a merged node keeps characters of the whole chain as a label.
+             * This reduces the number of nodes and lookups in nodes when words have long unique parts.
+             * Labels are split when a word diverges in the middle of a label and merged back on removal.
+             *
+             * @return This builder.
+             */
+            public Builder pathCompressed() {
+                this.pathCompressed = true;
+                return this;
+            }
+
+            /**
+             * Makes nodes keep weights of words for {@link #add(String, int)} and {@link #topCompletions}.
+             * <p>
+             * Each node gets the weight of its word and the highest weight in its subtree,
+             * so {@link #topCompletions} reads them directly while walking the tree.
+             * This takes 8 more bytes per node, so trees without weights do not pay for them.
+             *
+             * @return This builder.
+             */
+            public Builder weighted() {
+                this.weighted = true;
+                return this;
+            }
+
+            /**
+             * Makes the tree report operations to given metrics.
+             * <p>
+             * The default is {@link Metrics#NONE} which records nothing.
+             * Calls to it are inlined by the JIT compiler into nothing,
+             * so a tree without metrics does not even read the clock.
+             *
+             * @param metrics Receiver of operations, for example {@link RecordingMetrics}.
+             *                Could be shared by several trees.
+             * @return This builder.
+             * @throws NullPointerException If metrics is null.
+             */
+            public Builder metrics(Metrics metrics) {
+                this.metrics = Objects.requireNonNull(metrics, "metrics must not be null");
+                return this;
+            }
+
+            /**
+             * Creates a new tree.
+             *
+             * @return New empty tree.
+             */
+            public SuffixTree build() {
+                return new SuffixTree(this);
+            }
+
+            /**
+             * Creates a new tree from sorted words.
+             * <p>
+             * This is faster than adding words one by one since each word reuses
+             * the nodes of the common prefix with the previous word instead of searching for them from the root.
+             *
+             * @param words Words in lexicographical order as per {@link String#compareTo}.
+             *              Duplicates are allowed and ignored.
+             * @return New tree with the given words.
+             * @throws NullPointerException     If words or any word is null.
+             * @throws IllegalArgumentException If words are not sorted.
+             */
+            public SuffixTree buildSorted(Iterator<? extends String> words) {
+                Objects.requireNonNull(words, "words must not be null");
+                SuffixTree tree = build();
+                tree.loadSorted(words);
+                return tree;
+            }
+
+            /**
+             * Creates a new tree from sorted words.
+             * <p>
+             * If the stream is parallel then words are partitioned by the first character
+             * and a subtree for each partition is built in parallel in {@link ForkJoinPool#commonPool()}.
+             *
+             * @param words Words in lexicographical order as per {@link String#compareTo}.
+             *              Duplicates are allowed and ignored.
+             * @return New tree with the given words.
+             * @throws NullPointerException     If words or any word is null.
+             * @throws IllegalArgumentException If words are not sorted.
+             * @see #buildSorted(Iterator)
+             */
+            public SuffixTree buildSorted(Stream<? extends String> words) {
+                Objects.requireNonNull(words, "words must not be null");
+                if (!words.isParallel()) {
+                    return buildSorted(words.iterator());
                 }
-                currentNode = child;
+                SuffixTree tree = build();
+                tree.loadSortedInParallel(words.sequential().iterator(), this);
+                return tree;
             }
-            return currentNode.endOfWord;
+
+            /**
+             * Creates a new tree from a file with sorted words.
+             *
+             * @param file UTF-8 text file with a word per line in lexicographical order as per {@link String#compareTo}.
+             *             Duplicates are allowed and ignored.
+             * @return New tree with the given words.
+             * @throws IOException              If reading fails.
+             * @throws NullPointerException     If the file is null.
+             * @throws IllegalArgumentException If words are not sorted.
+             * @see #buildSorted(Iterator)
+             */
+            public SuffixTree buildSorted(Path file) throws IOException {
+                Objects.requireNonNull(file, "file must not be null");
+                try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                    return buildSorted(reader.lines().iterator());
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            }
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            String s = (String) Objects.requireNonNull(o);
+            long start = metrics.start();
+            Node node = find(s);
+            boolean found = node != null && node.endOfWord;
+            metrics.contains(s, found, start);
+            return found;
         }
 
         @Override
         public boolean add(String s) {
             Objects.requireNonNull(s);
+            long start = metrics.start();
+            int oldSize = size;
+            insert(s);
+            boolean added = size != oldSize;
+            metrics.add(s, added, start);
+            return added;
+        }
+
+        /**
+         * Adds a word that is known to be missing.
+         *
+         * @param s Word to add.
+         * @return Node where the word ends.
+         */
+        private Node addMissing(String s) {
+            long start = metrics.start();
+            Node node = insert(s);
+            metrics.add(s, true, start);
+            return node;
+        }
+
+        /**
+         * Adds a word unless it already exists.
+         * <p>
+         * Nodes on the way to the word are left in {@link #pathNodes}.
+         * Sizes of subtrees are only changed once the word is known to be new.
+         *
+         * @param s Word to add.
+         * @return Node where the word ends. The word has been added if {@link #size} has changed.
+         */
+        private Node insert(String s) {
             if (root == null) {
                 root = createNode();
             }
-            boolean changed = false;
+            pathLength = 0;
             Node currentNode = root;
-            for (int i = 0; i < s.length(); i++) {
-                Node child = currentNode.children.get(s.charAt(i));
+            int i = 0;
+            while (i < s.length()) {
+                pushPath(currentNode);
+                char c = s.charAt(i);
+                Node child = currentNode.child(c);
                 if (child == null) {
-                    child = createNode();
-                    currentNode.children.put(s.charAt(i), child);
-                    changed = true;
+                    countAdded();
+                    return createPath(currentNode, c, s, i + 1);
+                }
+                int common = child.commonLabelPrefix(s, i + 1);
+                if (common < child.label.length) {
+                    // The word diverges from or ends in the middle of the label.
+                    child = split(currentNode, c, child, common);
                 }
                 currentNode = child;
+                i += 1 + common;
             }
+            pushPath(currentNode);
             if (!currentNode.endOfWord) {
                 currentNode.endOfWord = true;
-                changed = true;
+                countAdded();
             }
-            if (changed) {
-                size++;
-                modCount++;
+            return currentNode;
+        }
+
+        /**
+         * Counts a new word in subtrees of {@link #pathNodes} and in the tree.
+         */
+        private void countAdded() {
+            for (int i = 0; i < pathLength; i++) {
+                pathNodes[i].size++;
+            }
+            size++;
+            modCount++;
+        }
+
+        private void pushPath(Node node) {
+            if (pathLength == pathNodes.length) {
+                pathNodes = Arrays.copyOf(pathNodes, pathLength * 2);
             }
-            return changed;
+            pathNodes[pathLength++] = node;
         }
 
         @Override
         public boolean remove(Object o) {
             String s = (String) Objects.requireNonNull(o);
+            long start = metrics.start();
+            boolean removed = delete(s);
+            metrics.remove(s, removed, start);
+            return removed;
+        }
+
+        private boolean delete(String s) {
             if (root == null) {
                 return false;
             }
+            Node parentNode = null;
+            char parentKey = 0;
             Node currentNode = root;
+            Node lastBranchParent = null;
+            char lastBranchKey = 0;
             Node lastBranchNode = root;
-            int lastBranchIndex = -1;
-            for (int i = 0; i < s.length(); i++) {
-                Node child = currentNode.children.get(s.charAt(i));
-                if (child == null) {
+            int lastBranchEdge = -1;
+            pathLength = 0;
+            pushPath(root);
+            int i = 0;
+            while (i < s.length()) {
+                char c = s.charAt(i);
+                Node child = currentNode.child(c);
+                if (child == null || child.commonLabelPrefix(s, i + 1) < child.label.length) {
                     // Word to remove is not found.
                     return false;
                 }
-                if (currentNode.children.size() > 1) {
+                if (currentNode == root || currentNode.childCount() > 1 || currentNode.endOfWord) {
+                    // Nodes that lead to other words must be kept.
+                    lastBranchParent = parentNode;
+                    lastBranchKey = parentKey;
                     lastBranchNode = currentNode;
-                    lastBranchIndex = i;
+                    lastBranchEdge = c;
                 }
+                parentNode = currentNode;
+                parentKey = c;
                 currentNode = child;
+                pushPath(currentNode);
+                i += 1 + child.label.length;
             }
             if (!currentNode.endOfWord) {
                 // We have a longer word but not this given shorter one.
                 return false;
             }
+            for (int j = 0; j < pathLength; j++) {
+                pathNodes[j].size--;
+            }
             currentNode.endOfWord = false;
-            if (currentNode.children.isEmpty() && lastBranchIndex >= 0) {
-                lastBranchNode.children.remove(s.charAt(lastBranchIndex));
+            if (currentNode.weight() > 0) {
+                currentNode.setWeight(0);
+                updateMaxWeights();
+            }
+            // Do not keep removed nodes reachable.
+            Arrays.fill(pathNodes, 0, pathLength, null);
+            if (currentNode.childCount() == 0 && lastBranchEdge >= 0) {
+                lastBranchNode.removeChild((char) lastBranchEdge);
+                mergeWithSingleChild(lastBranchParent, lastBranchKey, lastBranchNode);
+            } else {
+                mergeWithSingleChild(parentNode, parentKey, currentNode);
             }
-            if (root.children.isEmpty()) {
+            if (root.childCount() == 0 && !root.endOfWord) {
                 root = null;
             }
             size--;
@@ -136,121 +471,5759 @@ public class Chapter5 {
         public void clear() {
             size = 0;
             root = null;
+            Arrays.fill(pathNodes, 0, pathLength, null);
             modCount++;
         }
 
         /**
-         * {@inheritDoc}
+         * Adds a word with a weight or changes the weight of an existing word.
          * <p>
-         * Supplied iterator does not support {@link Iterator#remove}.
+         * Weights define the order of {@link #topCompletions}.
+         * Words added with {@link #add(String)} have zero weight.
+         *
+         * @param s      Word to add.
+         * @param weight Non-negative weight of the word.
+         * @return true if the word has been added or false if it already existed.
+         * @throws NullPointerException     If the word is null.
+         * @throws IllegalArgumentException If the weight is negative.
+         * @throws IllegalStateException    If the tree has not been built with {@link Builder#weighted()}.
          */
-        @Override
-        public Iterator<String> iterator() {
-            return new SuffixTreeIterator();
+        public boolean add(String s, int weight) {
+            Objects.requireNonNull(s);
+            if (weight < 0) {
+                throw new IllegalArgumentException("weight must not be negative but was " + weight);
+            }
+            if (!weighted) {
+                throw new IllegalStateException("Weights require a tree built with Builder.weighted()");
+            }
+            long start = metrics.start();
+            int oldSize = size;
+            Node node = insert(s);
+            boolean added = size != oldSize;
+            metrics.add(s, added, start);
+            int oldWeight = node.weight();
+            if (weight > oldWeight) {
+                node.setWeight(weight);
+                for (int i = pathLength - 1; i >= 0; i--) {
+                    Node pathNode = pathNodes[i];
+                    if (pathNode.maxWeight() >= weight) {
+                        // Subtrees above have at least the same weight.
+                        break;
+                    }
+                    pathNode.setMaxWeight(weight);
+                }
+            } else if (weight < oldWeight) {
+                node.setWeight(weight);
+                updateMaxWeights();
+            }
+            return added;
         }
 
-        @Override
-        public int size() {
-            return size;
+        /**
+         * Counts words that start with a given prefix.
+         * <p>
+         * Complexity is proportional to the prefix length.
+         *
+         * @param prefix Prefix of words to count.
+         * @return Number of words in this set that start with the prefix.
+         * @throws NullPointerException If the prefix is null.
+         */
+        public int countWithPrefix(String prefix) {
+            PrefixMatch match = findPrefix(Objects.requireNonNull(prefix));
+            return match == null ? 0 : match.node.size;
         }
 
-        private Node createNode() {
-            Node node = new Node();
-            node.children = characterMapSupplier.get();
-            return node;
+        /**
+         * Provides a view of words that start with a given prefix.
+         * <p>
+         * The view is backed by this set so changes to either are reflected in the other.
+         * {@link Set#size} of the view takes time proportional to the prefix length
+         * and its iterator visits only words with the prefix.
+         * Adding a word that does not start with the prefix to the view
+         * throws {@link IllegalArgumentException}.
+         *
+         * @param prefix Prefix of words to include into the view.
+         * @return View of words with the prefix.
+         * @throws NullPointerException If the prefix is null.
+         */
+        public Set<String> prefixView(String prefix) {
+            return new PrefixView(Objects.requireNonNull(prefix));
         }
 
-        private static class Node {
-            Map<Character, Node> children;
-            boolean endOfWord;
+        /**
+         * Finds first words in lexicographical order that start with a given prefix.
+         *
+         * @param prefix Prefix of words to find.
+         * @param k      Maximum number of words to return.
+         * @return At most k words with the prefix in lexicographical order.
+         * @throws NullPointerException     If the prefix is null.
+         * @throws IllegalArgumentException If k is negative.
+         */
+        public List<String> completions(String prefix, int k) {
+            Objects.requireNonNull(prefix);
+            if (k < 0) {
+                throw new IllegalArgumentException("k must not be negative but was " + k);
+            }
+            List<String> result = new ArrayList<>();
+            PrefixMatch match = findPrefix(prefix);
+            if (match == null) {
+                return result;
+            }
+            Iterator<String> iterator = new SuffixTreeIterator(match.node, match.path);
+            while (result.size() < k && iterator.hasNext()) {
+                result.add(iterator.next());
+            }
+            return result;
+        }
 
-            @Override
-            public String toString() {
-                return new StringJoiner(", ", "[", "]")
-                        .add(String.valueOf(endOfWord))
-                        .add(Objects.toString(children))
-                        .toString();
+        /**
+         * Finds words with the highest weights that start with a given prefix.
+         * <p>
+         * Subtrees are visited in order of the highest weight of their words
+         * so only subtrees on the way to the returned words are expanded.
+         *
+         * @param prefix Prefix of words to find.
+         * @param k      Maximum number of words to return.
+         * @return At most k words with the prefix ordered by descending weight
+         * and then in lexicographical order.
+         * @throws NullPointerException     If the prefix is null.
+         * @throws IllegalArgumentException If k is negative.
+         * @see #add(String, int)
+         */
+        public List<String> topCompletions(String prefix, int k) {
+            Objects.requireNonNull(prefix);
+            if (k < 0) {
+                throw new IllegalArgumentException("k must not be negative but was " + k);
+            }
+            List<String> result = new ArrayList<>();
+            long start = metrics.start();
+            PrefixMatch match = findPrefix(prefix);
+            if (match == null || k == 0) {
+                metrics.traversal("topCompletions", prefix, 0, start);
+                return result;
+            }
+            int expanded = 0;
+            PriorityQueue<Candidate> candidates = new PriorityQueue<>();
+            candidates.add(new Candidate(match.node.maxWeight(), null, '\0', match.node, 0, match.path.length()));
+            while (result.size() < k && !candidates.isEmpty()) {
+                Candidate candidate = candidates.poll();
+                Node node = candidate.node;
+                if (node == null) {
+                    result.add(candidate.path(match.path));
+                    continue;
+                }
+                expanded++;
+                if (node.endOfWord) {
+                    candidates.add(new Candidate(node.weight(), candidate, '\0', null,
+                            candidate.depth, candidate.length));
+                }
+                for (int key = node.nextKey(-1); key >= 0; key = node.nextKey(key)) {
+                    Node child = node.child((char) key);
+                    candidates.add(new Candidate(child.maxWeight(), candidate, (char) key, child,
+                            candidate.depth + 1, candidate.length + 1 + child.label.length));
+                }
             }
+            metrics.traversal("topCompletions", prefix, expanded, start);
+            return result;
         }
 
-        private class SuffixTreeIterator implements Iterator<String> {
+        /**
+         * Finds words within a given edit distance of a query.
+         * <p>
+         * Edit distance is the number of inserted, deleted and replaced characters (Levenshtein distance).
+         * Distances from the query to all prefixes on the way down are computed incrementally,
+         * one row per character, and a subtree is skipped as soon as every distance in the row
+         * exceeds the limit. So only prefixes that are close to the query are visited.
+         *
+         * @param query    Word to search for.
+         * @param maxEdits Maximum number of edits.
+         * @return Words with at most maxEdits edits from the query in lexicographical order.
+         * @throws NullPointerException     If the query is null.
+         * @throws IllegalArgumentException If maxEdits is negative.
+         */
+        public List<String> fuzzyMatches(String query, int maxEdits) {
+            List<String> result = new ArrayList<>();
+            long start = metrics.start();
+            int visited = new FuzzySearch(query, maxEdits) {
+                @Override
+                void found(String word, int distance) {
+                    result.add(word);
+                }
+            }.run();
+            metrics.traversal("fuzzyMatches", query, visited, start);
+            return result;
+        }
 
-            private record Branch(Node node, Iterator<Map.Entry<Character, Node>> childrenIterator) {
+        /**
+         * Finds words that are the closest to a query.
+         * <p>
+         * Once limit words have been found, the maximum number of edits is lowered
+         * so that only words closer than the worst found one are searched further.
+         *
+         * @param query    Word to search for.
+         * @param maxEdits Maximum number of edits.
+         * @param limit    Maximum number of words to return.
+         * @return At most limit words with at most maxEdits edits from the query
+         * ordered by edit distance and then in lexicographical order.
+         * @throws NullPointerException     If the query is null.
+         * @throws IllegalArgumentException If maxEdits or limit is negative.
+         * @see #fuzzyMatches(String, int)
+         */
+        public List<String> fuzzyMatches(String query, int maxEdits, int limit) {
+            if (limit < 0) {
+                throw new IllegalArgumentException("limit must not be negative but was " + limit);
+            }
+            record Match(String word, int distance) {
+            }
+            // The worst match is on top.
+            PriorityQueue<Match> matches = new PriorityQueue<>(
+                    Comparator.comparingInt(Match::distance).thenComparing(Match::word).reversed());
+            FuzzySearch search = new FuzzySearch(query, maxEdits) {
+                @Override
+                void found(String word, int distance) {
+                    matches.add(new Match(word, distance));
+                    if (matches.size() > limit) {
+                        matches.poll();
+                    }
+                    if (matches.size() == limit) {
+                        // Words come in lexicographical order so a later word has to be strictly closer.
+                        this.maxEdits = matches.peek().distance - 1;
+                    }
+                }
+            };
+            if (limit > 0) {
+                long start = metrics.start();
+                int visited = search.run();
+                metrics.traversal("fuzzyMatches", query, visited, start);
+            }
+            List<String> result = new ArrayList<>(matches.size());
+            while (!matches.isEmpty()) {
+                result.add(matches.poll().word);
             }
+            Collections.reverse(result);
+            return result;
+        }
 
-            private int createdAt;
-            private Deque<Branch> path;
-            private StringBuilder prefix;
-            private Node lastWordPrefixNode;
-            private Character lastWordPrefixCharacter;
+        /**
+         * Compiles words of this set into a matcher that finds all of them in a text at once.
+         * <p>
+         * The matcher does not depend on this set so later modifications are not reflected in it.
+         *
+         * @return Aho-Corasick automaton that finds words of this set.
+         * @see KeywordMatcher
+         */
+        public KeywordMatcher compileMatcher() {
+            return KeywordMatcher.of(this);
+        }
+
+        /**
+         * Creates an immutable copy of this set.
+         *
+         * @return Immutable set with the same elements that requires much less memory.
+         * @see FrozenSuffixTree
+         */
+        public FrozenSuffixTree freeze() {
+            return FrozenSuffixTree.of(this);
+        }
 
-            public SuffixTreeIterator() {
-                this.createdAt = modCount;
-                if (root != null) {
-                    path = new LinkedList<>();
-                    path.add(new Branch(root, root.children.entrySet().iterator()));
-                    prefix = new StringBuilder();
+        /**
+         * Describes the current structure of this tree.
+         * <p>
+         * All nodes are walked so this takes time proportional to the number of nodes.
+         *
+         * @return Number of nodes, their estimated size and histograms of depths and fan-outs.
+         */
+        public Shape shape() {
+            if (root == null) {
+                return new Shape(0, 0, new int[0], new int[0]);
+            }
+            int nodeCount = 0;
+            long estimatedBytes = 0;
+            int[] wordDepths = new int[16];
+            int[] fanOuts = new int[16];
+            Node[] nodes = new Node[16];
+            int[] depths = new int[16];
+            nodes[0] = root;
+            int top = 0;
+            while (top >= 0) {
+                Node node = nodes[top];
+                int depth = depths[top];
+                nodes[top--] = null;
+                nodeCount++;
+                estimatedBytes += node.estimatedBytes();
+                if (node.endOfWord) {
+                    if (depth >= wordDepths.length) {
+                        wordDepths = Arrays.copyOf(wordDepths, depth * 2);
+                    }
+                    wordDepths[depth]++;
+                }
+                int childCount = node.childCount();
+                if (childCount >= fanOuts.length) {
+                    fanOuts = Arrays.copyOf(fanOuts, childCount * 2);
+                }
+                fanOuts[childCount]++;
+                if (top + childCount >= nodes.length) {
+                    nodes = Arrays.copyOf(nodes, (top + childCount) * 2 + 1);
+                    depths = Arrays.copyOf(depths, nodes.length);
+                }
+                for (int key = node.nextKey(-1); key >= 0; key = node.nextKey(key)) {
+                    top++;
+                    nodes[top] = node.child((char) key);
+                    depths[top] = depth + 1;
                 }
             }
+            return new Shape(nodeCount, estimatedBytes, trim(wordDepths), trim(fanOuts));
+        }
 
-            private void push(char character, Node node) {
-                path.addFirst(new Branch(node, node.children.entrySet().iterator()));
-                prefix.append(character);
+        /**
+         * Removes trailing zeros of a histogram.
+         *
+         * @param histogram Histogram to trim.
+         * @return Histogram that ends with a non-zero element.
+         */
+        private static int[] trim(int[] histogram) {
+            int length = histogram.length;
+            while (length > 0 && histogram[length - 1] == 0) {
+                length--;
             }
+            return Arrays.copyOf(histogram, length);
+        }
 
-            private Branch head() {
-                return path.getFirst();
-            }
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Supplied iterator does not support {@link Iterator#remove}.
+         */
+        @Override
+        public Iterator<String> iterator() {
+            return new SuffixTreeIterator(root, "");
+        }
 
-            private void pop() {
-                lastWordPrefixNode = path.removeFirst().node;
-                if (!prefix.isEmpty()) {
-                    // Could be an empty string in root.
-                    lastWordPrefixCharacter = prefix.charAt(prefix.length() - 1);
-                    prefix.deleteCharAt(prefix.length() - 1);
-                }
-            }
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Supplied spliterator splits along subtrees and reports exact sizes,
+         * so {@link #parallelStream()} spreads words evenly between threads.
+         */
+        @Override
+        public Spliterator<String> spliterator() {
+            return new SuffixTreeSpliterator(root, "");
+        }
 
-            private void assertNotModified() {
-                if (modCount != createdAt) {
-                    throw new ConcurrentModificationException(
-                            "The suffix tree has been modified since creation of this iterator");
+        /**
+         * Creates a cursor over words that start with a given prefix.
+         * <p>
+         * Unlike {@link #iterator()}, a cursor does not create a string per word
+         * and could be reused for other prefixes with {@link Cursor#reset}.
+         *
+         * @param prefix Prefix of words to walk. Empty prefix walks all words.
+         * @return Cursor positioned before the first word with the prefix.
+         * @throws NullPointerException If the prefix is null.
+         */
+        public Cursor cursor(String prefix) {
+            return new Cursor(null, "").reset(prefix);
+        }
+
+        /**
+         * Visits all words in lexicographical order.
+         *
+         * @param visitor Receiver of words.
+         * @return true if all words have been visited or false if the visitor has stopped.
+         * @throws NullPointerException If the visitor is null.
+         * @see #visit(String, WordVisitor)
+         */
+        public boolean visit(WordVisitor visitor) {
+            return visit("", visitor);
+        }
+
+        /**
+         * Visits words that start with a given prefix in lexicographical order.
+         * <p>
+         * Words are passed as views of a shared buffer and only nodes with the prefix are walked,
+         * so visiting does not allocate anything per word.
+         *
+         * @param prefix  Prefix of words to visit.
+         * @param visitor Receiver of words.
+         * @return true if all words have been visited or false if the visitor has stopped.
+         * @throws NullPointerException            If the prefix or the visitor is null.
+         * @throws ConcurrentModificationException If the visitor modifies this set.
+         */
+        public boolean visit(String prefix, WordVisitor visitor) {
+            Objects.requireNonNull(visitor);
+            long start = metrics.start();
+            Cursor cursor = cursor(prefix);
+            int visited = 0;
+            boolean completed = true;
+            while (cursor.next()) {
+                visited++;
+                if (!visitor.visit(cursor.word())) {
+                    completed = false;
+                    break;
                 }
             }
+            metrics.traversal("visit", prefix, visited, start);
+            return completed;
+        }
 
-            @Override
-            public boolean hasNext() {
-                assertNotModified();
-                return path != null && !path.isEmpty();
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Comparator<? super String> comparator() {
+            return null;
+        }
+
+        @Override
+        public String first() {
+            if (size == 0) {
+                throw new NoSuchElementException();
             }
+            return firstWord(root, new StringBuilder());
+        }
 
-            @Override
-            public String next() {
-                assertNotModified();
-                if (!hasNext()) {
-                    throw new NoSuchElementException();
-                }
-                // Advance to the end of the longest word.
-                while (head().childrenIterator.hasNext()) {
-                    Map.Entry<Character, Node> child = head().childrenIterator.next();
-                    push(child.getKey(), child.getValue());
-                }
-                if (!head().node.endOfWord) {
-                    throw new IllegalStateException(
-                            "Expected deepest child or top of stack" +
-                                    " to be end of word but it was not");
-                }
-                String word = prefix.toString();
-                // Get back to where we have siblings or end of word.
-                pop();
-                while (!path.isEmpty() && !head().node.endOfWord && !head().childrenIterator.hasNext()) {
-                    pop();
-                }
-                return word;
+        @Override
+        public String last() {
+            if (size == 0) {
+                throw new NoSuchElementException();
             }
+            return lastWord(root, new StringBuilder());
+        }
+
+        @Override
+        public String lower(String s) {
+            return below(s, false);
+        }
+
+        @Override
+        public String floor(String s) {
+            return below(s, true);
+        }
 
+        @Override
+        public String ceiling(String s) {
+            return above(s, true);
+        }
+
+        @Override
+        public String higher(String s) {
+            return above(s, false);
         }
 
+        @Override
+        public String pollFirst() {
+            return size == 0 ? null : poll(first());
+        }
+
+        @Override
+        public String pollLast() {
+            return size == 0 ? null : poll(last());
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Supplied iterator supports {@link Iterator#remove}.
+         */
+        @Override
+        public Iterator<String> descendingIterator() {
+            return new NavigatingIterator(this, false);
+        }
+
+        @Override
+        public NavigableSet<String> descendingSet() {
+            return new DescendingSet(this);
+        }
+
+        @Override
+        public NavigableSet<String> subSet(String fromElement, boolean fromInclusive,
+                                           String toElement, boolean toInclusive) {
+            if (Objects.requireNonNull(fromElement).compareTo(Objects.requireNonNull(toElement)) > 0) {
+                throw new IllegalArgumentException(
+                        "fromElement '" + fromElement + "' is greater than toElement '" + toElement + "'");
+            }
+            return new SubSet(fromElement, fromInclusive, toElement, toInclusive);
+        }
+
+        @Override
+        public NavigableSet<String> headSet(String toElement, boolean inclusive) {
+            return new SubSet(null, false, Objects.requireNonNull(toElement), inclusive);
+        }
+
+        @Override
+        public NavigableSet<String> tailSet(String fromElement, boolean inclusive) {
+            return new SubSet(Objects.requireNonNull(fromElement), inclusive, null, false);
+        }
+
+        @Override
+        public SortedSet<String> subSet(String fromElement, String toElement) {
+            return subSet(fromElement, true, toElement, false);
+        }
+
+        @Override
+        public SortedSet<String> headSet(String toElement) {
+            return headSet(toElement, false);
+        }
+
+        @Override
+        public SortedSet<String> tailSet(String fromElement) {
+            return tailSet(fromElement, true);
+        }
+
+        private String poll(String s) {
+            remove(s);
+            return s;
+        }
+
+        /**
+         * Finds the smallest word of a subtree.
+         *
+         * @param node Top node of the subtree.
+         * @param path Characters on the way to the node. Characters of the word are appended to it.
+         * @return The smallest word.
+         */
+        private static String firstWord(Node node, StringBuilder path) {
+            while (!node.endOfWord) {
+                int key = node.nextKey(-1);
+                node = node.child((char) key);
+                path.append((char) key).append(node.label);
+            }
+            return path.toString();
+        }
+
+        /**
+         * Finds the greatest word of a subtree.
+         *
+         * @param node Top node of the subtree.
+         * @param path Characters on the way to the node. Characters of the word are appended to it.
+         * @return The greatest word.
+         */
+        private static String lastWord(Node node, StringBuilder path) {
+            for (int key = node.previousKey(Character.MAX_VALUE + 1); key >= 0;
+                 key = node.previousKey(Character.MAX_VALUE + 1)) {
+                node = node.child((char) key);
+                path.append((char) key).append(node.label);
+            }
+            return path.toString();
+        }
+
+        /**
+         * Finds the smallest word that is greater than a given one.
+         * <p>
+         * Subtrees to the right of the path of the given word are greater than it
+         * and the deepest of them contains the closest words.
+         *
+         * @param s         Word to compare with.
+         * @param inclusive Whether the word itself could be returned.
+         * @return Found word or null if there is no such word.
+         */
+        private String above(String s, boolean inclusive) {
+            Objects.requireNonNull(s);
+            if (size == 0) {
+                return null;
+            }
+            Node greater = null;
+            int greaterLength = 0;
+            int greaterKey = -1;
+            Node node = root;
+            int i = 0;
+            while (true) {
+                if (i == s.length()) {
+                    if (inclusive && node.endOfWord) {
+                        return s;
+                    }
+                    int key = node.nextKey(-1);
+                    if (key >= 0) {
+                        Node child = node.child((char) key);
+                        return firstWord(child, new StringBuilder(s).append((char) key).append(child.label));
+                    }
+                    break;
+                }
+                char c = s.charAt(i);
+                int key = node.nextKey(c);
+                if (key >= 0) {
+                    greater = node.child((char) key);
+                    greaterLength = i;
+                    greaterKey = key;
+                }
+                Node child = node.child(c);
+                if (child == null) {
+                    break;
+                }
+                int common = child.commonLabelPrefix(s, i + 1);
+                if (common < child.label.length) {
+                    int next = i + 1 + common;
+                    if (next == s.length() || child.label[common] > s.charAt(next)) {
+                        // The word is a prefix of the label or is smaller than the label.
+                        return firstWord(child, new StringBuilder().append(s, 0, i + 1).append(child.label));
+                    }
+                    break;
+                }
+                node = child;
+                i += 1 + common;
+            }
+            return greater == null
+                    ? null
+                    : firstWord(greater, new StringBuilder().append(s, 0, greaterLength)
+                    .append((char) greaterKey).append(greater.label));
+        }
+
+        /**
+         * Finds the greatest word that is smaller than a given one.
+         * <p>
+         * Words on the path of the given word and subtrees to the left of the path are smaller than it
+         * and the deepest of them contains the closest words.
+         *
+         * @param s         Word to compare with.
+         * @param inclusive Whether the word itself could be returned.
+         * @return Found word or null if there is no such word.
+         */
+        private String below(String s, boolean inclusive) {
+            Objects.requireNonNull(s);
+            if (size == 0) {
+                return null;
+            }
+            // Smaller node and whether its whole subtree or only its own word is smaller.
+            Node smaller = null;
+            int smallerLength = 0;
+            int smallerKey = -1;
+            Node node = root;
+            int i = 0;
+            while (true) {
+                if (i == s.length()) {
+                    if (inclusive && node.endOfWord) {
+                        return s;
+                    }
+                    break;
+                }
+                char c = s.charAt(i);
+                int key = node.previousKey(c);
+                if (key >= 0) {
+                    smaller = node.child((char) key);
+                    smallerLength = i;
+                    smallerKey = key;
+                } else if (node.endOfWord) {
+                    smaller = node;
+                    smallerLength = i;
+                    smallerKey = -1;
+                }
+                Node child = node.child(c);
+                if (child == null) {
+                    break;
+                }
+                int common = child.commonLabelPrefix(s, i + 1);
+                if (common < child.label.length) {
+                    int next = i + 1 + common;
+                    if (next < s.length() && child.label[common] < s.charAt(next)) {
+                        // The label is smaller than the word.
+                        return lastWord(child, new StringBuilder().append(s, 0, i + 1).append(child.label));
+                    }
+                    break;
+                }
+                node = child;
+                i += 1 + common;
+            }
+            if (smaller == null) {
+                return null;
+            }
+            if (smallerKey < 0) {
+                return s.substring(0, smallerLength);
+            }
+            return lastWord(smaller, new StringBuilder().append(s, 0, smallerLength)
+                    .append((char) smallerKey).append(smaller.label));
+        }
+
+        /**
+         * Counts words that are smaller than a given one.
+         *
+         * @param s Word to compare with.
+         * @return Number of smaller words.
+         */
+        private int countBelow(String s) {
+            if (size == 0) {
+                return 0;
+            }
+            int count = 0;
+            Node node = root;
+            int i = 0;
+            while (i < s.length()) {
+                char c = s.charAt(i);
+                if (node.endOfWord) {
+                    count++;
+                }
+                for (int key = node.nextKey(-1); key >= 0 && key < c; key = node.nextKey(key)) {
+                    count += node.child((char) key).size;
+                }
+                Node child = node.child(c);
+                if (child == null) {
+                    break;
+                }
+                int common = child.commonLabelPrefix(s, i + 1);
+                if (common < child.label.length) {
+                    int next = i + 1 + common;
+                    if (next < s.length() && child.label[common] < s.charAt(next)) {
+                        count += child.size;
+                    }
+                    break;
+                }
+                node = child;
+                i += 1 + common;
+            }
+            return count;
+        }
+
+        private Node createNode() {
+            return nodeFactory.create();
+        }
+
+        /**
+         * Finds a node where a given string ends.
+         *
+         * @param s String to search for.
+         * @return Node or null if there is no such node, including the case when the string ends inside a label.
+         */
+        private Node find(String s) {
+            if (root == null) {
+                return null;
+            }
+            Node currentNode = root;
+            int i = 0;
+            while (i < s.length()) {
+                Node child = currentNode.child(s.charAt(i));
+                if (child == null || child.commonLabelPrefix(s, i + 1) < child.label.length) {
+                    return null;
+                }
+                currentNode = child;
+                i += 1 + child.label.length;
+            }
+            return currentNode;
+        }
+
+        /**
+         * Finds a node by characters of a part of a sequence.
+         *
+         * @param s    Sequence of characters.
+         * @param from Position of the first character.
+         * @param to   Position after the last character.
+         * @return Node where the characters end or null if there is no such node.
+         */
+        private Node find(CharSequence s, int from, int to) {
+            if (root == null) {
+                return null;
+            }
+            Node currentNode = root;
+            int i = from;
+            while (i < to) {
+                Node child = currentNode.child(s.charAt(i));
+                if (child == null || child.commonLabelPrefix(s, i + 1, to) < child.label.length) {
+                    return null;
+                }
+                currentNode = child;
+                i += 1 + child.label.length;
+            }
+            return currentNode;
+        }
+
+        /**
+         * Recalculates the highest weights of subtrees on {@link #pathNodes} after a weight has been decreased.
+         */
+        private void updateMaxWeights() {
+            for (int i = pathLength - 1; i >= 0; i--) {
+                Node node = pathNodes[i];
+                int maxWeight = node.endOfWord ? node.weight() : 0;
+                for (int key = node.nextKey(-1); key >= 0; key = node.nextKey(key)) {
+                    maxWeight = Math.max(maxWeight, node.child((char) key).maxWeight());
+                }
+                if (maxWeight == node.maxWeight()) {
+                    // Subtrees above have not changed either.
+                    return;
+                }
+                node.setMaxWeight(maxWeight);
+            }
+        }
+
+        /**
+         * Node where words with a prefix are.
+         *
+         * @param node Top node of the subtree with all words with the prefix.
+         * @param path Characters on the way to the node.
+         *             This is the prefix itself unless the prefix ends inside a label.
+         */
+        private record PrefixMatch(Node node, String path) {
+        }
+
+        /**
+         * Entry of the queue of {@link #topCompletions}.
+         * <p>
+         * A candidate is either a subtree ranked by its best word or the word that ends at the top of a subtree.
+         * Paths are kept as links to parent candidates and a string is only built for a returned word.
+         *
+         * @param weight Weight of the word or the highest weight in the subtree.
+         * @param parent Candidate of the parent subtree or, for a word, of the subtree where the word ends.
+         *               Null for the subtree of the prefix.
+         * @param key    Character under which the node is kept by the parent node.
+         * @param node   Top node of the subtree or null for a word.
+         * @param depth  Number of subtrees between the subtree and the subtree of the prefix.
+         * @param length Length of the path.
+         */
+        private record Candidate(int weight, Candidate parent, char key, Node node, int depth, int length)
+                implements Comparable<Candidate> {
+
+            /**
+             * Orders candidates by descending weight, then by path and then puts a word before its subtree.
+             */
+            @Override
+            public int compareTo(Candidate other) {
+                if (weight != other.weight) {
+                    return Integer.compare(other.weight, weight);
+                }
+                Candidate a = subtree();
+                Candidate b = other.subtree();
+                if (a == b) {
+                    return Boolean.compare(node != null, other.node != null);
+                }
+                // The path of an ancestor is a prefix of paths below it.
+                boolean aBelow = a.depth > b.depth;
+                while (a.depth > b.depth) {
+                    a = a.parent;
+                }
+                while (b.depth > a.depth) {
+                    b = b.parent;
+                }
+                if (a == b) {
+                    return aBelow ? 1 : -1;
+                }
+                // Paths differ at the keys of the first subtrees where they diverge.
+                while (a.parent != b.parent) {
+                    a = a.parent;
+                    b = b.parent;
+                }
+                return Character.compare(a.key, b.key);
+            }
+
+            /**
+             * Builds the path.
+             *
+             * @param prefixPath Path of the subtree of the prefix.
+             * @return Characters on the way to the node or the word.
+             */
+            String path(String prefixPath) {
+                char[] path = new char[length];
+                Candidate candidate = subtree();
+                for (; candidate.parent != null; candidate = candidate.parent) {
+                    char[] label = candidate.node.label;
+                    int labelStart = candidate.length - label.length;
+                    System.arraycopy(label, 0, path, labelStart, label.length);
+                    path[labelStart - 1] = candidate.key;
+                }
+                prefixPath.getChars(0, prefixPath.length(), path, 0);
+                return new String(path);
+            }
+
+            private Candidate subtree() {
+                return node == null ? parent : this;
+            }
+        }
+
+        /**
+         * Finds a subtree with words that start with a given prefix.
+         *
+         * @param prefix Prefix of words.
+         * @return Found subtree or null if there are no words with the prefix.
+         */
+        private PrefixMatch findPrefix(String prefix) {
+            if (root == null) {
+                return null;
+            }
+            Node currentNode = root;
+            int i = 0;
+            while (i < prefix.length()) {
+                Node child = currentNode.child(prefix.charAt(i));
+                if (child == null) {
+                    return null;
+                }
+                int common = child.commonLabelPrefix(prefix, i + 1);
+                if (common < child.label.length) {
+                    if (i + 1 + common < prefix.length()) {
+                        // The prefix diverges from the label.
+                        return null;
+                    }
+                    return new PrefixMatch(child,
+                            prefix + String.valueOf(child.label, common, child.label.length - common));
+                }
+                currentNode = child;
+                i += 1 + common;
+            }
+            return new PrefixMatch(currentNode, prefix);
+        }
+
+        /**
+         * Creates nodes for the rest of a word.
+         * <p>
+         * It is a single node with the whole rest of the word as a label if the tree is path compressed
+         * or a chain of nodes per character otherwise.
+         *
+         * @param parentNode Node to add created nodes to.
+         * @param key        Character under which the top created node should be kept by the parent.
+         * @param s          Word being added.
+         * @param from       Position of the first character that should be kept by created nodes.
+         * @return Created node that is the end of the word.
+         */
+        private Node createPath(Node parentNode, char key, String s, int from) {
+            Node top = createNode();
+            top.size = 1;
+            parentNode.putChild(key, top);
+            pushPath(top);
+            if (pathCompressed) {
+                top.label = label(s, from, s.length());
+                top.endOfWord = true;
+                return top;
+            }
+            Node currentNode = top;
+            for (int i = from; i < s.length(); i++) {
+                Node child = createNode();
+                child.size = 1;
+                currentNode.putChild(s.charAt(i), child);
+                pushPath(child);
+                currentNode = child;
+            }
+            currentNode.endOfWord = true;
+            return currentNode;
+        }
+
+        /**
+         * Splits a label of a node.
+         *
+         * @param parentNode Parent of the node to split.
+         * @param key        Character under which the node is kept by the parent.
+         * @param node       Node which label to split.
+         * @param length     Length of the label to keep in the upper node.
+         * @return New upper node which label is the first length characters of the original label
+         * and which only child is the original node with the rest of the label.
+         */
+        private Node split(Node parentNode, char key, Node node, int length) {
+            Node upper = createNode();
+            upper.label = label(node.label, 0, length);
+            upper.size = node.size;
+            if (weighted) {
+                upper.setMaxWeight(node.maxWeight());
+            }
+            upper.putChild(node.label[length], node);
+            node.label = label(node.label, length + 1, node.label.length);
+            parentNode.putChild(key, upper);
+            return upper;
+        }
+
+        /**
+         * Merges a node with its only child if the node is not needed anymore in a path compressed tree.
+         *
+         * @param parentNode Parent of the node to merge or null if the node is root.
+         * @param key        Character under which the node is kept by the parent.
+         * @param node       Node to merge.
+         */
+        private void mergeWithSingleChild(Node parentNode, char key, Node node) {
+            if (!pathCompressed || parentNode == null || node.endOfWord || node.childCount() != 1) {
+                return;
+            }
+            char childKey = (char) node.nextKey(-1);
+            Node child = node.child(childKey);
+            char[] merged = new char[node.label.length + 1 + child.label.length];
+            System.arraycopy(node.label, 0, merged, 0, node.label.length);
+            merged[node.label.length] = childKey;
+            System.arraycopy(child.label, 0, merged, node.label.length + 1, child.label.length);
+            child.label = merged;
+            parentNode.putChild(key, child);
+        }
+
+        private static char[] label(char[] characters, int from, int to) {
+            return from == to ? Node.NO_LABEL : Arrays.copyOfRange(characters, from, to);
+        }
+
+        private static char[] label(String s, int from, int to) {
+            if (from == to) {
+                return Node.NO_LABEL;
+            }
+            char[] label = new char[to - from];
+            s.getChars(from, to, label, 0);
+            return label;
+        }
+
+        /**
+         * Adds sorted words to an empty tree.
+         * <p>
+         * Keeps the path to the previous word so that a new word starts from the node
+         * where its common prefix with the previous word ends.
+         *
+         * @param words Words in lexicographical order.
+         * @throws NullPointerException     If any word is null.
+         * @throws IllegalArgumentException If words are not sorted.
+         */
+        private void loadSorted(Iterator<? extends String> words) {
+            // Nodes on the path to the previous word and lengths of prefixes that end in those nodes.
+            Node[] nodes = new Node[16];
+            int[] depths = new int[16];
+            int top = 0;
+            String previous = null;
+            while (words.hasNext()) {
+                String word = nextSorted(words, previous);
+                if (word == null) {
+                    continue;
+                }
+                if (root == null) {
+                    root = createNode();
+                    nodes[0] = root;
+                }
+                int common = previous == null ? 0 : commonPrefixLength(previous, word);
+                while (depths[top] > common) {
+                    top--;
+                }
+                if (depths[top] < common && nodes[top + 1] != null) {
+                    // The common prefix ends inside the label of the next node of the previous word.
+                    Node upper = split(nodes[top], previous.charAt(depths[top]), nodes[top + 1],
+                            common - depths[top] - 1);
+                    top++;
+                    nodes[top] = upper;
+                    depths[top] = common;
+                }
+                Node currentNode = nodes[top];
+                for (int i = common; i < word.length(); i++) {
+                    Node child = createNode();
+                    if (pathCompressed) {
+                        child.label = label(word, i + 1, word.length());
+                    }
+                    currentNode.putChild(word.charAt(i), child);
+                    currentNode = child;
+                    top++;
+                    if (top == nodes.length) {
+                        nodes = Arrays.copyOf(nodes, top * 2);
+                        depths = Arrays.copyOf(depths, top * 2);
+                    }
+                    nodes[top] = child;
+                    depths[top] = i + 1 + child.label.length;
+                    i += child.label.length;
+                }
+                // Forget the rest of the path to the previous word.
+                if (top + 1 < nodes.length) {
+                    nodes[top + 1] = null;
+                }
+                currentNode.endOfWord = true;
+                for (int i = 0; i <= top; i++) {
+                    nodes[i].size++;
+                }
+                size++;
+                previous = word;
+            }
+            modCount++;
+        }
+
+        /**
+         * Adds sorted words to an empty tree building a subtree for each first character in parallel.
+         *
+         * @param words   Words in lexicographical order.
+         * @param builder Builder of trees for subtrees.
+         * @throws NullPointerException     If any word is null.
+         * @throws IllegalArgumentException If words are not sorted.
+         */
+        private void loadSortedInParallel(Iterator<? extends String> words, Builder builder) {
+            List<CompletableFuture<SuffixTree>> parts = new ArrayList<>();
+            List<String> part = new ArrayList<>();
+            String previous = null;
+            while (words.hasNext()) {
+                String word = nextSorted(words, previous);
+                if (word == null) {
+                    continue;
+                }
+                if (root == null) {
+                    root = createNode();
+                }
+                if (word.isEmpty()) {
+                    root.endOfWord = true;
+                    root.size++;
+                    size++;
+                } else {
+                    if (!part.isEmpty() && part.get(0).charAt(0) != word.charAt(0)) {
+                        List<String> partWords = part;
+                        parts.add(CompletableFuture.supplyAsync(() -> builder.buildSorted(partWords.iterator())));
+                        part = new ArrayList<>();
+                    }
+                    part.add(word);
+                }
+                previous = word;
+            }
+            if (!part.isEmpty()) {
+                List<String> partWords = part;
+                parts.add(CompletableFuture.supplyAsync(() -> builder.buildSorted(partWords.iterator())));
+            }
+            for (CompletableFuture<SuffixTree> future : parts) {
+                // Each part has a single child of the root that could be moved to this tree as is.
+                Node partRoot = future.join().root;
+                char key = (char) partRoot.nextKey(-1);
+                Node child = partRoot.child(key);
+                root.putChild(key, child);
+                root.size += child.size;
+                size += child.size;
+            }
+            modCount++;
+        }
+
+        /**
+         * Gets the next word while checking the order.
+         *
+         * @param words    Words in lexicographical order.
+         * @param previous Previous word or null if there is no previous word.
+         * @return Next word or null if it is the same as the previous one.
+         * @throws NullPointerException     If the word is null.
+         * @throws IllegalArgumentException If the word is less than the previous one.
+         */
+        private static String nextSorted(Iterator<? extends String> words, String previous) {
+            String word = Objects.requireNonNull(words.next(), "words must not contain null");
+            if (previous == null) {
+                return word;
+            }
+            int comparison = previous.compareTo(word);
+            if (comparison > 0) {
+                throw new IllegalArgumentException(
+                        "words must be sorted but '" + previous + "' is followed by '" + word + "'");
+            }
+            return comparison == 0 ? null : word;
+        }
+
+        private static int commonPrefixLength(String a, String b) {
+            int length = Math.min(a.length(), b.length());
+            for (int i = 0; i < length; i++) {
+                if (a.charAt(i) != b.charAt(i)) {
+                    return i;
+                }
+            }
+            return length;
+        }
+
+        private interface NodeFactory {
+            Node create();
+        }
+
+        /**
+         * Node of the tree.
+         * <p>
+         * Subclasses define how children are stored.
+         * Characters are iterated in ascending order via {@link #nextKey}
+         * so traversal does not depend on the way children are kept.
+         */
+        private abstract static class Node {
+            static final char[] NO_LABEL = new char[0];
+
+            /**
+             * Characters on the way to this node that follow the character
+             * under which this node is kept by its parent.
+             * Always empty unless the tree is path compressed.
+             */
+            char[] label = NO_LABEL;
+            boolean endOfWord;
+            /**
+             * Number of words in this subtree.
+             */
+            int size;
+
+            /**
+             * Provides the value of a map key that ends here.
+             *
+             * @return Value or slot of a value.
+             * @throws UnsupportedOperationException If the tree does not keep keys of a map.
+             */
+            int value() {
+                throw new UnsupportedOperationException("Only nodes of map keys have values");
+            }
+
+            /**
+             * Changes the value of a map key that ends here.
+             *
+             * @param value Value or slot of a value.
+             * @throws UnsupportedOperationException If the tree does not keep keys of a map.
+             */
+            void setValue(int value) {
+                throw new UnsupportedOperationException("Only nodes of map keys have values");
+            }
+
+            /**
+             * Provides the weight of the word that ends here.
+             *
+             * @return Weight or 0 if the tree does not keep weights.
+             */
+            int weight() {
+                return 0;
+            }
+
+            /**
+             * Changes the weight of the word that ends here.
+             *
+             * @param weight Non-negative weight.
+             * @throws UnsupportedOperationException If the tree does not keep weights.
+             */
+            void setWeight(int weight) {
+                throw new UnsupportedOperationException("Only nodes of weighted trees have weights");
+            }
+
+            /**
+             * Provides the highest weight of words in this subtree.
+             *
+             * @return Weight or 0 if the tree does not keep weights.
+             */
+            int maxWeight() {
+                return 0;
+            }
+
+            /**
+             * Changes the highest weight of words in this subtree.
+             *
+             * @param maxWeight Non-negative weight.
+             * @throws UnsupportedOperationException If the tree does not keep weights.
+             */
+            void setMaxWeight(int maxWeight) {
+                throw new UnsupportedOperationException("Only nodes of weighted trees have weights");
+            }
+
+            /**
+             * Compares the label with a part of a string.
+             *
+             * @param s    String to compare with.
+             * @param from Position in the string to start comparison from.
+             * @return Number of leading label characters that are the same as in the string.
+             */
+            int commonLabelPrefix(String s, int from) {
+                int length = Math.min(label.length, s.length() - from);
+                for (int i = 0; i < length; i++) {
+                    if (label[i] != s.charAt(from + i)) {
+                        return i;
+                    }
+                }
+                return length;
+            }
+
+            /**
+             * Compares the label with a part of a sequence.
+             *
+             * @param s    Sequence to compare with.
+             * @param from Position in the sequence to start comparison from.
+             * @param to   Position in the sequence to stop comparison at.
+             * @return Number of leading label characters that are the same as in the sequence.
+             */
+            int commonLabelPrefix(CharSequence s, int from, int to) {
+                int length = Math.min(label.length, to - from);
+                for (int i = 0; i < length; i++) {
+                    if (label[i] != s.charAt(from + i)) {
+                        return i;
+                    }
+                }
+                return length;
+            }
+
+            /**
+             * Finds a child.
+             *
+             * @param c Character leading to the child.
+             * @return Child or null if there is no such child.
+             */
+            abstract Node child(char c);
+
+            /**
+             * Adds or replaces a child.
+             *
+             * @param c     Character leading to the child.
+             * @param child Child to add.
+             */
+            abstract void putChild(char c, Node child);
+
+            /**
+             * Removes a child if it exists.
+             *
+             * @param c Character leading to the child.
+             */
+            abstract void removeChild(char c);
+
+            abstract int childCount();
+
+            /**
+             * Finds the smallest character of children that is greater than a given one.
+             *
+             * @param after Character after which to search or -1 to get the first one.
+             * @return Next character or -1 if there are no more children.
+             */
+            abstract int nextKey(int after);
+
+            /**
+             * Finds the greatest character of children that is smaller than a given one.
+             *
+             * @param before Character before which to search or {@code Character.MAX_VALUE + 1} to get the last one.
+             * @return Previous character or -1 if there are no more children.
+             */
+            abstract int previousKey(int before);
+
+            /**
+             * Estimates memory retained by this node without its children.
+             * <p>
+             * The estimate assumes a 64-bit JVM with compressed references.
+             *
+             * @return Estimated number of bytes.
+             */
+            abstract long estimatedBytes();
+
+            static long labelBytes(char[] label) {
+                return label.length == 0 ? 0 : arrayBytes(label.length, Character.BYTES);
+            }
+
+            static long arrayBytes(int length, int elementBytes) {
+                return (16 + (long) length * elementBytes + 7) & ~7L;
+            }
+
+            @Override
+            public String toString() {
+                StringJoiner children = new StringJoiner(", ", "{", "}");
+                for (int key = nextKey(-1); key >= 0; key = nextKey(key)) {
+                    children.add((char) key + "=" + child((char) key));
+                }
+                return new StringJoiner(", ", "[", "]")
+                        .add(String.valueOf(label))
+                        .add(String.valueOf(endOfWord))
+                        .add(children.toString())
+                        .toString();
+            }
+        }
+
+        /**
+         * Node that keeps children in a map from a user supplied factory.
+         * <p>
+         * Unless the map is a {@link NavigableMap}, characters of children are sorted into
+         * {@link #sortedKeys} the first time they are iterated. The array is kept while children
+         * are only being removed so a traversal takes logarithmic time per child.
+         */
+        private static class MapNode extends Node {
+            private final Map<Character, Node> children;
+            /**
+             * Sorted characters of children or null if they have not been iterated since a child was added.
+             * Removed characters are shifted out so only the first {@code children.size()} elements are used.
+             * Volatile so that trees that are only read could be traversed from several threads.
+             */
+            private volatile char[] sortedKeys;
+
+            MapNode(Map<Character, Node> children) {
+                this.children = Objects.requireNonNull(children, "characterMapSupplier must not supply null");
+            }
+
+            @Override
+            Node child(char c) {
+                return children.get(c);
+            }
+
+            @Override
+            void putChild(char c, Node child) {
+                if (children.put(c, child) == null) {
+                    sortedKeys = null;
+                }
+            }
+
+            @Override
+            void removeChild(char c) {
+                if (children.remove(c) == null) {
+                    return;
+                }
+                char[] keys = sortedKeys;
+                if (keys != null) {
+                    int count = children.size();
+                    if (count < keys.length / 4) {
+                        // Sort again if needed rather than keep a mostly unused array.
+                        sortedKeys = null;
+                        return;
+                    }
+                    int index = Arrays.binarySearch(keys, 0, count + 1, c);
+                    System.arraycopy(keys, index + 1, keys, index, count - index);
+                }
+            }
+
+            @Override
+            int childCount() {
+                return children.size();
+            }
+
+            @Override
+            int nextKey(int after) {
+                if (children.isEmpty() || after >= Character.MAX_VALUE) {
+                    return -1;
+                }
+                if (children instanceof NavigableMap<Character, Node> navigableChildren) {
+                    Character next = after < 0
+                            ? navigableChildren.firstKey()
+                            : navigableChildren.higherKey((char) after);
+                    return next == null ? -1 : next;
+                }
+                char[] keys = sortedKeys();
+                int count = children.size();
+                int index = after < 0 ? 0 : Arrays.binarySearch(keys, 0, count, (char) (after + 1));
+                if (index < 0) {
+                    index = -index - 1;
+                }
+                return index < count ? keys[index] : -1;
+            }
+
+            @Override
+            int previousKey(int before) {
+                if (children.isEmpty() || before <= 0) {
+                    return -1;
+                }
+                if (children instanceof NavigableMap<Character, Node> navigableChildren) {
+                    Character previous = before > Character.MAX_VALUE
+                            ? navigableChildren.lastKey()
+                            : navigableChildren.lowerKey((char) before);
+                    return previous == null ? -1 : previous;
+                }
+                char[] keys = sortedKeys();
+                int count = children.size();
+                int index = before > Character.MAX_VALUE ? count : Arrays.binarySearch(keys, 0, count, (char) before);
+                if (index < 0) {
+                    index = -index - 1;
+                }
+                return index > 0 ? keys[index - 1] : -1;
+            }
+
+            private char[] sortedKeys() {
+                char[] keys = sortedKeys;
+                if (keys == null) {
+                    keys = new char[children.size()];
+                    int i = 0;
+                    for (char c : children.keySet()) {
+                        keys[i++] = c;
+                    }
+                    Arrays.sort(keys);
+                    sortedKeys = keys;
+                }
+                return keys;
+            }
+
+            /**
+             * {@inheritDoc}
+             * <p>
+             * Maps other than {@link TreeMap} are assumed to be laid out as {@link HashMap}.
+             */
+            @Override
+            long estimatedBytes() {
+                int count = children.size();
+                long bytes = 32 + labelBytes(label) + 48;
+                char[] keys = sortedKeys;
+                if (keys != null) {
+                    bytes += arrayBytes(keys.length, Character.BYTES);
+                }
+                if (children instanceof TreeMap) {
+                    bytes += count * 40L;
+                } else if (count > 0) {
+                    int capacity = 16;
+                    while (count > capacity / 4 * 3) {
+                        capacity <<= 1;
+                    }
+                    bytes += arrayBytes(capacity, 4) + count * 32L;
+                }
+                for (char c : children.keySet()) {
+                    if (c > 127) {
+                        // Outside of the cache of boxed characters.
+                        bytes += 16;
+                    }
+                }
+                return bytes;
+            }
+        }
+
+        /**
+         * Node that keeps children in primitive arrays.
+         * <p>
+         * A single child is kept in {@link #single} under {@link #base} character
+         * which avoids arrays for the most common case of a chain.
+         * While a node is narrow, characters are kept sorted in {@link #keys}
+         * with children at the same positions in {@link #nodes}.
+         * When a node gets wide and its characters are close to each other,
+         * {@link #keys} is dropped and {@link #nodes} is indexed by a character offset from {@link #base}.
+         */
+        private static class CompactNode extends Node {
+            /**
+             * Number of children after which a node may switch to the dense layout.
+             */
+            private static final int SORTED_LIMIT = 16;
+            /**
+             * Maximum ratio of dense array length to the number of children.
+             */
+            private static final int DENSE_SPAN_FACTOR = 2;
+            private static final char[] NO_KEYS = new char[0];
+            private static final Node[] NO_NODES = new Node[0];
+
+            /**
+             * Sorted characters of children or null if the node is dense.
+             */
+            private char[] keys = NO_KEYS;
+            private Node[] nodes = NO_NODES;
+            private Node single;
+            private int count;
+            /**
+             * Character of {@link #single} child or of the first element of {@link #nodes} if the node is dense.
+             */
+            private char base;
+
+            @Override
+            Node child(char c) {
+                if (single != null) {
+                    return c == base ? single : null;
+                }
+                if (keys == null) {
+                    int index = c - base;
+                    return index >= 0 && index < nodes.length ? nodes[index] : null;
+                }
+                int index = Arrays.binarySearch(keys, 0, count, c);
+                return index >= 0 ? nodes[index] : null;
+            }
+
+            @Override
+            void putChild(char c, Node child) {
+                if (count == 0) {
+                    single = child;
+                    base = c;
+                    count = 1;
+                    return;
+                }
+                if (single != null) {
+                    if (c == base) {
+                        single = child;
+                        return;
+                    }
+                    keys = new char[]{base, c};
+                    nodes = new Node[]{single, child};
+                    if (c < base) {
+                        keys[0] = c;
+                        keys[1] = base;
+                        nodes[0] = child;
+                        nodes[1] = single;
+                    }
+                    single = null;
+                    base = 0;
+                    count = 2;
+                    return;
+                }
+                if (keys == null) {
+                    putDense(c, child);
+                    return;
+                }
+                int index = Arrays.binarySearch(keys, 0, count, c);
+                if (index >= 0) {
+                    nodes[index] = child;
+                    return;
+                }
+                index = -index - 1;
+                if (count == keys.length) {
+                    int capacity = count < 4 ? count + 1 : count + (count >> 1);
+                    keys = Arrays.copyOf(keys, capacity);
+                    nodes = Arrays.copyOf(nodes, capacity);
+                }
+                System.arraycopy(keys, index, keys, index + 1, count - index);
+                System.arraycopy(nodes, index, nodes, index + 1, count - index);
+                keys[index] = c;
+                nodes[index] = child;
+                count++;
+                if (count > SORTED_LIMIT && fitsDense(keys[0], keys[count - 1], count)) {
+                    toDense();
+                }
+            }
+
+            private void putDense(char c, Node child) {
+                int index = c - base;
+                if (index >= 0 && index < nodes.length) {
+                    if (nodes[index] == null) {
+                        count++;
+                    }
+                    nodes[index] = child;
+                    return;
+                }
+                char first = index < 0 ? c : base;
+                char last = index < 0 ? (char) (base + nodes.length - 1) : c;
+                if (!fitsDense(first, last, count + 1)) {
+                    toSorted();
+                    putChild(c, child);
+                    return;
+                }
+                Node[] newNodes = new Node[last - first + 1];
+                System.arraycopy(nodes, 0, newNodes, base - first, nodes.length);
+                newNodes[c - first] = child;
+                nodes = newNodes;
+                base = first;
+                count++;
+            }
+
+            @Override
+            void removeChild(char c) {
+                if (single != null) {
+                    if (c == base) {
+                        single = null;
+                        base = 0;
+                        count = 0;
+                    }
+                    return;
+                }
+                if (keys == null) {
+                    int index = c - base;
+                    if (index >= 0 && index < nodes.length && nodes[index] != null) {
+                        nodes[index] = null;
+                        count--;
+                        if (count <= SORTED_LIMIT / 2) {
+                            toSorted();
+                        }
+                    }
+                    return;
+                }
+                int index = Arrays.binarySearch(keys, 0, count, c);
+                if (index < 0) {
+                    return;
+                }
+                System.arraycopy(keys, index + 1, keys, index, count - index - 1);
+                System.arraycopy(nodes, index + 1, nodes, index, count - index - 1);
+                count--;
+                nodes[count] = null;
+                if (count == 1) {
+                    toSingle(keys[0], nodes[0]);
+                }
+            }
+
+            @Override
+            int childCount() {
+                return count;
+            }
+
+            @Override
+            int nextKey(int after) {
+                if (single != null) {
+                    return after < base ? base : -1;
+                }
+                if (keys == null) {
+                    for (int index = Math.max(after + 1 - base, 0); index < nodes.length; index++) {
+                        if (nodes[index] != null) {
+                            return base + index;
+                        }
+                    }
+                    return -1;
+                }
+                if (after >= Character.MAX_VALUE) {
+                    return -1;
+                }
+                int index = after < 0 ? 0 : Arrays.binarySearch(keys, 0, count, (char) (after + 1));
+                if (index < 0) {
+                    index = -index - 1;
+                }
+                return index < count ? keys[index] : -1;
+            }
+
+            @Override
+            int previousKey(int before) {
+                if (single != null) {
+                    return base < before ? base : -1;
+                }
+                if (keys == null) {
+                    for (int index = Math.min(before - base, nodes.length) - 1; index >= 0; index--) {
+                        if (nodes[index] != null) {
+                            return base + index;
+                        }
+                    }
+                    return -1;
+                }
+                if (before <= 0) {
+                    return -1;
+                }
+                int index = before > Character.MAX_VALUE ? count : Arrays.binarySearch(keys, 0, count, (char) before);
+                if (index < 0) {
+                    index = -index - 1;
+                }
+                return index > 0 ? keys[index - 1] : -1;
+            }
+
+            @Override
+            long estimatedBytes() {
+                long bytes = 40 + labelBytes(label);
+                if (keys != null && keys.length > 0) {
+                    bytes += arrayBytes(keys.length, Character.BYTES);
+                }
+                if (nodes.length > 0) {
+                    bytes += arrayBytes(nodes.length, 4);
+                }
+                return bytes;
+            }
+
+            private static boolean fitsDense(char first, char last, int count) {
+                return last - first + 1 <= count * DENSE_SPAN_FACTOR;
+            }
+
+            private void toSingle(char c, Node child) {
+                keys = NO_KEYS;
+                nodes = NO_NODES;
+                single = child;
+                base = c;
+            }
+
+            private void toDense() {
+                Node[] newNodes = new Node[keys[count - 1] - keys[0] + 1];
+                for (int i = 0; i < count; i++) {
+                    newNodes[keys[i] - keys[0]] = nodes[i];
+                }
+                base = keys[0];
+                nodes = newNodes;
+                keys = null;
+            }
+
+            private void toSorted() {
+                char[] newKeys = new char[count];
+                Node[] newNodes = new Node[count];
+                int i = 0;
+                for (int index = 0; index < nodes.length; index++) {
+                    if (nodes[index] != null) {
+                        newKeys[i] = (char) (base + index);
+                        newNodes[i] = nodes[index];
+                        i++;
+                    }
+                }
+                keys = newKeys;
+                nodes = newNodes;
+                base = 0;
+            }
+        }
+
+        /**
+         * {@link MapNode} of a key of a map.
+         */
+        private static final class MapValueNode extends MapNode {
+            private int value;
+
+            MapValueNode(Map<Character, Node> children) {
+                super(children);
+            }
+
+            @Override
+            int value() {
+                return value;
+            }
+
+            @Override
+            void setValue(int value) {
+                this.value = value;
+            }
+
+            @Override
+            long estimatedBytes() {
+                // The field does not fit into the padding of the superclass.
+                return super.estimatedBytes() + 8;
+            }
+        }
+
+        /**
+         * {@link CompactNode} of a key of a map.
+         */
+        private static final class CompactValueNode extends CompactNode {
+            private int value;
+
+            @Override
+            int value() {
+                return value;
+            }
+
+            @Override
+            void setValue(int value) {
+                this.value = value;
+            }
+
+            @Override
+            long estimatedBytes() {
+                // The field does not fit into the padding of the superclass.
+                return super.estimatedBytes() + 8;
+            }
+        }
+
+        /**
+         * {@link MapNode} of a weighted tree.
+         */
+        private static final class WeightedMapNode extends MapNode {
+            private int weight;
+            private int maxWeight;
+
+            WeightedMapNode(Map<Character, Node> children) {
+                super(children);
+            }
+
+            @Override
+            int weight() {
+                return weight;
+            }
+
+            @Override
+            void setWeight(int weight) {
+                this.weight = weight;
+            }
+
+            @Override
+            int maxWeight() {
+                return maxWeight;
+            }
+
+            @Override
+            void setMaxWeight(int maxWeight) {
+                this.maxWeight = maxWeight;
+            }
+
+            @Override
+            long estimatedBytes() {
+                // The fields do not fit into the padding of the superclass.
+                return super.estimatedBytes() + 8;
+            }
+        }
+
+        /**
+         * {@link CompactNode} of a weighted tree.
+         */
+        private static final class WeightedCompactNode extends CompactNode {
+            private int weight;
+            private int maxWeight;
+
+            @Override
+            int weight() {
+                return weight;
+            }
+
+            @Override
+            void setWeight(int weight) {
+                this.weight = weight;
+            }
+
+            @Override
+            int maxWeight() {
+                return maxWeight;
+            }
+
+            @Override
+            void setMaxWeight(int maxWeight) {
+                this.maxWeight = maxWeight;
+            }
+
+            @Override
+            long estimatedBytes() {
+                // The fields do not fit into the padding of the superclass.
+                return super.estimatedBytes() + 8;
+            }
+        }
+
+        /**
+         * View of words with a common prefix.
+         */
+        private class PrefixView extends AbstractSet<String> {
+
+            private final String prefix;
+
+            PrefixView(String prefix) {
+                this.prefix = prefix;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                String s = (String) Objects.requireNonNull(o);
+                return s.startsWith(prefix) && SuffixTree.this.contains(s);
+            }
+
+            @Override
+            public boolean add(String s) {
+                if (!Objects.requireNonNull(s).startsWith(prefix)) {
+                    throw new IllegalArgumentException("'" + s + "' does not start with '" + prefix + "'");
+                }
+                return SuffixTree.this.add(s);
+            }
+
+            @Override
+            public boolean remove(Object o) {
+                String s = (String) Objects.requireNonNull(o);
+                return s.startsWith(prefix) && SuffixTree.this.remove(s);
+            }
+
+            @Override
+            public void clear() {
+                for (String s : new ArrayList<>(this)) {
+                    SuffixTree.this.remove(s);
+                }
+            }
+
+            /**
+             * {@inheritDoc}
+             * <p>
+             * Supplied iterator does not support {@link Iterator#remove}.
+             */
+            @Override
+            public Iterator<String> iterator() {
+                PrefixMatch match = findPrefix(prefix);
+                return match == null
+                        ? new SuffixTreeIterator(null, prefix)
+                        : new SuffixTreeIterator(match.node, match.path);
+            }
+
+            @Override
+            public Spliterator<String> spliterator() {
+                PrefixMatch match = findPrefix(prefix);
+                return match == null
+                        ? new SuffixTreeSpliterator(null, prefix)
+                        : new SuffixTreeSpliterator(match.node, match.path);
+            }
+
+            @Override
+            public int size() {
+                return countWithPrefix(prefix);
+            }
+        }
+
+        /**
+         * Range of words backed by the tree.
+         * <p>
+         * Navigation is delegated to the tree and results outside the range are discarded.
+         * Size is the difference of the numbers of words below bounds.
+         */
+        private class SubSet extends AbstractSet<String> implements NavigableSet<String> {
+
+            /**
+             * Lower bound or null if there is no lower bound.
+             */
+            private final String from;
+            private final boolean fromInclusive;
+            /**
+             * Upper bound or null if there is no upper bound.
+             */
+            private final String to;
+            private final boolean toInclusive;
+
+            SubSet(String from, boolean fromInclusive, String to, boolean toInclusive) {
+                this.from = from;
+                this.fromInclusive = fromInclusive;
+                this.to = to;
+                this.toInclusive = toInclusive;
+            }
+
+            private boolean tooLow(String s) {
+                if (from == null) {
+                    return false;
+                }
+                int comparison = s.compareTo(from);
+                return comparison < 0 || comparison == 0 && !fromInclusive;
+            }
+
+            private boolean tooHigh(String s) {
+                if (to == null) {
+                    return false;
+                }
+                int comparison = s.compareTo(to);
+                return comparison > 0 || comparison == 0 && !toInclusive;
+            }
+
+            private boolean inRange(String s) {
+                return !tooLow(s) && !tooHigh(s);
+            }
+
+            /**
+             * Checks that bounds of a view are within this range.
+             *
+             * @param s         Bound of a view.
+             * @param inclusive Whether the bound is inclusive.
+             * @return The bound.
+             * @throws IllegalArgumentException If the bound is outside this range.
+             */
+            private String checkBound(String s, boolean inclusive) {
+                Objects.requireNonNull(s);
+                if (tooLow(s) && !(s.equals(from) && !inclusive) || tooHigh(s) && !(s.equals(to) && !inclusive)) {
+                    throw new IllegalArgumentException("'" + s + "' is out of range");
+                }
+                return s;
+            }
+
+            private String lowest() {
+                String s = from == null ? (SuffixTree.this.isEmpty() ? null : SuffixTree.this.first())
+                        : fromInclusive ? SuffixTree.this.ceiling(from) : SuffixTree.this.higher(from);
+                return s == null || tooHigh(s) ? null : s;
+            }
+
+            private String highest() {
+                String s = to == null ? (SuffixTree.this.isEmpty() ? null : SuffixTree.this.last())
+                        : toInclusive ? SuffixTree.this.floor(to) : SuffixTree.this.lower(to);
+                return s == null || tooLow(s) ? null : s;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                String s = (String) Objects.requireNonNull(o);
+                return inRange(s) && SuffixTree.this.contains(s);
+            }
+
+            @Override
+            public boolean add(String s) {
+                if (!inRange(Objects.requireNonNull(s))) {
+                    throw new IllegalArgumentException("'" + s + "' is out of range");
+                }
+                return SuffixTree.this.add(s);
+            }
+
+            @Override
+            public boolean remove(Object o) {
+                String s = (String) Objects.requireNonNull(o);
+                return inRange(s) && SuffixTree.this.remove(s);
+            }
+
+            @Override
+            public int size() {
+                int below = from == null ? 0
+                        : countBelow(from) + (!fromInclusive && SuffixTree.this.contains(from) ? 1 : 0);
+                int upTo = to == null ? SuffixTree.this.size
+                        : countBelow(to) + (toInclusive && SuffixTree.this.contains(to) ? 1 : 0);
+                return Math.max(upTo - below, 0);
+            }
+
+            /**
+             * {@inheritDoc}
+             * <p>
+             * Supplied iterator supports {@link Iterator#remove}.
+             */
+            @Override
+            public Iterator<String> iterator() {
+                return new NavigatingIterator(this, true);
+            }
+
+            /**
+             * {@inheritDoc}
+             * <p>
+             * Supplied iterator supports {@link Iterator#remove}.
+             */
+            @Override
+            public Iterator<String> descendingIterator() {
+                return new NavigatingIterator(this, false);
+            }
+
+            @Override
+            public Comparator<? super String> comparator() {
+                return null;
+            }
+
+            @Override
+            public String first() {
+                String s = lowest();
+                if (s == null) {
+                    throw new NoSuchElementException();
+                }
+                return s;
+            }
+
+            @Override
+            public String last() {
+                String s = highest();
+                if (s == null) {
+                    throw new NoSuchElementException();
+                }
+                return s;
+            }
+
+            @Override
+            public String lower(String s) {
+                return tooHigh(s) ? highest() : withinRange(SuffixTree.this.lower(s));
+            }
+
+            @Override
+            public String floor(String s) {
+                return tooHigh(s) ? highest() : withinRange(SuffixTree.this.floor(s));
+            }
+
+            @Override
+            public String ceiling(String s) {
+                return tooLow(s) ? lowest() : withinRange(SuffixTree.this.ceiling(s));
+            }
+
+            @Override
+            public String higher(String s) {
+                return tooLow(s) ? lowest() : withinRange(SuffixTree.this.higher(s));
+            }
+
+            private String withinRange(String s) {
+                return s == null || !inRange(s) ? null : s;
+            }
+
+            @Override
+            public String pollFirst() {
+                String s = lowest();
+                return s == null ? null : poll(s);
+            }
+
+            @Override
+            public String pollLast() {
+                String s = highest();
+                return s == null ? null : poll(s);
+            }
+
+            @Override
+            public NavigableSet<String> descendingSet() {
+                return new DescendingSet(this);
+            }
+
+            @Override
+            public NavigableSet<String> subSet(String fromElement, boolean fromInclusive,
+                                               String toElement, boolean toInclusive) {
+                checkBound(fromElement, fromInclusive);
+                checkBound(toElement, toInclusive);
+                return SuffixTree.this.subSet(fromElement, fromInclusive, toElement, toInclusive);
+            }
+
+            @Override
+            public NavigableSet<String> headSet(String toElement, boolean inclusive) {
+                checkBound(toElement, inclusive);
+                return from == null
+                        ? SuffixTree.this.headSet(toElement, inclusive)
+                        : SuffixTree.this.subSet(from, fromInclusive, toElement, inclusive);
+            }
+
+            @Override
+            public NavigableSet<String> tailSet(String fromElement, boolean inclusive) {
+                checkBound(fromElement, inclusive);
+                return to == null
+                        ? SuffixTree.this.tailSet(fromElement, inclusive)
+                        : SuffixTree.this.subSet(fromElement, inclusive, to, toInclusive);
+            }
+
+            @Override
+            public SortedSet<String> subSet(String fromElement, String toElement) {
+                return subSet(fromElement, true, toElement, false);
+            }
+
+            @Override
+            public SortedSet<String> headSet(String toElement) {
+                return headSet(toElement, false);
+            }
+
+            @Override
+            public SortedSet<String> tailSet(String fromElement) {
+                return tailSet(fromElement, true);
+            }
+        }
+
+        /**
+         * Reverse order view of a navigable set of words.
+         */
+        private static class DescendingSet extends AbstractSet<String> implements NavigableSet<String> {
+
+            private final NavigableSet<String> set;
+
+            DescendingSet(NavigableSet<String> set) {
+                this.set = set;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return set.contains(o);
+            }
+
+            @Override
+            public boolean add(String s) {
+                return set.add(s);
+            }
+
+            @Override
+            public boolean remove(Object o) {
+                return set.remove(o);
+            }
+
+            @Override
+            public void clear() {
+                set.clear();
+            }
+
+            @Override
+            public int size() {
+                return set.size();
+            }
+
+            @Override
+            public Iterator<String> iterator() {
+                return set.descendingIterator();
+            }
+
+            @Override
+            public Iterator<String> descendingIterator() {
+                return set.iterator();
+            }
+
+            @Override
+            public Comparator<? super String> comparator() {
+                return Collections.reverseOrder();
+            }
+
+            @Override
+            public String first() {
+                return set.last();
+            }
+
+            @Override
+            public String last() {
+                return set.first();
+            }
+
+            @Override
+            public String lower(String s) {
+                return set.higher(s);
+            }
+
+            @Override
+            public String floor(String s) {
+                return set.ceiling(s);
+            }
+
+            @Override
+            public String ceiling(String s) {
+                return set.floor(s);
+            }
+
+            @Override
+            public String higher(String s) {
+                return set.lower(s);
+            }
+
+            @Override
+            public String pollFirst() {
+                return set.pollLast();
+            }
+
+            @Override
+            public String pollLast() {
+                return set.pollFirst();
+            }
+
+            @Override
+            public NavigableSet<String> descendingSet() {
+                return set;
+            }
+
+            @Override
+            public NavigableSet<String> subSet(String fromElement, boolean fromInclusive,
+                                               String toElement, boolean toInclusive) {
+                return set.subSet(toElement, toInclusive, fromElement, fromInclusive).descendingSet();
+            }
+
+            @Override
+            public NavigableSet<String> headSet(String toElement, boolean inclusive) {
+                return set.tailSet(toElement, inclusive).descendingSet();
+            }
+
+            @Override
+            public NavigableSet<String> tailSet(String fromElement, boolean inclusive) {
+                return set.headSet(fromElement, inclusive).descendingSet();
+            }
+
+            @Override
+            public SortedSet<String> subSet(String fromElement, String toElement) {
+                return subSet(fromElement, true, toElement, false);
+            }
+
+            @Override
+            public SortedSet<String> headSet(String toElement) {
+                return headSet(toElement, false);
+            }
+
+            @Override
+            public SortedSet<String> tailSet(String fromElement) {
+                return tailSet(fromElement, true);
+            }
+        }
+
+        /**
+         * Iterates a navigable set of words by looking up the next word after the last returned one.
+         */
+        private class NavigatingIterator implements Iterator<String> {
+
+            private final NavigableSet<String> set;
+            private final boolean ascending;
+            private int expectedModCount;
+            private String next;
+            private String last;
+
+            NavigatingIterator(NavigableSet<String> set, boolean ascending) {
+                this.set = set;
+                this.ascending = ascending;
+                this.expectedModCount = modCount;
+                if (!set.isEmpty()) {
+                    next = ascending ? set.first() : set.last();
+                }
+            }
+
+            private void assertNotModified() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException(
+                            "The suffix tree has been modified since creation of this iterator");
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                assertNotModified();
+                return next != null;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                last = next;
+                next = ascending ? set.higher(last) : set.lower(last);
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException("next has not been called or remove has already been called");
+                }
+                assertNotModified();
+                SuffixTree.this.remove(last);
+                expectedModCount = modCount;
+                last = null;
+            }
+        }
+
+        /**
+         * Iterates words of a subtree in lexicographical order.
+         */
+        private class SuffixTreeIterator implements Iterator<String> {
+
+            private final Cursor cursor;
+            private boolean hasNext;
+
+            /**
+             * Creates a new instance.
+             *
+             * @param start       Top node of the subtree or null if there are no words.
+             * @param startPrefix Characters on the way to the top node.
+             */
+            SuffixTreeIterator(Node start, String startPrefix) {
+                cursor = new Cursor(start, startPrefix);
+                hasNext = cursor.next();
+            }
+
+            @Override
+            public boolean hasNext() {
+                cursor.assertNotModified();
+                return hasNext;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                String word = cursor.word().toString();
+                hasNext = cursor.next();
+                return word;
+            }
+
+        }
+
+        /**
+         * Splits words of a subtree into parts with about the same number of words.
+         * <p>
+         * Remaining words are kept as a list of subtrees in lexicographical order.
+         * A split gives away the first half of them.
+         * If a subtree is in the middle and is big, it is replaced with its own word and its children first,
+         * so splitting descends into heavy subtrees while light ones are kept whole.
+         * Sizes of subtrees are known so estimates are exact.
+         */
+        private class SuffixTreeSpliterator implements Spliterator<String> {
+
+            /**
+             * Words to traverse.
+             *
+             * @param node    Node of the words.
+             * @param path    Characters on the way to the node.
+             * @param subtree Whether all words of the subtree or only the word of the node itself are included.
+             */
+            private record Part(Node node, String path, boolean subtree) {
+
+                long size() {
+                    return subtree ? node.size : 1;
+                }
+
+                boolean expandable() {
+                    return subtree && node.childCount() > 0;
+                }
+            }
+
+            private final List<Part> parts;
+            /**
+             * Index of the first part that has not been started yet.
+             */
+            private int next;
+            private long remaining;
+            private final int expectedModCount;
+            /**
+             * Walks the current part if it is a subtree.
+             */
+            private Cursor cursor;
+            private boolean walking;
+
+            /**
+             * Creates a new instance.
+             *
+             * @param start       Top node of the subtree or null if there are no words.
+             * @param startPrefix Characters on the way to the top node.
+             */
+            SuffixTreeSpliterator(Node start, String startPrefix) {
+                this(new ArrayList<>(), 0);
+                if (start != null) {
+                    parts.add(new Part(start, startPrefix, true));
+                    remaining = start.size;
+                }
+            }
+
+            private SuffixTreeSpliterator(List<Part> parts, long remaining) {
+                this.parts = parts;
+                this.remaining = remaining;
+                this.expectedModCount = modCount;
+            }
+
+            @Override
+            public boolean tryAdvance(Consumer<? super String> action) {
+                Objects.requireNonNull(action);
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException(
+                            "The suffix tree has been modified since creation of this spliterator");
+                }
+                while (true) {
+                    if (walking) {
+                        if (cursor.next()) {
+                            remaining--;
+                            action.accept(cursor.word().toString());
+                            return true;
+                        }
+                        walking = false;
+                    }
+                    if (next == parts.size()) {
+                        return false;
+                    }
+                    Part part = parts.get(next++);
+                    if (!part.subtree) {
+                        remaining--;
+                        action.accept(part.path);
+                        return true;
+                    }
+                    if (cursor == null) {
+                        cursor = new Cursor(part.node, part.path);
+                    } else {
+                        cursor.start(part.node, part.path);
+                    }
+                    walking = true;
+                }
+            }
+
+            @Override
+            public Spliterator<String> trySplit() {
+                if (walking) {
+                    return null;
+                }
+                long half = remaining / 2;
+                int split;
+                long splitSize;
+                while (true) {
+                    // Find the part that contains the middle word.
+                    split = next;
+                    splitSize = 0;
+                    while (split < parts.size() && splitSize + parts.get(split).size() <= half) {
+                        splitSize += parts.get(split).size();
+                        split++;
+                    }
+                    if (split == parts.size()) {
+                        break;
+                    }
+                    Part middle = parts.get(split);
+                    if (!middle.expandable() || middle.size() <= remaining / 8) {
+                        // Take the middle part if that is closer to the half.
+                        if (splitSize + middle.size() - half < half - splitSize || split == next) {
+                            splitSize += middle.size();
+                            split++;
+                        }
+                        break;
+                    }
+                    expand(split);
+                }
+                if (split == next || split == parts.size()) {
+                    return null;
+                }
+                List<Part> given = parts.subList(next, split);
+                SuffixTreeSpliterator prefix = new SuffixTreeSpliterator(new ArrayList<>(given), splitSize);
+                given.clear();
+                remaining -= splitSize;
+                return prefix;
+            }
+
+            /**
+             * Replaces a subtree with its own word and its children.
+             *
+             * @param index Index of the part to replace.
+             */
+            private void expand(int index) {
+                Part part = parts.get(index);
+                Node node = part.node;
+                List<Part> children = new ArrayList<>(node.childCount() + 1);
+                if (node.endOfWord) {
+                    children.add(new Part(node, part.path, false));
+                }
+                for (int key = node.nextKey(-1); key >= 0; key = node.nextKey(key)) {
+                    Node child = node.child((char) key);
+                    children.add(new Part(child, part.path + (char) key + String.valueOf(child.label), true));
+                }
+                parts.remove(index);
+                parts.addAll(index, children);
+            }
+
+            @Override
+            public long estimateSize() {
+                return remaining;
+            }
+
+            @Override
+            public int characteristics() {
+                return ORDERED | DISTINCT | SORTED | NONNULL | SIZED | SUBSIZED;
+            }
+
+            @Override
+            public Comparator<? super String> getComparator() {
+                return null;
+            }
+        }
+
+        /**
+         * Walks words within an edit distance of a query in lexicographical order.
+         * <p>
+         * Row of edit distances between a prefix and every prefix of the query is kept for every
+         * character on the way down in one array, so the row of a child is computed from the row of its parent.
+         */
+        private abstract class FuzzySearch {
+
+            private final String query;
+            /**
+             * Maximum number of edits. Could be lowered while searching. Negative value stops the search.
+             */
+            int maxEdits;
+            private final int width;
+            private int[] rows;
+            private char[] word = new char[16];
+            private Node[] nodes = new Node[16];
+            private int[] keys = new int[16];
+            private int[] ends = new int[16];
+
+            FuzzySearch(String query, int maxEdits) {
+                this.query = Objects.requireNonNull(query);
+                if (maxEdits < 0) {
+                    throw new IllegalArgumentException("maxEdits must not be negative but was " + maxEdits);
+                }
+                this.maxEdits = maxEdits;
+                width = query.length() + 1;
+                rows = new int[width * 16];
+                for (int j = 0; j < width; j++) {
+                    rows[j] = j;
+                }
+            }
+
+            /**
+             * Receives a word.
+             *
+             * @param word     Found word.
+             * @param distance Edit distance between the word and the query.
+             */
+            abstract void found(String word, int distance);
+
+            /**
+             * Walks nodes close to the query.
+             *
+             * @return Number of visited nodes.
+             */
+            int run() {
+                if (root == null || maxEdits < 0) {
+                    return 0;
+                }
+                int visited = 1;
+                int depth = 0;
+                nodes[0] = root;
+                keys[0] = -1;
+                ends[0] = 0;
+                check(root, 0);
+                while (depth >= 0 && maxEdits >= 0) {
+                    Node node = nodes[depth];
+                    int key = node.nextKey(keys[depth]);
+                    if (key < 0) {
+                        depth--;
+                        continue;
+                    }
+                    keys[depth] = key;
+                    Node child = node.child((char) key);
+                    int length = ends[depth];
+                    boolean close = append(length++, (char) key);
+                    for (int i = 0; close && i < child.label.length; i++) {
+                        close = append(length++, child.label[i]);
+                    }
+                    if (!close) {
+                        continue;
+                    }
+                    depth++;
+                    if (depth == nodes.length) {
+                        nodes = Arrays.copyOf(nodes, depth * 2);
+                        keys = Arrays.copyOf(keys, depth * 2);
+                        ends = Arrays.copyOf(ends, depth * 2);
+                    }
+                    nodes[depth] = child;
+                    keys[depth] = -1;
+                    ends[depth] = length;
+                    check(child, length);
+                    visited++;
+                }
+                return visited;
+            }
+
+            private void check(Node node, int length) {
+                int distance = rows[length * width + width - 1];
+                if (node.endOfWord && distance <= maxEdits) {
+                    found(new String(word, 0, length), distance);
+                }
+            }
+
+            /**
+             * Computes distances for a prefix that is one character longer.
+             *
+             * @param length    Length of the prefix before the character.
+             * @param character Character to append.
+             * @return true if the longer prefix could still lead to a close word.
+             */
+            private boolean append(int length, char character) {
+                if (length == word.length) {
+                    word = Arrays.copyOf(word, length * 2);
+                }
+                word[length] = character;
+                int previous = length * width;
+                int current = previous + width;
+                if (current + width > rows.length) {
+                    rows = Arrays.copyOf(rows, Math.max(rows.length * 2, current + width));
+                }
+                rows[current] = length + 1;
+                int min = rows[current];
+                for (int j = 1; j < width; j++) {
+                    int distance = Math.min(
+                            Math.min(rows[previous + j] + 1, rows[current + j - 1] + 1),
+                            rows[previous + j - 1] + (query.charAt(j - 1) == character ? 0 : 1));
+                    rows[current + j] = distance;
+                    min = Math.min(min, distance);
+                }
+                return min <= maxEdits;
+            }
+        }
+
+        /**
+         * Structure of a tree at some moment.
+         *
+         * @param nodeCount      Number of nodes including the root.
+         * @param estimatedBytes Estimated memory retained by the nodes, see {@link Node#estimatedBytes}.
+         * @param wordDepths     Number of words by the number of nodes between the root and the end of a word.
+         *                       This is the number of child lookups needed to find a word.
+         * @param fanOuts        Number of nodes by the number of their children.
+         */
+        public record Shape(int nodeCount, long estimatedBytes, int[] wordDepths, int[] fanOuts) {
+
+            @Override
+            public String toString() {
+                return "Shape[nodeCount=" + nodeCount
+                        + ", estimatedBytes=" + estimatedBytes
+                        + ", wordDepths=" + Arrays.toString(wordDepths)
+                        + ", fanOuts=" + Arrays.toString(fanOuts) + "]";
+            }
+        }
+
+        /**
+         * Receiver of operations of a tree.
+         * <p>
+         * A tree calls {@link #start()} before an operation and passes its result to one of the other methods
+         * when the operation completes, so implementations could measure time between the calls.
+         * All methods do nothing by default.
+         * <p>
+         * Metrics are chosen with {@link Builder#metrics}.
+         * As long as a program uses only one or two implementations, calls are inlined,
+         * so {@link #NONE} adds nothing to operations.
+         */
+        public interface Metrics {
+
+            /**
+             * Metrics that record nothing.
+             */
+            Metrics NONE = new Metrics() {
+            };
+
+            /**
+             * Marks the beginning of an operation.
+             *
+             * @return Value to pass back when the operation completes, for example {@link System#nanoTime()}.
+             */
+            default long start() {
+                return 0;
+            }
+
+            /**
+             * Receives the result of {@link SuffixTree#add}.
+             *
+             * @param word  Added word.
+             * @param added true if the word has been added or false if it already existed.
+             * @param start Value returned by {@link #start()} before the operation.
+             */
+            default void add(String word, boolean added, long start) {
+            }
+
+            /**
+             * Receives the result of {@link SuffixTree#remove}.
+             *
+             * @param word    Removed word.
+             * @param removed true if the word has been removed or false if it did not exist.
+             * @param start   Value returned by {@link #start()} before the operation.
+             */
+            default void remove(String word, boolean removed, long start) {
+            }
+
+            /**
+             * Receives the result of {@link SuffixTree#contains}.
+             *
+             * @param word  Word searched for.
+             * @param found true if the word exists.
+             * @param start Value returned by {@link #start()} before the operation.
+             */
+            default void contains(String word, boolean found, long start) {
+            }
+
+            /**
+             * Receives the size of a traversal made by {@link SuffixTree#visit}, {@link SuffixTree#topCompletions}
+             * or {@link SuffixTree#fuzzyMatches}.
+             *
+             * @param operation Name of the method.
+             * @param prefix    Prefix or query of the traversal.
+             * @param visited   Number of visited words for {@code visit} or nodes for other operations.
+             * @param start     Value returned by {@link #start()} before the operation.
+             */
+            default void traversal(String operation, String prefix, int visited, long start) {
+            }
+        }
+
+        /**
+         * Metrics that count operations and emit Flight Recorder events for outliers.
+         * <p>
+         * Counters could be read from any thread while trees are being used
+         * and one instance could be shared by trees used by different threads.
+         * <p>
+         * Latencies of {@link SuffixTree#contains} are kept in a histogram with power of two buckets.
+         * An operation that takes at least a given time emits
+         * {@code com.github.nikolay_martynov.java_coding_problems.SuffixTreeSlowOperation} event
+         * and a traversal of at least a given number of words or nodes emits
+         * {@code com.github.nikolay_martynov.java_coding_problems.SuffixTreeLargeTraversal} event.
+         * Events are only created when they are enabled in a running recording.
+         */
+        public static final class RecordingMetrics implements Metrics {
+
+            private final long slowOperationNanos;
+            private final int largeTraversal;
+            private final LongAdder addHits = new LongAdder();
+            private final LongAdder addMisses = new LongAdder();
+            private final LongAdder removeHits = new LongAdder();
+            private final LongAdder removeMisses = new LongAdder();
+            private final LongAdder containsHits = new LongAdder();
+            private final LongAdder containsMisses = new LongAdder();
+            private final AtomicLongArray containsLatencies = new AtomicLongArray(Long.SIZE);
+
+            /**
+             * Number of operations by their result.
+             *
+             * @param addHits        Number of added words.
+             * @param addMisses      Number of words that have not been added since they already existed.
+             * @param removeHits     Number of removed words.
+             * @param removeMisses   Number of words that have not been removed since they did not exist.
+             * @param containsHits   Number of searches for words that existed.
+             * @param containsMisses Number of searches for words that did not exist.
+             */
+            public record Counters(long addHits, long addMisses,
+                                   long removeHits, long removeMisses,
+                                   long containsHits, long containsMisses) {
+            }
+
+            /**
+             * Creates metrics that report operations slower than 1 ms
+             * and traversals of at least 100 000 words or nodes.
+             */
+            public RecordingMetrics() {
+                this(Duration.ofMillis(1), 100_000);
+            }
+
+            /**
+             * Creates a new instance.
+             *
+             * @param slowOperation  Minimum duration of an operation to report.
+             * @param largeTraversal Minimum number of words or nodes of a traversal to report.
+             * @throws NullPointerException     If slowOperation is null.
+             * @throws IllegalArgumentException If slowOperation is negative or largeTraversal is not positive.
+             */
+            public RecordingMetrics(Duration slowOperation, int largeTraversal) {
+                Objects.requireNonNull(slowOperation, "slowOperation must not be null");
+                if (slowOperation.isNegative()) {
+                    throw new IllegalArgumentException("slowOperation must not be negative but was " + slowOperation);
+                }
+                if (largeTraversal <= 0) {
+                    throw new IllegalArgumentException("largeTraversal must be positive but was " + largeTraversal);
+                }
+                this.slowOperationNanos = slowOperation.toNanos();
+                this.largeTraversal = largeTraversal;
+            }
+
+            @Override
+            public long start() {
+                return System.nanoTime();
+            }
+
+            @Override
+            public void add(String word, boolean added, long start) {
+                (added ? addHits : addMisses).increment();
+                complete("add", word, added, start);
+            }
+
+            @Override
+            public void remove(String word, boolean removed, long start) {
+                (removed ? removeHits : removeMisses).increment();
+                complete("remove", word, removed, start);
+            }
+
+            @Override
+            public void contains(String word, boolean found, long start) {
+                (found ? containsHits : containsMisses).increment();
+                long nanos = complete("contains", word, found, start);
+                containsLatencies.incrementAndGet(63 - Long.numberOfLeadingZeros(nanos | 1));
+            }
+
+            @Override
+            public void traversal(String operation, String prefix, int visited, long start) {
+                if (visited < largeTraversal) {
+                    return;
+                }
+                LargeTraversalEvent event = new LargeTraversalEvent();
+                if (event.isEnabled()) {
+                    event.operation = operation;
+                    event.prefix = prefix;
+                    event.visited = visited;
+                    event.elapsed = System.nanoTime() - start;
+                    event.commit();
+                }
+            }
+
+            /**
+             * Reports an operation if it has been slow.
+             *
+             * @return Duration of the operation in nanoseconds.
+             */
+            private long complete(String operation, String word, boolean hit, long start) {
+                long nanos = System.nanoTime() - start;
+                if (nanos >= slowOperationNanos) {
+                    SlowOperationEvent event = new SlowOperationEvent();
+                    if (event.isEnabled()) {
+                        event.operation = operation;
+                        event.word = word;
+                        event.hit = hit;
+                        event.elapsed = nanos;
+                        event.commit();
+                    }
+                }
+                return nanos;
+            }
+
+            /**
+             * Provides current counters.
+             * <p>
+             * Counters are read one by one so operations made meanwhile could be partially included.
+             *
+             * @return Numbers of operations so far.
+             */
+            public Counters counters() {
+                return new Counters(addHits.sum(), addMisses.sum(),
+                        removeHits.sum(), removeMisses.sum(),
+                        containsHits.sum(), containsMisses.sum());
+            }
+
+            /**
+             * Provides a histogram of {@link SuffixTree#contains} latencies.
+             *
+             * @return Number of operations by the binary logarithm of their duration in nanoseconds:
+             * element i counts operations that took from 2<sup>i</sup> to 2<sup>i+1</sup> - 1 nanoseconds
+             * with operations that took no time counted by element 0.
+             */
+            public long[] containsLatencies() {
+                long[] histogram = new long[containsLatencies.length()];
+                for (int i = 0; i < histogram.length; i++) {
+                    histogram[i] = containsLatencies.get(i);
+                }
+                return histogram;
+            }
+
+            @Name("com.github.nikolay_martynov.java_coding_problems.SuffixTreeSlowOperation")
+            @Label("Slow Suffix Tree Operation")
+            @Category({"Java Coding Problems", "Suffix Tree"})
+            private static final class SlowOperationEvent extends Event {
+                @Label("Operation")
+                String operation;
+                @Label("Word")
+                String word;
+                @Label("Hit")
+                @Description("Whether the word has been added, removed or found")
+                boolean hit;
+                @Label("Elapsed")
+                @Timespan
+                long elapsed;
+            }
+
+            @Name("com.github.nikolay_martynov.java_coding_problems.SuffixTreeLargeTraversal")
+            @Label("Large Suffix Tree Traversal")
+            @Category({"Java Coding Problems", "Suffix Tree"})
+            private static final class LargeTraversalEvent extends Event {
+                @Label("Operation")
+                String operation;
+                @Label("Prefix")
+                @Description("Prefix or query of the traversal")
+                String prefix;
+                @Label("Visited")
+                @Description("Number of visited words or nodes")
+                int visited;
+                @Label("Elapsed")
+                @Timespan
+                long elapsed;
+            }
+        }
+
+        /**
+         * Receives words visited by {@link #visit}.
+         */
+        @FunctionalInterface
+        public interface WordVisitor {
+
+            /**
+             * Receives a word.
+             *
+             * @param word View of the word that is only valid until this method returns.
+             *             Call {@link CharSequence#toString()} to keep the word.
+             * @return true to continue or false to stop visiting.
+             */
+            boolean visit(CharSequence word);
+        }
+
+        /**
+         * Moves over words of a subtree in lexicographical order.
+         * <p>
+         * Nodes on the way to the current word are kept in arrays that grow with the depth of the tree
+         * and characters of the current word are kept in a single buffer.
+         * The current word is exposed as a view of that buffer,
+         * so once the arrays have grown, moving to the next word does not allocate anything.
+         * <p>
+         * A cursor could be reused with {@link #reset} to walk another prefix.
+         * Using a cursor after the tree has been modified throws {@link ConcurrentModificationException}.
+         */
+        public final class Cursor {
+
+            /**
+             * Key of a node whose word has not been reported yet.
+             */
+            private static final int UNVISITED = -2;
+            /**
+             * Key of a node whose children have all been visited.
+             */
+            private static final int DONE = Character.MAX_VALUE + 1;
+
+            private Node[] nodes = new Node[16];
+            /**
+             * Character of the last visited child of each node.
+             */
+            private int[] keys = new int[16];
+            /**
+             * Length of the word at each node.
+             */
+            private int[] ends = new int[16];
+            private int depth;
+            private char[] buffer = new char[16];
+            private int length;
+            private boolean onWord;
+            private int createdAt;
+            private final CharSequence word = new WordView();
+
+            Cursor(Node start, String startPrefix) {
+                start(start, startPrefix);
+            }
+
+            /**
+             * Moves this cursor to the beginning of words with a given prefix.
+             *
+             * @param prefix Prefix of words to walk.
+             * @return This cursor.
+             * @throws NullPointerException If the prefix is null.
+             */
+            public Cursor reset(String prefix) {
+                PrefixMatch match = findPrefix(Objects.requireNonNull(prefix));
+                if (match == null) {
+                    start(null, prefix);
+                } else {
+                    start(match.node, match.path);
+                }
+                return this;
+            }
+
+            private void start(Node start, String startPrefix) {
+                createdAt = modCount;
+                onWord = false;
+                length = 0;
+                append(startPrefix.toCharArray());
+                depth = -1;
+                if (start != null) {
+                    push(start);
+                }
+            }
+
+            /**
+             * Moves to the next word.
+             *
+             * @return true if there is a word or false if all words have been walked.
+             * @throws ConcurrentModificationException If the tree has been modified.
+             */
+            public boolean next() {
+                assertNotModified();
+                onWord = false;
+                while (depth >= 0) {
+                    Node node = nodes[depth];
+                    int key = keys[depth];
+                    if (key == UNVISITED) {
+                        keys[depth] = -1;
+                        if (node.endOfWord) {
+                            onWord = true;
+                            return true;
+                        }
+                        continue;
+                    }
+                    key = node.nextKey(key);
+                    if (key >= 0) {
+                        keys[depth] = key;
+                        append((char) key);
+                        Node child = node.child((char) key);
+                        append(child.label);
+                        push(child);
+                    } else {
+                        keys[depth] = DONE;
+                        depth--;
+                        if (depth >= 0) {
+                            length = ends[depth];
+                        }
+                    }
+                }
+                return false;
+            }
+
+            /**
+             * Provides the current word.
+             *
+             * @return View of the current word that changes when the cursor moves.
+             * @throws IllegalStateException If the cursor is not at a word.
+             */
+            public CharSequence word() {
+                if (!onWord) {
+                    throw new IllegalStateException("The cursor is not at a word");
+                }
+                return word;
+            }
+
+            /**
+             * Provides the node where the current word ends.
+             *
+             * @return Node of the current word.
+             * @throws IllegalStateException If the cursor is not at a word.
+             */
+            private Node node() {
+                if (!onWord) {
+                    throw new IllegalStateException("The cursor is not at a word");
+                }
+                return nodes[depth];
+            }
+
+            /**
+             * Makes this cursor continue after its owner has removed a word before the current one.
+             */
+            private void acceptModification() {
+                createdAt = modCount;
+            }
+
+            private void assertNotModified() {
+                if (modCount != createdAt) {
+                    throw new ConcurrentModificationException(
+                            "The suffix tree has been modified since creation of this cursor");
+                }
+            }
+
+            private void push(Node node) {
+                depth++;
+                if (depth == nodes.length) {
+                    nodes = Arrays.copyOf(nodes, depth * 2);
+                    keys = Arrays.copyOf(keys, depth * 2);
+                    ends = Arrays.copyOf(ends, depth * 2);
+                }
+                nodes[depth] = node;
+                keys[depth] = UNVISITED;
+                ends[depth] = length;
+            }
+
+            private void append(char c) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, length * 2);
+                }
+                buffer[length++] = c;
+            }
+
+            private void append(char[] characters) {
+                if (length + characters.length > buffer.length) {
+                    buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + characters.length));
+                }
+                System.arraycopy(characters, 0, buffer, length, characters.length);
+                length += characters.length;
+            }
+
+            /**
+             * Current word of the cursor.
+             */
+            private class WordView implements CharSequence {
+
+                @Override
+                public int length() {
+                    return length;
+                }
+
+                @Override
+                public char charAt(int index) {
+                    return buffer[Objects.checkIndex(index, length)];
+                }
+
+                @Override
+                public CharSequence subSequence(int start, int end) {
+                    Objects.checkFromToIndex(start, end, length);
+                    return new String(buffer, start, end - start);
+                }
+
+                @Override
+                public String toString() {
+                    return new String(buffer, 0, length);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Map with string keys based on a suffix tree.
+     * <p>
+     * Keys are kept by a {@link SuffixTree} with a layout chosen by a {@link SuffixTree.Builder},
+     * so keys with common prefixes share nodes and are iterated in lexicographical order.
+     * Values are not kept in entry objects: the node where a key ends refers to a slot of a values array.
+     * {@link OfLong} and {@link OfInt} keep primitive values without boxing:
+     * the former in a {@code long[]}, the latter right in the node of the key.
+     * <p>
+     * {@link #get}, {@link #put}, {@link #remove}, {@link #containsKey} complexity is proportional to key length.
+     * <p>
+     * This implementation is not thread safe and requires external synchronization.
+     * <p>
+     * This implementation does not permit null keys.
+     * <p>
+     * Iterators provided by this implementation return entries in lexicographical order of keys
+     * and support element removal. Iterators walk the tree with a {@link SuffixTree.Cursor}.
+     * Using an old iterator after the keys have been modified will throw {@link ConcurrentModificationException}.
+     * <p>
+     * Task 124 for maps.
+     *
+     * @param <V> Type of values.
+     */
+    static public class SuffixTreeMap<V> extends AbstractMap<String, V> {
+
+        private final Keys keys;
+        /**
+         * Values by slots.
+         */
+        private Object[] values = new Object[16];
+
+        /**
+         * Creates a new instance.
+         */
+        public SuffixTreeMap() {
+            this(SuffixTree.builder());
+        }
+
+        /**
+         * Creates a new instance.
+         *
+         * @param builder Builder that defines how keys are kept.
+         * @throws NullPointerException If builder is null.
+         */
+        public SuffixTreeMap(SuffixTree.Builder builder) {
+            keys = new Keys(builder);
+        }
+
+        @Override
+        public int size() {
+            return keys.tree.size();
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return keys.node(key) != null;
+        }
+
+        @Override
+        public V get(Object key) {
+            return getOrDefault(key, null);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V getOrDefault(Object key, V defaultValue) {
+            SuffixTree.Node node = keys.node(key);
+            return node == null ? defaultValue : (V) values[node.value()];
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V put(String key, V value) {
+            SuffixTree.Node node = keys.node(key);
+            if (node != null) {
+                V old = (V) values[node.value()];
+                values[node.value()] = value;
+                return old;
+            }
+            int slot = keys.allocate();
+            keys.add(key).setValue(slot);
+            if (slot == values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[slot] = value;
+            return null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V remove(Object key) {
+            SuffixTree.Node node = keys.node(key);
+            if (node == null) {
+                return null;
+            }
+            int slot = node.value();
+            V old = (V) values[slot];
+            values[slot] = null;
+            keys.remove((String) key, node);
+            return old;
+        }
+
+        @Override
+        public void clear() {
+            keys.clear();
+            values = new Object[16];
+        }
+
+        /**
+         * Counts keys that start with a given prefix.
+         *
+         * @param prefix Prefix of keys to count.
+         * @return Number of keys with the prefix.
+         * @throws NullPointerException If the prefix is null.
+         * @see SuffixTree#countWithPrefix
+         */
+        public int countWithPrefix(String prefix) {
+            return keys.tree.countWithPrefix(prefix);
+        }
+
+        @Override
+        public Set<Entry<String, V>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, V>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    return SuffixTreeMap.this.size();
+                }
+
+                @Override
+                public void clear() {
+                    SuffixTreeMap.this.clear();
+                }
+            };
+        }
+
+        /**
+         * Entry that reads and writes the slot of its key.
+         */
+        private class SlotEntry implements Entry<String, V> {
+
+            private final String key;
+            private final int slot;
+
+            SlotEntry(String key, int slot) {
+                this.key = key;
+                this.slot = slot;
+            }
+
+            @Override
+            public String getKey() {
+                return key;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public V getValue() {
+                return (V) values[slot];
+            }
+
+            @Override
+            public V setValue(V value) {
+                V old = getValue();
+                values[slot] = value;
+                return old;
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                return o instanceof Entry<?, ?> entry
+                        && key.equals(entry.getKey()) && Objects.equals(getValue(), entry.getValue());
+            }
+
+            @Override
+            public int hashCode() {
+                return key.hashCode() ^ Objects.hashCode(getValue());
+            }
+
+            @Override
+            public String toString() {
+                return key + "=" + getValue();
+            }
+        }
+
+        private class EntryIterator implements Iterator<Entry<String, V>> {
+
+            private final Keys.KeyIterator iterator = keys.iterator();
+            private SlotEntry last;
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Entry<String, V> next() {
+                String key = iterator.next();
+                last = new SlotEntry(key, iterator.node().value());
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                iterator.remove();
+                values[last.slot] = null;
+            }
+        }
+
+        /**
+         * Map with string keys and {@code long} values based on a suffix tree.
+         * <p>
+         * Values are kept in a {@code long[]} by slots referenced from nodes of keys, so they are never boxed.
+         * Counters are updated with {@link #addTo} that descends the tree once for an existing key.
+         * <p>
+         * This implementation is not thread safe and requires external synchronization.
+         * <p>
+         * Task 124 for maps.
+         *
+         * @see SuffixTreeMap
+         */
+        static public class OfLong {
+
+            private final Keys keys;
+            private long[] values = new long[16];
+
+            /**
+             * Creates a new instance.
+             */
+            public OfLong() {
+                this(SuffixTree.builder());
+            }
+
+            /**
+             * Creates a new instance.
+             *
+             * @param builder Builder that defines how keys are kept.
+             * @throws NullPointerException If builder is null.
+             */
+            public OfLong(SuffixTree.Builder builder) {
+                keys = new Keys(builder);
+            }
+
+            /**
+             * Provides the number of keys.
+             *
+             * @return Number of keys in this map.
+             */
+            public int size() {
+                return keys.tree.size();
+            }
+
+            /**
+             * Checks whether there are any keys.
+             *
+             * @return true if this map has no keys.
+             */
+            public boolean isEmpty() {
+                return keys.tree.isEmpty();
+            }
+
+            /**
+             * Checks whether there is a value for a key.
+             *
+             * @param key Key to check.
+             * @return true if the key has a value.
+             * @throws NullPointerException If key is null.
+             */
+            public boolean containsKey(String key) {
+                return keys.node(key) != null;
+            }
+
+            /**
+             * Provides a value of a key.
+             *
+             * @param key          Key of the value.
+             * @param defaultValue Value to return if there is no value for the key.
+             * @return Value of the key or the default value.
+             * @throws NullPointerException If key is null.
+             */
+            public long getOrDefault(String key, long defaultValue) {
+                SuffixTree.Node node = keys.node(key);
+                return node == null ? defaultValue : values[node.value()];
+            }
+
+            /**
+             * Sets a value of a key.
+             *
+             * @param key   Key of the value.
+             * @param value New value.
+             * @throws NullPointerException If key is null.
+             */
+            public void put(String key, long value) {
+                int slot = slot(key);
+                values[slot] = value;
+            }
+
+            /**
+             * Adds to a value of a key.
+             * <p>
+             * This is the same as {@code merge(key, increment, Long::sum)} of a {@link Map}.
+             *
+             * @param key       Key of the value.
+             * @param increment Value to add. Missing value is considered to be zero.
+             * @return New value of the key.
+             * @throws NullPointerException If key is null.
+             */
+            public long addTo(String key, long increment) {
+                int slot = slot(key);
+                values[slot] += increment;
+                return values[slot];
+            }
+
+            /**
+             * Removes a key.
+             *
+             * @param key Key to remove.
+             * @return true if the key has been removed or false if there was no such key.
+             * @throws NullPointerException If key is null.
+             */
+            public boolean remove(String key) {
+                SuffixTree.Node node = keys.node(key);
+                if (node == null) {
+                    return false;
+                }
+                values[node.value()] = 0;
+                keys.remove(key, node);
+                return true;
+            }
+
+            /**
+             * Removes all keys.
+             */
+            public void clear() {
+                keys.clear();
+                values = new long[16];
+            }
+
+            /**
+             * Sums values of keys that start with a given prefix.
+             * <p>
+             * Keys are walked with a {@link SuffixTree.Cursor} so no strings are created.
+             *
+             * @param prefix Prefix of keys.
+             * @return Sum of values of keys with the prefix.
+             * @throws NullPointerException If the prefix is null.
+             */
+            public long sumWithPrefix(String prefix) {
+                long sum = 0;
+                SuffixTree.Cursor cursor = keys.tree.cursor(prefix);
+                while (cursor.next()) {
+                    sum += values[cursor.node().value()];
+                }
+                return sum;
+            }
+
+            /**
+             * Counts keys that start with a given prefix.
+             *
+             * @param prefix Prefix of keys to count.
+             * @return Number of keys with the prefix.
+             * @throws NullPointerException If the prefix is null.
+             */
+            public int countWithPrefix(String prefix) {
+                return keys.tree.countWithPrefix(prefix);
+            }
+
+            /**
+             * Passes every key and its value to a consumer in lexicographical order of keys.
+             *
+             * @param action Receiver of keys and values.
+             * @throws NullPointerException If action is null.
+             */
+            public void forEach(ObjLongConsumer<? super String> action) {
+                Objects.requireNonNull(action);
+                SuffixTree.Cursor cursor = keys.tree.cursor("");
+                while (cursor.next()) {
+                    action.accept(cursor.word().toString(), values[cursor.node().value()]);
+                }
+            }
+
+            /**
+             * Provides keys.
+             *
+             * @return Unmodifiable view of keys in lexicographical order.
+             */
+            public NavigableSet<String> keySet() {
+                return Collections.unmodifiableNavigableSet(keys.tree);
+            }
+
+            @Override
+            public String toString() {
+                StringJoiner entries = new StringJoiner(", ", "{", "}");
+                forEach((key, value) -> entries.add(key + "=" + value));
+                return entries.toString();
+            }
+
+            /**
+             * Finds the slot of a key and adds the key if it is missing.
+             *
+             * @param key Key to find.
+             * @return Slot of the value of the key.
+             */
+            private int slot(String key) {
+                SuffixTree.Node node = keys.node(key);
+                if (node != null) {
+                    return node.value();
+                }
+                int slot = keys.allocate();
+                keys.add(key).setValue(slot);
+                if (slot == values.length) {
+                    values = Arrays.copyOf(values, values.length * 2);
+                }
+                return slot;
+            }
+        }
+
+        /**
+         * Map with string keys and {@code int} values based on a suffix tree.
+         * <p>
+         * The value of a key is kept right in the node where the key ends,
+         * so there are no arrays of values and values are never boxed.
+         * Counters are updated with {@link #addTo} that descends the tree once for an existing key.
+         * <p>
+         * This implementation is not thread safe and requires external synchronization.
+         * <p>
+         * Task 124 for maps.
+         *
+         * @see SuffixTreeMap
+         */
+        static public class OfInt {
+
+            private final Keys keys;
+
+            /**
+             * Creates a new instance.
+             */
+            public OfInt() {
+                this(SuffixTree.builder());
+            }
+
+            /**
+             * Creates a new instance.
+             *
+             * @param builder Builder that defines how keys are kept.
+             * @throws NullPointerException If builder is null.
+             */
+            public OfInt(SuffixTree.Builder builder) {
+                keys = new Keys(builder);
+            }
+
+            /**
+             * Provides the number of keys.
+             *
+             * @return Number of keys in this map.
+             */
+            public int size() {
+                return keys.tree.size();
+            }
+
+            /**
+             * Checks whether there are any keys.
+             *
+             * @return true if this map has no keys.
+             */
+            public boolean isEmpty() {
+                return keys.tree.isEmpty();
+            }
+
+            /**
+             * Checks whether there is a value for a key.
+             *
+             * @param key Key to check.
+             * @return true if the key has a value.
+             * @throws NullPointerException If key is null.
+             */
+            public boolean containsKey(String key) {
+                return keys.node(key) != null;
+            }
+
+            /**
+             * Provides a value of a key.
+             *
+             * @param key          Key of the value.
+             * @param defaultValue Value to return if there is no value for the key.
+             * @return Value of the key or the default value.
+             * @throws NullPointerException If key is null.
+             */
+            public int getOrDefault(String key, int defaultValue) {
+                SuffixTree.Node node = keys.node(key);
+                return node == null ? defaultValue : node.value();
+            }
+
+            /**
+             * Sets a value of a key.
+             *
+             * @param key   Key of the value.
+             * @param value New value.
+             * @throws NullPointerException If key is null.
+             */
+            public void put(String key, int value) {
+                node(key).setValue(value);
+            }
+
+            /**
+             * Adds to a value of a key.
+             * <p>
+             * This is the same as {@code merge(key, increment, Integer::sum)} of a {@link Map}.
+             *
+             * @param key       Key of the value.
+             * @param increment Value to add. Missing value is considered to be zero.
+             * @return New value of the key.
+             * @throws NullPointerException If key is null.
+             */
+            public int addTo(String key, int increment) {
+                SuffixTree.Node node = node(key);
+                int value = node.value() + increment;
+                node.setValue(value);
+                return value;
+            }
+
+            /**
+             * Removes a key.
+             *
+             * @param key Key to remove.
+             * @return true if the key has been removed or false if there was no such key.
+             * @throws NullPointerException If key is null.
+             */
+            public boolean remove(String key) {
+                return keys.tree.remove(key);
+            }
+
+            /**
+             * Removes all keys.
+             */
+            public void clear() {
+                keys.clear();
+            }
+
+            /**
+             * Sums values of keys that start with a given prefix.
+             * <p>
+             * Keys are walked with a {@link SuffixTree.Cursor} so no strings are created.
+             *
+             * @param prefix Prefix of keys.
+             * @return Sum of values of keys with the prefix.
+             * @throws NullPointerException If the prefix is null.
+             */
+            public long sumWithPrefix(String prefix) {
+                long sum = 0;
+                SuffixTree.Cursor cursor = keys.tree.cursor(prefix);
+                while (cursor.next()) {
+                    sum += cursor.node().value();
+                }
+                return sum;
+            }
+
+            /**
+             * Counts keys that start with a given prefix.
+             *
+             * @param prefix Prefix of keys to count.
+             * @return Number of keys with the prefix.
+             * @throws NullPointerException If the prefix is null.
+             */
+            public int countWithPrefix(String prefix) {
+                return keys.tree.countWithPrefix(prefix);
+            }
+
+            /**
+             * Passes every key and its value to a consumer in lexicographical order of keys.
+             *
+             * @param action Receiver of keys and values.
+             * @throws NullPointerException If action is null.
+             */
+            public void forEach(ObjIntConsumer<? super String> action) {
+                Objects.requireNonNull(action);
+                SuffixTree.Cursor cursor = keys.tree.cursor("");
+                while (cursor.next()) {
+                    action.accept(cursor.word().toString(), cursor.node().value());
+                }
+            }
+
+            /**
+             * Provides keys.
+             *
+             * @return Unmodifiable view of keys in lexicographical order.
+             */
+            public NavigableSet<String> keySet() {
+                return Collections.unmodifiableNavigableSet(keys.tree);
+            }
+
+            @Override
+            public String toString() {
+                StringJoiner entries = new StringJoiner(", ", "{", "}");
+                forEach((key, value) -> entries.add(key + "=" + value));
+                return entries.toString();
+            }
+
+            private SuffixTree.Node node(String key) {
+                SuffixTree.Node node = keys.node(key);
+                return node == null ? keys.add(key) : node;
+            }
+        }
+
+        /**
+         * Keys of a map and slots for their values.
+         * <p>
+         * The node where a key ends keeps the value or the slot of the value in {@link SuffixTree.Node#value()}.
+         * Slot 0 is never used. Freed slots are reused before new ones.
+         */
+        private static final class Keys {
+
+            final SuffixTree tree;
+            private int[] freeSlots = new int[16];
+            private int freeCount;
+            private int slotCount = 1;
+
+            Keys(SuffixTree.Builder builder) {
+                tree = new SuffixTree(builder, true);
+            }
+
+            /**
+             * Finds the node of a key.
+             *
+             * @param key Key to find.
+             * @return Node where the key ends or null if there is no such key.
+             * @throws NullPointerException If key is null.
+             * @throws ClassCastException   If key is not a string.
+             */
+            SuffixTree.Node node(Object key) {
+                SuffixTree.Node node = tree.find((String) Objects.requireNonNull(key));
+                return node != null && node.endOfWord ? node : null;
+            }
+
+            /**
+             * Adds a key that is not in the tree yet.
+             *
+             * @param key Key to add.
+             * @return Node where the key ends with zero value.
+             */
+            SuffixTree.Node add(String key) {
+                SuffixTree.Node node = tree.addMissing(key);
+                // The node could be left from a removed key.
+                node.setValue(0);
+                return node;
+            }
+
+            void remove(String key, SuffixTree.Node node) {
+                release(node.value());
+                tree.remove(key);
+            }
+
+            int allocate() {
+                return freeCount > 0 ? freeSlots[--freeCount] : slotCount++;
+            }
+
+            private void release(int slot) {
+                if (slot == 0) {
+                    return;
+                }
+                if (freeCount == freeSlots.length) {
+                    freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+                }
+                freeSlots[freeCount++] = slot;
+            }
+
+            void clear() {
+                tree.clear();
+                freeCount = 0;
+                slotCount = 1;
+            }
+
+            /**
+             * Iterates keys with a cursor.
+             * Unlike the iterator of the tree, this one could remove keys and release their slots.
+             *
+             * @return Iterator of keys in lexicographical order.
+             */
+            KeyIterator iterator() {
+                return new KeyIterator();
+            }
+
+            /**
+             * Iterator of keys that walks the tree with a {@link SuffixTree.Cursor}.
+             * <p>
+             * The cursor is moved to the next key before the last one is removed.
+             * Removal of a key before the cursor only changes nodes that the cursor has already left
+             * or that keep the children it is yet to visit, so the cursor continues from where it is.
+             */
+            final class KeyIterator implements Iterator<String> {
+                private final SuffixTree.Cursor cursor = tree.cursor("");
+                private int expectedModCount = tree.modCount;
+                /**
+                 * Whether the cursor has been moved past the last returned key.
+                 */
+                private boolean advanced;
+                private boolean hasNext;
+                private String last;
+                private SuffixTree.Node lastNode;
+
+                @Override
+                public boolean hasNext() {
+                    if (tree.modCount != expectedModCount) {
+                        throw new ConcurrentModificationException(
+                                "The map has been modified since creation of this iterator");
+                    }
+                    if (!advanced) {
+                        hasNext = cursor.next();
+                        advanced = true;
+                    }
+                    return hasNext;
+                }
+
+                @Override
+                public String next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    advanced = false;
+                    last = cursor.word().toString();
+                    lastNode = cursor.node();
+                    return last;
+                }
+
+                /**
+                 * Provides the node of the key returned by the last call to {@link #next()}.
+                 *
+                 * @return Node where the last key ends.
+                 */
+                SuffixTree.Node node() {
+                    return lastNode;
+                }
+
+                @Override
+                public void remove() {
+                    if (last == null) {
+                        throw new IllegalStateException(
+                                "next has not been called or remove has already been called");
+                    }
+                    hasNext();
+                    Keys.this.remove(last, lastNode);
+                    expectedModCount = tree.modCount;
+                    cursor.acceptModification();
+                    last = null;
+                    lastNode = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Pool of canonical strings based on a suffix tree.
+     * <p>
+     * A string is looked up by its characters straight from a {@link CharSequence}
+     * (including {@link CharBuffer}) or a {@code char[]}, so a string is only created
+     * when characters are seen for the first time. Canonical strings are kept by the nodes where they end
+     * the same way as values of a {@link SuffixTreeMap}.
+     * <p>
+     * The pool keeps at most a given number of strings. When it is full, the least recently used string
+     * is evicted. Recency is kept in a doubly linked list of slots in two {@code int[]},
+     * so a hit only relinks one slot and does not allocate.
+     * <p>
+     * {@link #intern} complexity is proportional to string length.
+     * <p>
+     * This implementation is not thread safe and requires external synchronization.
+     * <p>
+     * Task 124 for interning.
+     */
+    static public class StringPool {
+
+        /**
+         * Slot that is never used by keys. It is both the head and the tail of the recency list.
+         */
+        private static final int SENTINEL = 0;
+
+        private final int capacity;
+        private final SuffixTreeMap.Keys keys;
+        private String[] strings = new String[16];
+        /**
+         * Less recently used slot for each slot.
+         */
+        private int[] older = new int[16];
+        /**
+         * More recently used slot for each slot.
+         */
+        private int[] newer = new int[16];
+        private final ArraySlice slice = new ArraySlice();
+        private long hits;
+        private long misses;
+        private long evictions;
+
+        /**
+         * Counters of a pool.
+         *
+         * @param hits      Number of lookups that found a canonical string.
+         * @param misses    Number of lookups that added a new string.
+         * @param evictions Number of strings evicted to free space for new ones.
+         */
+        public record Statistics(long hits, long misses, long evictions) {
+
+            /**
+             * Calculates share of lookups that found a canonical string.
+             *
+             * @return Hit rate from 0 to 1 or 0 if there were no lookups.
+             */
+            public double hitRate() {
+                long lookups = hits + misses;
+                return lookups == 0 ? 0 : (double) hits / lookups;
+            }
+        }
+
+        /**
+         * Creates a new instance that keeps strings in a compact path compressed tree.
+         *
+         * @param capacity Maximum number of strings to keep.
+         * @throws IllegalArgumentException If capacity is not positive.
+         */
+        public StringPool(int capacity) {
+            this(capacity, SuffixTree.builder().compact().pathCompressed());
+        }
+
+        /**
+         * Creates a new instance.
+         *
+         * @param capacity Maximum number of strings to keep.
+         * @param builder  Builder that defines how strings are kept.
+         * @throws IllegalArgumentException If capacity is not positive.
+         * @throws NullPointerException     If builder is null.
+         */
+        public StringPool(int capacity, SuffixTree.Builder builder) {
+            if (capacity <= 0) {
+                throw new IllegalArgumentException("capacity must be positive but was " + capacity);
+            }
+            this.capacity = capacity;
+            keys = new SuffixTreeMap.Keys(builder);
+        }
+
+        /**
+         * Provides the canonical string with given characters.
+         *
+         * @param s Characters of the string.
+         * @return Canonical string equal to the characters.
+         * @throws NullPointerException If s is null.
+         */
+        public String intern(CharSequence s) {
+            return intern(s, 0, s.length());
+        }
+
+        /**
+         * Provides the canonical string with characters of a part of a sequence.
+         *
+         * @param s     Sequence of characters.
+         * @param start Position of the first character of the string.
+         * @param end   Position after the last character of the string.
+         * @return Canonical string equal to the characters.
+         * @throws NullPointerException      If s is null.
+         * @throws IndexOutOfBoundsException If start or end are outside the sequence.
+         */
+        public String intern(CharSequence s, int start, int end) {
+            Objects.checkFromToIndex(start, end, s.length());
+            SuffixTree.Node node = keys.tree.find(s, start, end);
+            if (node != null && node.endOfWord) {
+                hits++;
+                int slot = node.value();
+                unlink(slot);
+                linkNewest(slot);
+                return strings[slot];
+            }
+            misses++;
+            String string = s.subSequence(start, end).toString();
+            if (keys.tree.size() == capacity) {
+                evict();
+            }
+            int slot = keys.allocate();
+            keys.add(string).setValue(slot);
+            if (slot == strings.length) {
+                strings = Arrays.copyOf(strings, slot * 2);
+                older = Arrays.copyOf(older, slot * 2);
+                newer = Arrays.copyOf(newer, slot * 2);
+            }
+            strings[slot] = string;
+            linkNewest(slot);
+            return string;
+        }
+
+        /**
+         * Provides the canonical string with characters of a part of an array.
+         *
+         * @param characters Array of characters.
+         * @param offset     Position of the first character of the string.
+         * @param length     Number of characters in the string.
+         * @return Canonical string equal to the characters.
+         * @throws NullPointerException      If characters is null.
+         * @throws IndexOutOfBoundsException If offset or length are outside the array.
+         */
+        public String intern(char[] characters, int offset, int length) {
+            Objects.checkFromIndexSize(offset, length, characters.length);
+            slice.characters = characters;
+            slice.offset = offset;
+            slice.length = length;
+            try {
+                return intern(slice, 0, length);
+            } finally {
+                slice.characters = null;
+            }
+        }
+
+        /**
+         * Provides the number of kept strings.
+         *
+         * @return Number of strings in the pool.
+         */
+        public int size() {
+            return keys.tree.size();
+        }
+
+        /**
+         * Provides the maximum number of kept strings.
+         *
+         * @return Capacity of the pool.
+         */
+        public int capacity() {
+            return capacity;
+        }
+
+        /**
+         * Provides counters of lookups since the creation of the pool.
+         *
+         * @return Current counters.
+         */
+        public Statistics statistics() {
+            return new Statistics(hits, misses, evictions);
+        }
+
+        private void evict() {
+            int slot = older[SENTINEL];
+            String string = strings[slot];
+            unlink(slot);
+            strings[slot] = null;
+            keys.remove(string, keys.node(string));
+            evictions++;
+        }
+
+        private void unlink(int slot) {
+            newer[older[slot]] = newer[slot];
+            older[newer[slot]] = older[slot];
+        }
+
+        private void linkNewest(int slot) {
+            int newest = newer[SENTINEL];
+            newer[slot] = newest;
+            older[slot] = SENTINEL;
+            older[newest] = slot;
+            newer[SENTINEL] = slot;
+        }
+
+        /**
+         * Reusable view of a part of an array of characters.
+         */
+        private static final class ArraySlice implements CharSequence {
+
+            private char[] characters;
+            private int offset;
+            private int length;
+
+            @Override
+            public int length() {
+                return length;
+            }
+
+            @Override
+            public char charAt(int index) {
+                return characters[offset + Objects.checkIndex(index, length)];
+            }
+
+            @Override
+            public CharSequence subSequence(int start, int end) {
+                Objects.checkFromToIndex(start, end, length);
+                return new String(characters, offset + start, end - start);
+            }
+
+            @Override
+            public String toString() {
+                return new String(characters, offset, length);
+            }
+        }
+    }
+
+    /**
+     * Immutable set based on a minimal acyclic word graph.
+     * <p>
+     * This is a {@link SuffixTree} where identical subtrees are merged into one
+     * so not only common prefixes but also common suffixes are stored once.
+     * States of the graph are kept in flat primitive arrays instead of node objects:
+     * <ul>
+     *     <li>edges of each state are sorted by character and are stored contiguously,
+     *     so a transition is a binary search in a small range of a {@code char[]};</li>
+     *     <li>each state has a number of words reachable from it,
+     *     so {@link #size} and {@link #countWithPrefix} do not need to visit words.</li>
+     * </ul>
+     * <p>
+     * {@link #contains} and {@link #countWithPrefix} complexity is proportional to string length.
+     * <p>
+     * The arrays could be written to a file with {@link #write} and later memory mapped with {@link #map}
+     * so that a large set is opened without reading and deserializing it.
+     * A mapped set could be copied back to a {@link SuffixTree} with {@link SuffixTree#addAll}.
+     * <p>
+     * This implementation is immutable and thread safe.
+     * All modification methods throw {@link UnsupportedOperationException}.
+     * <p>
+     * Iterator provided by this implementation returns words in lexicographical order.
+     * <p>
+     * Task 124 for read-only access.
+     */
+    static public class FrozenSuffixTree extends AbstractSet<String> implements Set<String> {
+
+        /**
+         * Edges of state s are at positions from firstEdge[s] inclusive to firstEdge[s+1] exclusive.
+         */
+        private final IntBuffer firstEdge;
+        /**
+         * Characters of edges sorted within each state.
+         */
+        private final CharBuffer edgeCharacters;
+        /**
+         * States where edges lead to.
+         */
+        private final IntBuffer edgeTargets;
+        /**
+         * Bit set of states where words end.
+         */
+        private final LongBuffer endOfWord;
+        /**
+         * Number of words reachable from each state.
+         */
+        private final IntBuffer sizes;
+        private final int root;
+
+        private static final int FILE_MAGIC = 0x54464653;
+        private static final int FILE_VERSION = 1;
+        private static final int FILE_HEADER_SIZE = 6 * Integer.BYTES;
+
+        private FrozenSuffixTree(IntBuffer firstEdge, CharBuffer edgeCharacters, IntBuffer edgeTargets,
+                                 LongBuffer endOfWord, IntBuffer sizes, int root) {
+            this.firstEdge = firstEdge;
+            this.edgeCharacters = edgeCharacters;
+            this.edgeTargets = edgeTargets;
+            this.endOfWord = endOfWord;
+            this.sizes = sizes;
+            this.root = root;
+        }
+
+        /**
+         * Creates an immutable copy of a tree.
+         *
+         * @param tree Tree to copy.
+         * @return New instance with the same words as the given tree.
+         * @throws NullPointerException If the tree is null.
+         */
+        public static FrozenSuffixTree of(SuffixTree tree) {
+            return new Builder().build(Objects.requireNonNull(tree, "tree must not be null").root);
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            String s = (String) Objects.requireNonNull(o);
+            int state = find(s);
+            return state >= 0 && isEndOfWord(state);
+        }
+
+        /**
+         * Counts words that start with a given prefix.
+         * <p>
+         * Complexity is proportional to the prefix length.
+         *
+         * @param prefix Prefix of words to count.
+         * @return Number of words in this set that start with the prefix.
+         * @throws NullPointerException If the prefix is null.
+         */
+        public int countWithPrefix(String prefix) {
+            int state = find(Objects.requireNonNull(prefix));
+            return state >= 0 ? sizes.get(state) : 0;
+        }
+
+        /**
+         * Finds first words in lexicographical order that start with a given prefix.
+         *
+         * @param prefix Prefix of words to find.
+         * @param k      Maximum number of words to return.
+         * @return At most k words with the prefix in lexicographical order.
+         * @throws NullPointerException     If the prefix is null.
+         * @throws IllegalArgumentException If k is negative.
+         */
+        public List<String> completions(String prefix, int k) {
+            Objects.requireNonNull(prefix);
+            if (k < 0) {
+                throw new IllegalArgumentException("k must not be negative but was " + k);
+            }
+            List<String> result = new ArrayList<>();
+            Iterator<String> iterator = new FrozenIterator(find(prefix), prefix);
+            while (result.size() < k && iterator.hasNext()) {
+                result.add(iterator.next());
+            }
+            return result;
+        }
+
+        /**
+         * Writes this set to a file.
+         * <p>
+         * The file could be opened with {@link #map}.
+         * It contains a header followed by the arrays of the graph in little endian byte order:
+         * <ol>
+         *     <li>magic number, format version, number of states, number of edges, root state
+         *     and a reserved value as 32-bit integers;</li>
+         *     <li>end of word bit set as 64-bit integers;</li>
+         *     <li>offsets of edges of states as 32-bit integers;</li>
+         *     <li>numbers of words reachable from states as 32-bit integers;</li>
+         *     <li>targets of edges as 32-bit integers;</li>
+         *     <li>characters of edges as 16-bit integers.</li>
+         * </ol>
+         *
+         * @param file File to write to. Existing file is replaced.
+         * @throws IOException          If writing fails.
+         * @throws NullPointerException If the file is null.
+         */
+        public void write(Path file) throws IOException {
+            Objects.requireNonNull(file, "file must not be null");
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putInt(FILE_MAGIC).putInt(FILE_VERSION)
+                        .putInt(stateCount()).putInt(edgeCharacters.limit()).putInt(root).putInt(0);
+                for (int i = 0; i < endOfWord.limit(); i++) {
+                    flushIfFull(channel, buffer, Long.BYTES).putLong(endOfWord.get(i));
+                }
+                for (IntBuffer ints : List.of(firstEdge, sizes, edgeTargets)) {
+                    for (int i = 0; i < ints.limit(); i++) {
+                        flushIfFull(channel, buffer, Integer.BYTES).putInt(ints.get(i));
+                    }
+                }
+                for (int i = 0; i < edgeCharacters.limit(); i++) {
+                    flushIfFull(channel, buffer, Character.BYTES).putChar(edgeCharacters.get(i));
+                }
+                flushIfFull(channel, buffer, buffer.capacity());
+            }
+        }
+
+        /**
+         * Writes buffered bytes to a channel if there is no space for more bytes.
+         *
+         * @param channel  Channel where to write.
+         * @param buffer   Buffer in write mode.
+         * @param required Number of bytes that are going to be put into the buffer.
+         * @return The buffer.
+         * @throws IOException If writing fails.
+         */
+        private static ByteBuffer flushIfFull(FileChannel channel, ByteBuffer buffer, int required)
+                throws IOException {
+            if (buffer.remaining() < required) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                buffer.clear();
+            }
+            return buffer;
+        }
+
+        /**
+         * Opens a set written with {@link #write} without reading it into the heap.
+         * <p>
+         * The file is memory mapped so lookups and iteration read it directly from the page cache
+         * which is shared by all processes that map the same file.
+         * Opening takes the same time regardless of the file size.
+         * So only the header, the file size and the bounds of the edge ranges are checked.
+         * Edges of each state and states where edges lead are not checked
+         * and a damaged file could make lookups return wrong results or throw {@link IndexOutOfBoundsException}.
+         * The file must not be modified while the set is in use.
+         *
+         * @param file File to open.
+         * @return Set backed by the file.
+         * @throws IOException          If the file cannot be read or is not in the expected format.
+         * @throws NullPointerException If the file is null.
+         */
+        public static FrozenSuffixTree map(Path file) throws IOException {
+            Objects.requireNonNull(file, "file must not be null");
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                if (channel.size() < FILE_HEADER_SIZE) {
+                    throw new IOException(file + " is not a suffix tree file");
+                }
+                ByteBuffer header = map(channel, 0, FILE_HEADER_SIZE);
+                if (header.getInt(0) != FILE_MAGIC || header.getInt(4) != FILE_VERSION) {
+                    throw new IOException(file + " is not a suffix tree file of version " + FILE_VERSION);
+                }
+                int stateCount = header.getInt(8);
+                int edgeCount = header.getInt(12);
+                int root = header.getInt(16);
+                if (stateCount <= 0 || edgeCount < 0 || root < 0 || root >= stateCount) {
+                    throw new IOException(file + " has " + stateCount + " states, " + edgeCount
+                            + " edges and root " + root);
+                }
+                long endOfWordSize = (long) ((stateCount + 63) >>> 6) * Long.BYTES;
+                long firstEdgeSize = (stateCount + 1L) * Integer.BYTES;
+                long sizesSize = (long) stateCount * Integer.BYTES;
+                long edgeTargetsSize = (long) edgeCount * Integer.BYTES;
+                long edgeCharactersSize = (long) edgeCount * Character.BYTES;
+                long expectedSize = FILE_HEADER_SIZE + endOfWordSize + firstEdgeSize + sizesSize
+                        + edgeTargetsSize + edgeCharactersSize;
+                if (channel.size() != expectedSize) {
+                    throw new IOException(file + " size is " + channel.size() + " but expected " + expectedSize);
+                }
+                // Each array is mapped separately so that a file could be larger than a single mapping.
+                long position = FILE_HEADER_SIZE;
+                LongBuffer endOfWord = map(channel, position, endOfWordSize).asLongBuffer();
+                position += endOfWordSize;
+                IntBuffer firstEdge = map(channel, position, firstEdgeSize).asIntBuffer();
+                if (firstEdge.get(0) != 0 || firstEdge.get(stateCount) != edgeCount) {
+                    throw new IOException(file + " has edges from " + firstEdge.get(0)
+                            + " to " + firstEdge.get(stateCount) + " but expected from 0 to " + edgeCount);
+                }
+                position += firstEdgeSize;
+                IntBuffer sizes = map(channel, position, sizesSize).asIntBuffer();
+                position += sizesSize;
+                IntBuffer edgeTargets = map(channel, position, edgeTargetsSize).asIntBuffer();
+                position += edgeTargetsSize;
+                CharBuffer edgeCharacters = map(channel, position, edgeCharactersSize).asCharBuffer();
+                return new FrozenSuffixTree(firstEdge, edgeCharacters, edgeTargets, endOfWord, sizes, root);
+            }
+        }
+
+        private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+            return channel.map(FileChannel.MapMode.READ_ONLY, position, size).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        /**
+         * Number of states in the graph.
+         * <p>
+         * Each state corresponds to one or more nodes of a suffix tree without path compression.
+         *
+         * @return Number of states.
+         */
+        public int stateCount() {
+            return sizes.limit();
+        }
+
+        @Override
+        public int size() {
+            return sizes.get(root);
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Supplied iterator does not support {@link Iterator#remove}.
+         */
+        @Override
+        public Iterator<String> iterator() {
+            return new FrozenIterator(root, "");
+        }
+
+        @Override
+        public boolean add(String s) {
+            throw new UnsupportedOperationException("FrozenSuffixTree is immutable");
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            throw new UnsupportedOperationException("FrozenSuffixTree is immutable");
+        }
+
+        @Override
+        public boolean addAll(Collection<? extends String> c) {
+            throw new UnsupportedOperationException("FrozenSuffixTree is immutable");
+        }
+
+        @Override
+        public boolean removeAll(Collection<?> c) {
+            throw new UnsupportedOperationException("FrozenSuffixTree is immutable");
+        }
+
+        @Override
+        public boolean retainAll(Collection<?> c) {
+            throw new UnsupportedOperationException("FrozenSuffixTree is immutable");
+        }
+
+        @Override
+        public void clear() {
+            throw new UnsupportedOperationException("FrozenSuffixTree is immutable");
+        }
+
+        private boolean isEndOfWord(int state) {
+            return (endOfWord.get(state >>> 6) & (1L << state)) != 0;
+        }
+
+        /**
+         * Follows characters of a string.
+         *
+         * @param s String to follow.
+         * @return State where the string ends or -1 if there is no such state.
+         */
+        private int find(String s) {
+            int state = root;
+            for (int i = 0; i < s.length() && state >= 0; i++) {
+                state = transition(state, s.charAt(i));
+            }
+            return state;
+        }
+
+        private int transition(int state, char c) {
+            int low = firstEdge.get(state);
+            int high = firstEdge.get(state + 1) - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                char middleCharacter = edgeCharacters.get(middle);
+                if (middleCharacter < c) {
+                    low = middle + 1;
+                } else if (middleCharacter > c) {
+                    high = middle - 1;
+                } else {
+                    return edgeTargets.get(middle);
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Builds the graph bottom up merging states with the same edges.
+         */
+        private static class Builder {
+
+            /**
+             * Edges of a state used as a key to find an equivalent state.
+             */
+            private record StateKey(boolean endOfWord, char[] characters, int[] targets) {
+                @Override
+                public boolean equals(Object o) {
+                    return o instanceof StateKey other
+                            && endOfWord == other.endOfWord
+                            && Arrays.equals(characters, other.characters)
+                            && Arrays.equals(targets, other.targets);
+                }
+
+                @Override
+                public int hashCode() {
+                    return 31 * (31 * Boolean.hashCode(endOfWord) + Arrays.hashCode(characters))
+                            + Arrays.hashCode(targets);
+                }
+            }
+
+            private final Map<StateKey, Integer> states = new HashMap<>();
+            private int[] firstEdge = new int[16];
+            private char[] edgeCharacters = new char[16];
+            private int[] edgeTargets = new int[16];
+            private long[] endOfWord = new long[1];
+            private int[] sizes = new int[16];
+            private int stateCount;
+            private int edgeCount;
+
+            /**
+             * Node being converted and its converted children.
+             */
+            private static class Frame {
+                final SuffixTree.Node node;
+                final char key;
+                int lastKey = -1;
+                final char[] characters;
+                final int[] targets;
+                int count;
+
+                Frame(SuffixTree.Node node, char key) {
+                    this.node = node;
+                    this.key = key;
+                    this.characters = new char[node.childCount()];
+                    this.targets = new int[node.childCount()];
+                }
+
+                void addChild(char c, int target) {
+                    characters[count] = c;
+                    targets[count] = target;
+                    count++;
+                }
+            }
+
+            FrozenSuffixTree build(SuffixTree.Node root) {
+                int rootState;
+                if (root == null) {
+                    rootState = state(false, new char[0], new int[0]);
+                } else {
+                    Deque<Frame> frames = new ArrayDeque<>();
+                    frames.push(new Frame(root, (char) 0));
+                    rootState = -1;
+                    while (!frames.isEmpty()) {
+                        Frame frame = frames.peek();
+                        int key = frame.node.nextKey(frame.lastKey);
+                        if (key >= 0) {
+                            frame.lastKey = key;
+                            frames.push(new Frame(frame.node.child((char) key), (char) key));
+                            continue;
+                        }
+                        frames.pop();
+                        int state = state(frame.node.endOfWord, frame.characters, frame.targets);
+                        // Labels of path compressed trees become chains of states.
+                        char[] label = frame.node.label;
+                        for (int i = label.length - 1; i >= 0; i--) {
+                            state = state(false, new char[]{label[i]}, new int[]{state});
+                        }
+                        if (frames.isEmpty()) {
+                            rootState = state;
+                        } else {
+                            frames.peek().addChild(frame.key, state);
+                        }
+                    }
+                }
+                firstEdge[stateCount] = edgeCount;
+                return new FrozenSuffixTree(
+                        IntBuffer.wrap(Arrays.copyOf(firstEdge, stateCount + 1)),
+                        CharBuffer.wrap(Arrays.copyOf(edgeCharacters, edgeCount)),
+                        IntBuffer.wrap(Arrays.copyOf(edgeTargets, edgeCount)),
+                        LongBuffer.wrap(Arrays.copyOf(endOfWord, (stateCount + 63) >>> 6)),
+                        IntBuffer.wrap(Arrays.copyOf(sizes, stateCount)),
+                        rootState);
+            }
+
+            /**
+             * Finds an existing equivalent state or creates a new one.
+             *
+             * @param isEndOfWord If a word ends in the state.
+             * @param characters  Sorted characters of edges.
+             * @param targets     States where edges lead to.
+             * @return Index of the state.
+             */
+            private int state(boolean isEndOfWord, char[] characters, int[] targets) {
+                return states.computeIfAbsent(new StateKey(isEndOfWord, characters, targets), k -> {
+                    int state = stateCount++;
+                    if (stateCount >= firstEdge.length) {
+                        firstEdge = Arrays.copyOf(firstEdge, firstEdge.length * 2);
+                        sizes = Arrays.copyOf(sizes, sizes.length * 2);
+                    }
+                    if (edgeCount + characters.length > edgeCharacters.length) {
+                        int capacity = Math.max(edgeCharacters.length * 2, edgeCount + characters.length);
+                        edgeCharacters = Arrays.copyOf(edgeCharacters, capacity);
+                        edgeTargets = Arrays.copyOf(edgeTargets, capacity);
+                    }
+                    if ((state >>> 6) >= endOfWord.length) {
+                        endOfWord = Arrays.copyOf(endOfWord, endOfWord.length * 2);
+                    }
+                    firstEdge[state] = edgeCount;
+                    System.arraycopy(characters, 0, edgeCharacters, edgeCount, characters.length);
+                    System.arraycopy(targets, 0, edgeTargets, edgeCount, targets.length);
+                    edgeCount += characters.length;
+                    int size = isEndOfWord ? 1 : 0;
+                    for (int target : targets) {
+                        size += sizes[target];
+                    }
+                    sizes[state] = size;
+                    if (isEndOfWord) {
+                        endOfWord[state >>> 6] |= 1L << state;
+                    }
+                    return state;
+                });
+            }
+        }
+
+        private class FrozenIterator implements Iterator<String> {
+
+            private int[] states = new int[16];
+            /**
+             * Next edge to visit for each state in {@link #states}.
+             * -1 means the state itself has not been visited yet.
+             */
+            private int[] nextEdge = new int[16];
+            private int depth;
+            private final StringBuilder prefix = new StringBuilder();
+            private final int startDepth;
+            private String next;
+
+            /**
+             * Creates a new instance.
+             *
+             * @param start       State from which to iterate words or -1 if there are no words.
+             * @param startPrefix Characters on the way to the start state.
+             */
+            FrozenIterator(int start, String startPrefix) {
+                states[0] = start;
+                nextEdge[0] = -1;
+                prefix.append(startPrefix);
+                startDepth = startPrefix.length();
+                depth = start >= 0 ? 0 : -1;
+                advance();
+            }
+
+            /**
+             * Finds the next word visiting a state before its edges.
+             */
+            private void advance() {
+                next = null;
+                while (depth >= 0) {
+                    int state = states[depth];
+                    if (nextEdge[depth] < 0) {
+                        nextEdge[depth] = firstEdge.get(state);
+                        if (isEndOfWord(state)) {
+                            next = prefix.toString();
+                            return;
+                        }
+                    }
+                    if (nextEdge[depth] < firstEdge.get(state + 1)) {
+                        int edge = nextEdge[depth]++;
+                        prefix.append(edgeCharacters.get(edge));
+                        depth++;
+                        if (depth == states.length) {
+                            states = Arrays.copyOf(states, depth * 2);
+                            nextEdge = Arrays.copyOf(nextEdge, depth * 2);
+                        }
+                        states[depth] = edgeTargets.get(edge);
+                        nextEdge[depth] = -1;
+                    } else {
+                        depth--;
+                        if (depth >= 0) {
+                            prefix.setLength(startDepth + depth);
+                        }
+                    }
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public String next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                String word = next;
+                advance();
+                return word;
+            }
+        }
+
+    }
+
+    /**
+     * Thread safe set based on a suffix tree.
+     * <p>
+     * Nodes of this tree are immutable and every modification creates a new path from the root
+     * to the modified node while sharing the rest of the tree with the previous version.
+     * The new root is published with a compare-and-set so that:
+     * <ul>
+     *     <li>{@link #contains} never blocks and never retries;</li>
+     *     <li>{@link #add} and {@link #remove} never block and only retry if another modification
+     *     has been published in between;</li>
+     *     <li>{@link #snapshot} and {@link #iterator} take constant time and see the state of the set
+     *     at the moment they were called regardless of later modifications.</li>
+     * </ul>
+     * <p>
+     * {@link #add}, {@link #remove}, {@link #contains} complexity is proportional to string length.
+     * Modifications additionally copy arrays of children along the path.
+     * This suits workloads where reads prevail over modifications.
+     * <p>
+     * This implementation does not permit null elements.
+     * <p>
+     * Iterator provided by this implementation never throws {@link ConcurrentModificationException}.
+     * {@link Iterator#remove} removes the last returned element from the set but not from the iterator snapshot.
+     * <p>
+     * Task 124 for concurrent access.
+     */
+    static public class ConcurrentSuffixTree extends AbstractSet<String> implements Set<String> {
+
+        private final AtomicReference<Node> root;
+
+        /**
+         * Creates a new instance.
+         */
+        public ConcurrentSuffixTree() {
+            this(Node.EMPTY);
+        }
+
+        private ConcurrentSuffixTree(Node root) {
+            this.root = new AtomicReference<>(root);
+        }
+
+        /**
+         * Creates a copy of the current state of this set.
+         * <p>
+         * The copy is independent of this set: modifications of either set are not visible in the other one.
+         *
+         * @return New set with the same elements.
+         */
+        public ConcurrentSuffixTree snapshot() {
+            return new ConcurrentSuffixTree(root.get());
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            String s = (String) Objects.requireNonNull(o);
+            Node currentNode = root.get();
+            for (int i = 0; i < s.length(); i++) {
+                currentNode = currentNode.child(s.charAt(i));
+                if (currentNode == null) {
+                    return false;
+                }
+            }
+            return currentNode.endOfWord;
+        }
+
+        @Override
+        public boolean add(String s) {
+            Objects.requireNonNull(s);
+            return update(s, true);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            String s = (String) Objects.requireNonNull(o);
+            return update(s, false);
+        }
+
+        private boolean update(String s, boolean endOfWord) {
+            Node[] path = new Node[s.length() + 1];
+            while (true) {
+                Node oldRoot = root.get();
+                Node currentNode = oldRoot;
+                int depth = 0;
+                path[0] = currentNode;
+                while (depth < s.length() && currentNode != null) {
+                    currentNode = currentNode.child(s.charAt(depth));
+                    path[++depth] = currentNode;
+                }
+                if (depth < s.length() || currentNode == null) {
+                    // Forget nodes from previous attempts.
+                    Arrays.fill(path, depth + 1, path.length, null);
+                    if (!endOfWord) {
+                        // Word to remove is not found.
+                        return false;
+                    }
+                    currentNode = Node.EMPTY;
+                    depth = s.length();
+                }
+                if (currentNode.endOfWord == endOfWord) {
+                    return false;
+                }
+                // Copy the path bottom up.
+                Node newNode = currentNode.withEndOfWord(endOfWord);
+                for (int i = depth - 1; i >= 0; i--) {
+                    Node parent = path[i] == null ? Node.EMPTY : path[i];
+                    newNode = parent.withChild(s.charAt(i), newNode.isEmpty() ? null : newNode);
+                }
+                if (root.compareAndSet(oldRoot, newNode)) {
+                    return true;
+                }
+            }
+        }
+
+        @Override
+        public void clear() {
+            root.set(Node.EMPTY);
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Supplied iterator iterates over elements that were in this set when the iterator was created.
+         */
+        @Override
+        public Iterator<String> iterator() {
+            return new SnapshotIterator(root.get());
+        }
+
+        @Override
+        public int size() {
+            return root.get().size;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return root.get().size == 0;
+        }
+
+        /**
+         * Immutable node of the tree.
+         */
+        private static final class Node {
+            private static final char[] NO_KEYS = new char[0];
+            private static final Node[] NO_NODES = new Node[0];
+            static final Node EMPTY = new Node(NO_KEYS, NO_NODES, false, 0);
+
+            /**
+             * Sorted characters of children.
+             */
+            final char[] keys;
+            final Node[] children;
+            final boolean endOfWord;
+            /**
+             * Number of words in this subtree.
+             */
+            final int size;
+
+            Node(char[] keys, Node[] children, boolean endOfWord, int size) {
+                this.keys = keys;
+                this.children = children;
+                this.endOfWord = endOfWord;
+                this.size = size;
+            }
+
+            Node child(char c) {
+                int index = Arrays.binarySearch(keys, c);
+                return index >= 0 ? children[index] : null;
+            }
+
+            boolean isEmpty() {
+                return size == 0;
+            }
+
+            Node withEndOfWord(boolean newEndOfWord) {
+                return new Node(keys, children, newEndOfWord, size + (newEndOfWord ? 1 : -1));
+            }
+
+            /**
+             * Creates a copy of this node with a child added, replaced or removed.
+             *
+             * @param c     Character of the child.
+             * @param child New child or null to remove the child.
+             * @return New node.
+             */
+            Node withChild(char c, Node child) {
+                int index = Arrays.binarySearch(keys, c);
+                if (index >= 0) {
+                    int newSize = size - children[index].size;
+                    if (child != null) {
+                        Node[] newChildren = children.clone();
+                        newChildren[index] = child;
+                        return new Node(keys, newChildren, endOfWord, newSize + child.size);
+                    }
+                    if (keys.length == 1) {
+                        return new Node(NO_KEYS, NO_NODES, endOfWord, newSize);
+                    }
+                    char[] newKeys = new char[keys.length - 1];
+                    Node[] newChildren = new Node[keys.length - 1];
+                    System.arraycopy(keys, 0, newKeys, 0, index);
+                    System.arraycopy(keys, index + 1, newKeys, index, newKeys.length - index);
+                    System.arraycopy(children, 0, newChildren, 0, index);
+                    System.arraycopy(children, index + 1, newChildren, index, newChildren.length - index);
+                    return new Node(newKeys, newChildren, endOfWord, newSize);
+                }
+                if (child == null) {
+                    return this;
+                }
+                index = -index - 1;
+                char[] newKeys = new char[keys.length + 1];
+                Node[] newChildren = new Node[keys.length + 1];
+                System.arraycopy(keys, 0, newKeys, 0, index);
+                System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
+                System.arraycopy(children, 0, newChildren, 0, index);
+                System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+                newKeys[index] = c;
+                newChildren[index] = child;
+                return new Node(newKeys, newChildren, endOfWord, size + child.size);
+            }
+        }
+
+        private class SnapshotIterator implements Iterator<String> {
+
+            private Node[] nodes = new Node[16];
+            /**
+             * Index of the next child to visit for each node in {@link #nodes}.
+             * -1 means the node itself has not been visited yet.
+             */
+            private int[] nextChild = new int[16];
+            private int depth;
+            private final StringBuilder prefix = new StringBuilder();
+            private String next;
+            private String last;
+
+            SnapshotIterator(Node root) {
+                nodes[0] = root;
+                nextChild[0] = -1;
+                advance();
+            }
+
+            /**
+             * Finds the next word in lexicographical order.
+             */
+            private void advance() {
+                next = null;
+                while (depth >= 0) {
+                    Node node = nodes[depth];
+                    if (nextChild[depth] < 0) {
+                        nextChild[depth] = 0;
+                        if (node.endOfWord) {
+                            next = prefix.toString();
+                            return;
+                        }
+                    }
+                    if (nextChild[depth] < node.keys.length) {
+                        int index = nextChild[depth]++;
+                        prefix.append(node.keys[index]);
+                        depth++;
+                        if (depth == nodes.length) {
+                            nodes = Arrays.copyOf(nodes, depth * 2);
+                            nextChild = Arrays.copyOf(nextChild, depth * 2);
+                        }
+                        nodes[depth] = node.children[index];
+                        nextChild[depth] = -1;
+                    } else {
+                        nodes[depth] = null;
+                        depth--;
+                        if (depth >= 0) {
+                            prefix.setLength(depth);
+                        }
+                    }
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public String next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                last = next;
+                advance();
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException("next has not been called or remove has already been called");
+                }
+                ConcurrentSuffixTree.this.remove(last);
+                last = null;
+            }
+        }
+
+    }
+
+    /**
+     * Substring index over a list of texts based on a generalized suffix tree.
+     * <p>
+     * Unlike {@link SuffixTree} that keeps whole words, this tree keeps every suffix of every text,
+     * so any substring of the texts is a path from the root.
+     * The tree is built with Ukkonen's algorithm in time proportional to the total length of the texts
+     * over the concatenation of texts where each text is followed by a unique terminator.
+     * Edges are kept as start and end positions in the concatenation and
+     * children are found in a single hash table keyed by node and character.
+     * <p>
+     * {@link #contains} and {@link #countOccurrences} complexity is proportional to the substring length.
+     * {@link #textsContaining} additionally visits every occurrence.
+     * {@link #longestRepeatedSubstring} is found while building the tree and takes constant time.
+     * <p>
+     * This implementation is immutable and thread safe.
+     * <p>
+     * Task 124 for substrings.
+     */
+    static public class GeneralizedSuffixTree {
+
+        private static final int ROOT = 0;
+
+        private final List<String> texts;
+        /**
+         * Position of each text in the concatenation.
+         */
+        private final int[] offsets;
+        /**
+         * Characters of texts followed by negative terminators.
+         */
+        private final int[] symbols;
+        /**
+         * Position of the first character on the edge to each node.
+         */
+        private final int[] starts;
+        /**
+         * Position after the last character on the edge to each node.
+         */
+        private final int[] ends;
+        /**
+         * Number of suffixes that start with the path to each node.
+         */
+        private final int[] leafCounts;
+        /**
+         * Position of the suffix for a leaf or -1 for an inner node.
+         */
+        private final int[] suffixStarts;
+        private final int[] firstChildren;
+        private final int[] nextSiblings;
+        private int nodeCount;
+        private final EdgeTable edges;
+        private final String longestRepeatedSubstring;
+
+        /**
+         * Creates a new instance.
+         *
+         * @param texts Texts to index. Indexes of texts in the list are used to report matches.
+         * @throws NullPointerException If texts or any of them is null.
+         */
+        public GeneralizedSuffixTree(List<String> texts) {
+            this.texts = List.copyOf(texts);
+            offsets = new int[this.texts.size()];
+            int length = 0;
+            for (int i = 0; i < this.texts.size(); i++) {
+                offsets[i] = length;
+                length = Math.addExact(length, this.texts.get(i).length() + 1);
+            }
+            symbols = new int[length];
+            for (int i = 0; i < this.texts.size(); i++) {
+                String text = this.texts.get(i);
+                for (int j = 0; j < text.length(); j++) {
+                    symbols[offsets[i] + j] = text.charAt(j);
+                }
+                symbols[offsets[i] + text.length()] = -1 - i;
+            }
+            int capacity = 2 * length + 1;
+            starts = new int[capacity];
+            ends = new int[capacity];
+            leafCounts = new int[capacity];
+            suffixStarts = new int[capacity];
+            firstChildren = new int[capacity];
+            nextSiblings = new int[capacity];
+            edges = new EdgeTable(capacity);
+            newNode(0, 0);
+            build(new int[capacity]);
+            longestRepeatedSubstring = index();
+        }
+
+        /**
+         * Checks whether any text contains a given substring.
+         *
+         * @param substring Substring to find.
+         * @return true if at least one text contains the substring.
+         * @throws NullPointerException If the substring is null.
+         */
+        public boolean contains(CharSequence substring) {
+            return !texts.isEmpty() && find(substring) >= 0;
+        }
+
+        /**
+         * Counts occurrences of a substring in all texts.
+         * <p>
+         * Overlapping occurrences are counted separately as in {@link Chapter1#countSubstring}.
+         *
+         * @param substring Substring to count.
+         * @return Number of occurrences or 0 if the substring is empty.
+         * @throws NullPointerException If the substring is null.
+         */
+        public int countOccurrences(CharSequence substring) {
+            if (substring.length() == 0) {
+                return 0;
+            }
+            int node = find(substring);
+            return node < 0 ? 0 : leafCounts[node];
+        }
+
+        /**
+         * Finds texts that contain a given substring.
+         *
+         * @param substring Substring to find.
+         * @return Ascending indexes of texts that contain the substring.
+         * @throws NullPointerException If the substring is null.
+         */
+        public int[] textsContaining(CharSequence substring) {
+            if (substring.length() == 0) {
+                return texts.isEmpty() ? new int[0] : IntStream.range(0, texts.size()).toArray();
+            }
+            int node = find(substring);
+            if (node < 0) {
+                return new int[0];
+            }
+            BitSet found = new BitSet(texts.size());
+            int[] stack = new int[16];
+            int top = 0;
+            stack[0] = node;
+            while (top >= 0) {
+                int current = stack[top--];
+                if (suffixStarts[current] >= 0) {
+                    found.set(textAt(suffixStarts[current]));
+                    continue;
+                }
+                for (int child = firstChildren[current]; child >= 0; child = nextSiblings[child]) {
+                    if (++top == stack.length) {
+                        stack = Arrays.copyOf(stack, top * 2);
+                    }
+                    stack[top] = child;
+                }
+            }
+            return found.stream().toArray();
+        }
+
+        /**
+         * Finds the longest substring that occurs at least twice either in one text or in different texts.
+         *
+         * @return Longest repeated substring or empty string if no character is repeated.
+         */
+        public String longestRepeatedSubstring() {
+            return longestRepeatedSubstring;
+        }
+
+        /**
+         * Provides indexed texts.
+         *
+         * @return Immutable list of texts.
+         */
+        public List<String> texts() {
+            return texts;
+        }
+
+        /**
+         * Follows a substring from the root.
+         *
+         * @param substring Substring to follow.
+         * @return The highest node whose path starts with the substring or -1 if there is no such path.
+         */
+        private int find(CharSequence substring) {
+            int node = ROOT;
+            int i = 0;
+            while (i < substring.length()) {
+                node = edges.get(node, substring.charAt(i));
+                if (node < 0) {
+                    return -1;
+                }
+                int end = Math.min(ends[node], starts[node] + substring.length() - i);
+                for (int position = starts[node]; position < end; position++, i++) {
+                    if (symbols[position] != substring.charAt(i)) {
+                        return -1;
+                    }
+                }
+            }
+            return node;
+        }
+
+        private int textAt(int position) {
+            int index = Arrays.binarySearch(offsets, position);
+            return index >= 0 ? index : -index - 2;
+        }
+
+        private int newNode(int start, int end) {
+            starts[nodeCount] = start;
+            ends[nodeCount] = end;
+            return nodeCount++;
+        }
+
+        /**
+         * Adds suffixes of the concatenation one character at a time.
+         * <p>
+         * Edges of leaves end at the end of the concatenation from the start,
+         * so they grow with every character without being updated.
+         *
+         * @param suffixLinks Array for suffix links of nodes. Unset links lead to the root.
+         */
+        private void build(int[] suffixLinks) {
+            int activeNode = ROOT;
+            int activeEdge = 0;
+            int activeLength = 0;
+            int remainder = 0;
+            for (int i = 0; i < symbols.length; i++) {
+                remainder++;
+                int lastCreated = -1;
+                while (remainder > 0) {
+                    if (activeLength == 0) {
+                        activeEdge = i;
+                    }
+                    int next = edges.get(activeNode, symbols[activeEdge]);
+                    if (next < 0) {
+                        edges.put(activeNode, symbols[i], newNode(i, symbols.length));
+                        if (lastCreated >= 0) {
+                            suffixLinks[lastCreated] = activeNode;
+                            lastCreated = -1;
+                        }
+                    } else {
+                        int edgeLength = Math.min(ends[next], i + 1) - starts[next];
+                        if (activeLength >= edgeLength) {
+                            // Walk down to the next node and try again from there.
+                            activeEdge += edgeLength;
+                            activeLength -= edgeLength;
+                            activeNode = next;
+                            continue;
+                        }
+                        if (symbols[starts[next] + activeLength] == symbols[i]) {
+                            // The suffix is already there so this and shorter suffixes wait for next characters.
+                            if (lastCreated >= 0 && activeNode != ROOT) {
+                                suffixLinks[lastCreated] = activeNode;
+                            }
+                            activeLength++;
+                            break;
+                        }
+                        int split = newNode(starts[next], starts[next] + activeLength);
+                        edges.put(activeNode, symbols[activeEdge], split);
+                        edges.put(split, symbols[i], newNode(i, symbols.length));
+                        starts[next] += activeLength;
+                        edges.put(split, symbols[starts[next]], next);
+                        if (lastCreated >= 0) {
+                            suffixLinks[lastCreated] = split;
+                        }
+                        lastCreated = split;
+                    }
+                    remainder--;
+                    if (activeNode == ROOT && activeLength > 0) {
+                        activeLength--;
+                        activeEdge = i - remainder + 1;
+                    } else if (activeNode != ROOT) {
+                        activeNode = suffixLinks[activeNode];
+                    }
+                }
+            }
+        }
+
+        /**
+         * Links children to parents and counts leaves.
+         *
+         * @return Longest repeated substring.
+         */
+        private String index() {
+            Arrays.fill(firstChildren, -1);
+            for (int slot = 0; slot < edges.keys.length; slot++) {
+                if (edges.values[slot] != 0) {
+                    int parent = (int) (edges.keys[slot] >>> 32);
+                    int child = edges.values[slot] - 1;
+                    nextSiblings[child] = firstChildren[parent];
+                    firstChildren[parent] = child;
+                }
+            }
+            // Depth first with string depths so that leaves know their suffixes
+            // and parents are summed after their children.
+            int[] depths = new int[nodeCount];
+            int[] order = new int[nodeCount];
+            int visited = 0;
+            int[] stack = new int[16];
+            int top = 0;
+            stack[0] = ROOT;
+            while (top >= 0) {
+                int node = stack[top--];
+                order[visited++] = node;
+                for (int child = firstChildren[node]; child >= 0; child = nextSiblings[child]) {
+                    depths[child] = depths[node] + ends[child] - starts[child];
+                    if (++top == stack.length) {
+                        stack = Arrays.copyOf(stack, top * 2);
+                    }
+                    stack[top] = child;
+                }
+            }
+            int deepest = ROOT;
+            for (int i = visited - 1; i >= 0; i--) {
+                int node = order[i];
+                if (firstChildren[node] < 0) {
+                    leafCounts[node] = 1;
+                    suffixStarts[node] = symbols.length - depths[node];
+                    continue;
+                }
+                suffixStarts[node] = -1;
+                for (int child = firstChildren[node]; child >= 0; child = nextSiblings[child]) {
+                    leafCounts[node] += leafCounts[child];
+                }
+                if (depths[node] > depths[deepest]) {
+                    deepest = node;
+                }
+            }
+            StringBuilder repeated = new StringBuilder(depths[deepest]);
+            int end = ends[deepest];
+            for (int position = end - depths[deepest]; position < end; position++) {
+                repeated.append((char) symbols[position]);
+            }
+            return repeated.toString();
+        }
+
+        /**
+         * Open addressing hash table from a node and a character to a child.
+         */
+        private static final class EdgeTable {
+
+            private long[] keys;
+            /**
+             * Child plus one so that zero marks a free slot.
+             */
+            private int[] values;
+            private int size;
+
+            EdgeTable(int expectedSize) {
+                int capacity = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) * 2;
+                keys = new long[capacity];
+                values = new int[capacity];
+            }
+
+            private static long key(int node, int symbol) {
+                return (long) node << 32 | (symbol & 0xFFFFFFFFL);
+            }
+
+            private int slot(long key) {
+                long hash = key * 0x9E3779B97F4A7C15L;
+                return (int) (hash >>> 32 ^ hash) & (keys.length - 1);
+            }
+
+            int get(int node, int symbol) {
+                long key = key(node, symbol);
+                for (int slot = slot(key); values[slot] != 0; slot = (slot + 1) & (keys.length - 1)) {
+                    if (keys[slot] == key) {
+                        return values[slot] - 1;
+                    }
+                }
+                return -1;
+            }
+
+            void put(int node, int symbol, int child) {
+                long key = key(node, symbol);
+                int slot = slot(key);
+                while (values[slot] != 0) {
+                    if (keys[slot] == key) {
+                        values[slot] = child + 1;
+                        return;
+                    }
+                    slot = (slot + 1) & (keys.length - 1);
+                }
+                keys[slot] = key;
+                values[slot] = child + 1;
+                if (++size * 2 > keys.length) {
+                    resize();
+                }
+            }
+
+            private void resize() {
+                long[] oldKeys = keys;
+                int[] oldValues = values;
+                keys = new long[oldKeys.length * 2];
+                values = new int[oldValues.length * 2];
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldValues[i] != 0) {
+                        int slot = slot(oldKeys[i]);
+                        while (values[slot] != 0) {
+                            slot = (slot + 1) & (keys.length - 1);
+                        }
+                        keys[slot] = oldKeys[i];
+                        values[slot] = oldValues[i];
+                    }
+                }
+            }
+
+        }
+    }
+
+    /**
+     * Multi-pattern matcher based on the Aho-Corasick automaton.
+     * <p>
+     * States of the automaton are all prefixes of patterns. A state has edges to longer prefixes
+     * and a failure link to the state of its longest proper suffix that is also a prefix of some pattern.
+     * Text is read once: each character follows an edge or failure links until an edge is found,
+     * and every pattern that ends at the character is reached via output links.
+     * So scanning takes time proportional to the text length plus the number of matches
+     * regardless of the number of patterns.
+     * <p>
+     * As in {@link FrozenSuffixTree}, states are kept in flat primitive arrays
+     * with edges of each state sorted by character.
+     * <p>
+     * Patterns are numbered in lexicographical order. Empty pattern never matches.
+     * <p>
+     * This implementation is immutable and thread safe.
+     * <p>
+     * Task 17 for many substrings.
+     *
+     * @see SuffixTree#compileMatcher()
+     */
+    static public class KeywordMatcher {
+
+        private static final int ROOT = 0;
+        private static final int CHUNK_SIZE = 8192;
+
+        private final List<String> patterns;
+        /**
+         * Index of the first edge of each state. Edges of the last state end at {@code firstEdge[stateCount]}.
+         */
+        private final int[] firstEdge;
+        private final char[] edgeCharacters;
+        private final int[] edgeTargets;
+        private final int[] failures;
+        /**
+         * The nearest state reachable by failure links where a pattern ends or -1.
+         */
+        private final int[] outputs;
+        /**
+         * Pattern that ends at each state or -1.
+         */
+        private final int[] patternAt;
+
+        /**
+         * Receives matches found by {@link KeywordMatcher}.
+         */
+        @FunctionalInterface
+        public interface MatchListener {
+
+            /**
+             * Receives a match.
+             *
+             * @param pattern Index of the matched pattern in {@link #patterns()}.
+             * @param start   Position of the first matched character in the text.
+             */
+            void match(int pattern, long start);
+        }
+
+        /**
+         * Creates an automaton that finds words of a suffix tree.
+         *
+         * @param tree Patterns to find.
+         * @return New matcher.
+         */
+        public static KeywordMatcher of(SuffixTree tree) {
+            return new Builder(tree).build();
+        }
+
+        private KeywordMatcher(List<String> patterns, int[] firstEdge, char[] edgeCharacters, int[] edgeTargets,
+                               int[] failures, int[] outputs, int[] patternAt) {
+            this.patterns = patterns;
+            this.firstEdge = firstEdge;
+            this.edgeCharacters = edgeCharacters;
+            this.edgeTargets = edgeTargets;
+            this.failures = failures;
+            this.outputs = outputs;
+            this.patternAt = patternAt;
+        }
+
+        /**
+         * Provides patterns that this matcher finds.
+         *
+         * @return Immutable list of patterns in lexicographical order.
+         */
+        public List<String> patterns() {
+            return patterns;
+        }
+
+        /**
+         * Finds all occurrences of all patterns in a text.
+         * <p>
+         * Matches are reported in order of their end positions and longer patterns go first
+         * if several patterns end at the same position. Overlapping matches are all reported.
+         *
+         * @param text     Text to scan.
+         * @param listener Receiver of matches.
+         * @throws NullPointerException If text or listener is null.
+         */
+        public void scan(CharSequence text, MatchListener listener) {
+            Objects.requireNonNull(listener);
+            int state = ROOT;
+            for (int i = 0; i < text.length(); i++) {
+                state = step(state, text.charAt(i));
+                report(state, i + 1, listener);
+            }
+        }
+
+        /**
+         * Finds all occurrences of all patterns in remaining characters of a buffer.
+         * <p>
+         * This is the same as {@link #scan(CharSequence, MatchListener)}
+         * but reads an array backed buffer directly.
+         * Positions of matches are relative to the buffer position that is not changed.
+         *
+         * @param text     Characters to scan.
+         * @param listener Receiver of matches.
+         * @throws NullPointerException If text or listener is null.
+         */
+        public void scan(CharBuffer text, MatchListener listener) {
+            Objects.requireNonNull(listener);
+            int state = ROOT;
+            int length = text.remaining();
+            if (text.hasArray()) {
+                char[] array = text.array();
+                int offset = text.arrayOffset() + text.position();
+                for (int i = 0; i < length; i++) {
+                    state = step(state, array[offset + i]);
+                    report(state, i + 1, listener);
+                }
+            } else {
+                int position = text.position();
+                for (int i = 0; i < length; i++) {
+                    state = step(state, text.get(position + i));
+                    report(state, i + 1, listener);
+                }
+            }
+        }
+
+        /**
+         * Finds all occurrences of all patterns in characters of a reader.
+         * <p>
+         * The reader is read till the end in chunks so the text does not have to fit into memory.
+         *
+         * @param text     Characters to scan.
+         * @param listener Receiver of matches.
+         * @throws NullPointerException If text or listener is null.
+         * @throws IOException          If reading fails.
+         * @see #scan(CharSequence, MatchListener)
+         */
+        public void scan(Reader text, MatchListener listener) throws IOException {
+            Objects.requireNonNull(listener);
+            char[] chunk = new char[CHUNK_SIZE];
+            int state = ROOT;
+            long position = 0;
+            int read;
+            while ((read = text.read(chunk)) >= 0) {
+                for (int i = 0; i < read; i++) {
+                    state = step(state, chunk[i]);
+                    report(state, ++position, listener);
+                }
+            }
+        }
+
+        /**
+         * Counts occurrences of every pattern in a text.
+         * <p>
+         * Overlapping occurrences are counted separately
+         * so counts are the same as of {@link Chapter1#countSubstring} for every pattern.
+         *
+         * @param text Text to scan.
+         * @return Number of occurrences of each pattern indexed as in {@link #patterns()}.
+         * @throws NullPointerException If text is null.
+         */
+        public int[] count(CharSequence text) {
+            int[] counts = new int[patterns.size()];
+            scan(text, (pattern, start) -> counts[pattern]++);
+            return counts;
+        }
+
+        /**
+         * Counts occurrences of every pattern in characters of a reader.
+         *
+         * @param text Characters to scan.
+         * @return Number of occurrences of each pattern indexed as in {@link #patterns()}.
+         * @throws NullPointerException If text is null.
+         * @throws IOException          If reading fails.
+         * @see #count(CharSequence)
+         */
+        public int[] count(Reader text) throws IOException {
+            int[] counts = new int[patterns.size()];
+            scan(text, (pattern, start) -> counts[pattern]++);
+            return counts;
+        }
+
+        /**
+         * Finds the state after a character.
+         *
+         * @param state     Current state.
+         * @param character Next character of the text.
+         * @return The longest prefix of a pattern that is a suffix of the text read so far.
+         */
+        private int step(int state, char character) {
+            while (true) {
+                int next = transition(state, character);
+                if (next >= 0) {
+                    return next;
+                }
+                if (state == ROOT) {
+                    return ROOT;
+                }
+                state = failures[state];
+            }
+        }
+
+        private int transition(int state, char character) {
+            int low = firstEdge[state];
+            int high = firstEdge[state + 1] - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                char middleCharacter = edgeCharacters[middle];
+                if (middleCharacter < character) {
+                    low = middle + 1;
+                } else if (middleCharacter > character) {
+                    high = middle - 1;
+                } else {
+                    return edgeTargets[middle];
+                }
+            }
+            return -1;
+        }
+
+        private void report(int state, long end, MatchListener listener) {
+            int output = patternAt[state] >= 0 ? state : outputs[state];
+            while (output >= 0) {
+                int pattern = patternAt[output];
+                listener.match(pattern, end - patterns.get(pattern).length());
+                output = outputs[output];
+            }
+        }
+
+        /**
+         * Expands a suffix tree into states one character each and links them.
+         */
+        private static class Builder {
+
+            private final SuffixTree tree;
+            private int stateCount;
+            /**
+             * Node and position in its label of each state while the tree is being expanded.
+             */
+            private SuffixTree.Node[] nodes = new SuffixTree.Node[16];
+            private int[] offsets = new int[16];
+            private int[] parents = new int[16];
+            private char[] incoming = new char[16];
+            private int[] firstEdge = new int[17];
+            private int edgeCount;
+            private char[] edgeCharacters = new char[16];
+            private int[] edgeTargets = new int[16];
+
+            Builder(SuffixTree tree) {
+                this.tree = tree;
+            }
+
+            KeywordMatcher build() {
+                if (tree.root != null) {
+                    addState(tree.root, tree.root.label.length, -1, '\0');
+                } else {
+                    addState(null, 0, -1, '\0');
+                }
+                // States are numbered breadth first so parents and shorter suffixes go before.
+                for (int state = 0; state < stateCount; state++) {
+                    firstEdge[state] = edgeCount;
+                    SuffixTree.Node node = nodes[state];
+                    if (node == null) {
+                        continue;
+                    }
+                    int offset = offsets[state];
+                    if (offset < node.label.length) {
+                        addEdge(node.label[offset], addState(node, offset + 1, state, node.label[offset]));
+                    } else {
+                        for (int key = node.nextKey(-1); key >= 0; key = node.nextKey(key)) {
+                            addEdge((char) key, addState(node.child((char) key), 0, state, (char) key));
+                        }
+                    }
+                }
+                firstEdge[stateCount] = edgeCount;
+                int[] failures = new int[stateCount];
+                int[] outputs = new int[stateCount];
+                int[] patternAt = new int[stateCount];
+                List<Integer> ends = new ArrayList<>();
+                for (int state = 0; state < stateCount; state++) {
+                    SuffixTree.Node node = nodes[state];
+                    boolean end = state != ROOT && node.endOfWord && offsets[state] == node.label.length;
+                    patternAt[state] = end ? 0 : -1;
+                    if (end) {
+                        ends.add(state);
+                    }
+                }
+                String[] words = new String[ends.size()];
+                for (int i = 0; i < words.length; i++) {
+                    words[i] = word(ends.get(i));
+                }
+                Integer[] order = new Integer[words.length];
+                for (int i = 0; i < order.length; i++) {
+                    order[i] = i;
+                }
+                Arrays.sort(order, Comparator.comparing(i -> words[i]));
+                String[] patterns = new String[words.length];
+                for (int i = 0; i < order.length; i++) {
+                    patterns[i] = words[order[i]];
+                    patternAt[ends.get(order[i])] = i;
+                }
+                KeywordMatcher matcher = new KeywordMatcher(List.of(patterns),
+                        Arrays.copyOf(firstEdge, stateCount + 1), Arrays.copyOf(edgeCharacters, edgeCount),
+                        Arrays.copyOf(edgeTargets, edgeCount), failures, outputs, patternAt);
+                // Failure of a state is found by the automaton itself from the failure of its parent.
+                outputs[ROOT] = -1;
+                for (int state = 1; state < stateCount; state++) {
+                    int parent = parents[state];
+                    failures[state] = parent == ROOT ? ROOT : matcher.step(failures[parent], incoming[state]);
+                    int failure = failures[state];
+                    outputs[state] = patternAt[failure] >= 0 ? failure : outputs[failure];
+                }
+                return matcher;
+            }
+
+            private String word(int state) {
+                StringBuilder word = new StringBuilder();
+                for (; state != ROOT; state = parents[state]) {
+                    word.append(incoming[state]);
+                }
+                return word.reverse().toString();
+            }
+
+            private int addState(SuffixTree.Node node, int offset, int parent, char character) {
+                if (stateCount == nodes.length) {
+                    nodes = Arrays.copyOf(nodes, stateCount * 2);
+                    offsets = Arrays.copyOf(offsets, stateCount * 2);
+                    parents = Arrays.copyOf(parents, stateCount * 2);
+                    incoming = Arrays.copyOf(incoming, stateCount * 2);
+                    firstEdge = Arrays.copyOf(firstEdge, stateCount * 2 + 1);
+                }
+                nodes[stateCount] = node;
+                offsets[stateCount] = offset;
+                parents[stateCount] = parent;
+                incoming[stateCount] = character;
+                return stateCount++;
+            }
+
+            private void addEdge(char character, int target) {
+                if (edgeCount == edgeCharacters.length) {
+                    edgeCharacters = Arrays.copyOf(edgeCharacters, edgeCount * 2);
+                    edgeTargets = Arrays.copyOf(edgeTargets, edgeCount * 2);
+                }
+                edgeCharacters[edgeCount] = character;
+                edgeTargets[edgeCount] = target;
+                edgeCount++;
+            }
+        }
     }
 
 }
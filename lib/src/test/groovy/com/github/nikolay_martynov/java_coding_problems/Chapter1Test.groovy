@@ -2,6 +2,14 @@ package com.github.nikolay_martynov.java_coding_problems
 
 import spock.lang.Specification
 
+import java.nio.CharBuffer
+import java.nio.charset.CharacterCodingException
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.function.Consumer
+import java.util.stream.Collectors
+
 class Chapter1Test extends Specification {
     def "CountSymbols"() {
         expect:
@@ -30,6 +38,38 @@ class Chapter1Test extends Specification {
         'abca' | Optional.of((char) 'b')
     }
 
+    def "NonRepeatingSymbolTracker follows the stream"() {
+        given:
+        def tracker = new Chapter1.NonRepeatingSymbolTracker()
+        expect:
+        s.collect { tracker.accept(it as char).first() } == f.collect { it == '-' ? -1 : (int) (it as char) }
+        where:
+        s                   | f
+        'aabcbc'            | 'a-bbc-'
+        'ab\u0430ba\u0430c' | 'aaaa\u0430-c'
+    }
+
+    def "NonRepeatingSymbolTracker looks only at the window"() {
+        given:
+        def tracker = new Chapter1.NonRepeatingSymbolTracker(w)
+        expect:
+        s.collect { tracker.accept(it as char).first() } == f.collect { it == '-' ? -1 : (int) (it as char) }
+        where:
+        w | s                      | f
+        3 | 'abcd'                 | 'aaab'
+        3 | 'aab.a.'               | 'a-baba'
+        3 | 'abab..ab'             | 'aabaaba.'
+        6 | 'aadbcda'              | 'a-dddbb'
+        2 | '\u0430\u0430b\u0430' | '\u0430-\u0430b'
+    }
+
+    def "NonRepeatingSymbolTracker rejects non-positive window"() {
+        when:
+        new Chapter1.NonRepeatingSymbolTracker(0)
+        then:
+        thrown(IllegalArgumentException)
+    }
+
     def "reverseLettersInWords"() {
         expect:
         Chapter1.reverseLettersInWords(s) == r
@@ -99,6 +139,22 @@ class Chapter1Test extends Specification {
         ' a  b   c    ' | 'abc'
     }
 
+    def "Character class scans of long strings match short ones"() {
+        given:
+        def s = p * 100
+        def counts = Chapter1.countVowelsAndConsonants(p)
+        expect:
+        Chapter1.isDigitsOnly(s) == Chapter1.isDigitsOnly(p)
+        Chapter1.deleteWhitespace(s) == Chapter1.deleteWhitespace(p) * 100
+        with(Chapter1.countVowelsAndConsonants(s)) {
+            it.vowels() == counts.vowels() * 100
+            it.consonants() == counts.consonants() * 100
+        }
+        where:
+        p << ['0123456789', '01234\u0663789', 'Modern car\t', 'abc\u212Adef\u00e9', 'abc\u00a0de\u2003\u001c',
+              'a' * 200 + ' b']
+    }
+
     def "GeneratePermutations"() {
         expect:
         Chapter1.generatePermutations(s).collect() ==~ p
@@ -136,6 +192,76 @@ class Chapter1Test extends Specification {
         ]
     }
 
+    def "String transforms write into buffers"() {
+        given:
+        def source = '[' + s + ']'
+        char[] array = new char[s.length() + 1]
+        def builder = new StringBuilder()
+        def buffer = CharBuffer.allocate(s.length())
+        when:
+        int written = Chapter1."$method"(source, 1, source.length() - 1, array, 1)
+        Chapter1."$method"(source, 1, source.length() - 1, builder)
+        Chapter1."$method"(CharBuffer.wrap(source), 1, source.length() - 1, buffer)
+        then:
+        new String(array, 1, written) == r
+        builder.toString() == r
+        buffer.flip().toString() == r
+        where:
+        method                  | s              | r
+        'reverseLettersInWords' | 'ab+_cd-#ef'   | 'ba+_dc-#fe'
+        'reverseWords'          | ' ab  cd ef  ' | ' ef  cd ab  '
+        'deleteWhitespace'      | ' a  b\tc  '   | 'abc'
+    }
+
+    def "String transforms work in place"() {
+        given:
+        char[] chars = ' ab c\u00e9 '.toCharArray()
+        byte[] latin1 = ' ab c\u00e9 '.getBytes(StandardCharsets.ISO_8859_1)
+        byte[] reversed = new byte[latin1.length]
+        when:
+        Chapter1.reverseLettersInWords(chars, 0, chars.length)
+        Chapter1.reverseWords(latin1, 0, latin1.length, reversed, 0)
+        int left = Chapter1.deleteWhitespace(latin1, 0, latin1.length)
+        then:
+        new String(chars) == ' ba \u00e9c '
+        new String(reversed, StandardCharsets.ISO_8859_1) == ' c\u00e9 ab '
+        new String(latin1, 0, left, StandardCharsets.ISO_8859_1) == 'abc\u00e9'
+    }
+
+    def "Permutations follow generatePermutations"(String s) {
+        given:
+        def all = Chapter1.generatePermutations(s).collect()
+        def permutations = Chapter1.Permutations.of(s)
+        def reused = []
+        permutations.forEach({ char[] p -> reused << new String(p) } as Consumer)
+        expect:
+        permutations.size() == all.size()
+        permutations.stream().parallel().collect(Collectors.toList()) == all
+        reused == all
+        (0..<all.size()).every { permutations.unrank(it) == all[it] && permutations.rank(all[it]) == all.indexOf(all[it]) }
+        where:
+        s << ['', 'a', 'abcd', 'abca']
+    }
+
+    def "Permutations produce distinct ones in order"() {
+        given:
+        def permutations = Chapter1.Permutations.distinct('abab')
+        def range = []
+        permutations.forEach(1, 4, { char[] p -> range << new String(p) } as Consumer)
+        expect:
+        permutations.stream().collect(Collectors.toList()) == ['aabb', 'abab', 'abba', 'baab', 'baba', 'bbaa']
+        range == ['abab', 'abba', 'baab']
+        permutations.rank('baba') == 4
+        Chapter1.Permutations.distinct('a' * 30 + 'b' * 30).size() == 118264581564861424L
+    }
+
+    def "Permutations reject too many characters"() {
+        when:
+        Chapter1.Permutations.of('abcdefghijklmnopqrstu')
+        then:
+        thrown(IllegalArgumentException)
+    }
+
     def "FindMostOccurringCharacter"() {
         expect:
         Chapter1.findMostOccurringCharacter(s) == c
@@ -175,4 +301,206 @@ class Chapter1Test extends Specification {
         'aaaaaaab'           | false
         '111112345111112345' | true
     }
+
+    def "StringPeriodicity"() {
+        given:
+        def periodicity = Chapter1.StringPeriodicity.of(s)
+        expect:
+        periodicity.period() == period
+        periodicity.repetitions() == repetitions
+        periodicity.isPeriodic() == periodic
+        periodicity.borders() as List == borders
+        where:
+        s          | period | repetitions | periodic | borders
+        ''         | 0      | 0           | false    | []
+        'a'        | 1      | 1           | false    | []
+        'abc'      | 3      | 1           | false    | []
+        'abcab'    | 3      | 1           | false    | [2]
+        'abcabca'  | 3      | 1           | true     | [4, 1]
+        'abab'     | 2      | 2           | true     | [2]
+        'aaaa'     | 1      | 4           | true     | [3, 2, 1]
+        'abaababa' | 5      | 1           | false    | [3, 1]
+    }
+
+    def "StringPeriodicity analyzes ranges in place"() {
+        given:
+        def s = 'xabcabcabcy'
+        expect:
+        Chapter1.StringPeriodicity.of(s, 1, 10) == Chapter1.StringPeriodicity.of('abcabcabc')
+        Chapter1.StringPeriodicity.of(s.toCharArray(), 1, 10) == Chapter1.StringPeriodicity.of('abcabcabc')
+        Chapter1.StringPeriodicity.of(s, 1, 10).rootLength() == 3
+    }
+
+    def "CharHistogram counts characters"(String s) {
+        given:
+        Map<Character, Integer> expected = [:]
+        s.each { expected.merge(it as char, 1, Integer::sum) }
+        when:
+        Chapter1.CharHistogram histogram = Chapter1.CharHistogram.of(s)
+        then:
+        histogram.toMap() == expected
+        histogram.total() == s.length()
+        histogram.distinct() == expected.size()
+        expected.every { c, count -> histogram.count(c) == count }
+        histogram.count('z' as char) == 0
+        Chapter1.CharHistogram.of(new StringBuilder(s)) == histogram
+        where:
+        s << ['', 'abcabcdefabc', 'a' * 5000, ('\u0430\u0431\u0432\u20aca' * 1000) + 'b', (0..<3000).collect { (char) (it * 20 + 1) }.join()]
+    }
+
+    def "CharHistogram finds most frequent characters"() {
+        given:
+        Chapter1.CharHistogram histogram = Chapter1.CharHistogram.of(s)
+        expect:
+        histogram.mostFrequent() == (mostFrequent == null ? -1 : mostFrequent as char)
+        histogram.topK(3).toList() == top.collect { it as char }
+        where:
+        s                              | mostFrequent | top
+        ''                             | null         | []
+        'abbccba'                      | 'b'          | ['b', 'a', 'c']
+        'zz\u044f\u044f\u044faa\u20ac' | '\u044f'     | ['\u044f', 'a', 'z']
+        'cba'                          | 'a'          | ['a', 'b', 'c']
+    }
+
+    def "CharHistogram merges counts"() {
+        given:
+        String s = 'abc\u20ac' * 500
+        when:
+        Chapter1.CharHistogram merged = Chapter1.CharHistogram.of(s.substring(0, 700))
+                .merge(new Chapter1.CharHistogram().add(s, 700, s.length()))
+        then:
+        merged == Chapter1.CharHistogram.of(s)
+        merged.count('\u20ac' as char) == 500
+        merged.total() == 2000
+    }
+
+    def "CharHistogram rejects negative k"() {
+        when:
+        new Chapter1.CharHistogram().topK(-1)
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    def "TextAnalyzer gives the same results as string methods"(String s) {
+        given:
+        Path file = Files.createTempFile('text', '.txt')
+        Files.writeString(file, s)
+        List<Closure<Chapter1.TextAnalyzer>> analyzers = [
+                { Chapter1.TextAnalyzer.symbolCounts() },
+                { Chapter1.TextAnalyzer.vowelsAndConsonants() },
+                { Chapter1.TextAnalyzer.digitsOnly() },
+                { Chapter1.TextAnalyzer.substringCount('aba') },
+                { Chapter1.TextAnalyzer.nonRepeatingSymbol() },
+        ]
+        List<Object> expected = [
+                Chapter1.countSymbols(s),
+                Chapter1.countVowelsAndConsonants(s),
+                Chapter1.isDigitsOnly(s),
+                (long) Chapter1.countSubstring(s, 'aba'),
+                Chapter1.findNonRepeatingSymbol(s),
+        ]
+        expect:
+        analyzers.collect { it().analyze(s) } == expected
+        analyzers.collect { it().analyze(new StringBuilder(s)) } == expected
+        analyzers.collect { it().analyze(CharBuffer.wrap("#${s}#", 1, s.length() + 1)) } == expected
+        analyzers.collect { it().analyze(new StringReader(s)) } == expected
+        analyzers.collect { it().analyze(file) } == expected
+        cleanup:
+        Files.delete(file)
+        where:
+        s << ['', '0123', 'abcab', 'ab' * 10000 + 'c', '12' * 10000 + 'x', '\u0430\u20acab\u0430' * 3000]
+    }
+
+    def "TextAnalyzer carries state across chunks"() {
+        given:
+        Chapter1.TextAnalyzer<Long> analyzer = Chapter1.TextAnalyzer.substringCount('aab')
+        when:
+        analyzer.accept('xaa'.toCharArray(), 0, 3)
+        analyzer.accept('abaa'.toCharArray(), 1, 4)
+        analyzer.accept('b'.toCharArray(), 0, 1)
+        then:
+        analyzer.result() == 2
+    }
+
+    def "TextAnalyzer rejects malformed files"() {
+        given:
+        Path file = Files.createTempFile('text', '.txt')
+        Files.write(file, [0x61, 0xe2, 0x82] as byte[])
+        when:
+        Chapter1.TextAnalyzer.symbolCounts().analyze(file)
+        then:
+        thrown(CharacterCodingException)
+        cleanup:
+        Files.delete(file)
+    }
+
+    def "TextStats gives the same results as string methods"(String s) {
+        given:
+        def result = Chapter1.TextStats.all().compute(s)
+        def streamed = Chapter1.TextStats.all().analyzer().analyze(new StringReader(s))
+        expect:
+        [result, streamed].every {
+            it.symbolCounts() == Chapter1.countSymbols(s) &&
+                    it.mostOccurringCharacter() == Chapter1.findMostOccurringCharacter(s) &&
+                    it.nonRepeatingSymbol() == Chapter1.findNonRepeatingSymbol(s) &&
+                    it.vowelsAndConsonants() == Chapter1.countVowelsAndConsonants(s) &&
+                    it.digitsOnly() == Chapter1.isDigitsOnly(s)
+        }
+        where:
+        s << ['', '0123', 'abcab', 'Modern car', 'ab' * 10000 + 'c', '12' * 10000 + 'x', '\u0430\u20acab\u212A\u0430' * 3000]
+    }
+
+    def "TextStats computes only selected statistics"() {
+        given:
+        def stats = Chapter1.TextStats.of(Chapter1.TextStats.Statistic.DIGITS_ONLY,
+                Chapter1.TextStats.Statistic.NON_REPEATING_SYMBOL)
+        when:
+        def result = stats.compute('1213')
+        then:
+        result.digitsOnly()
+        result.nonRepeatingSymbol() == Optional.of('2' as char)
+        when:
+        result.symbolCounts()
+        then:
+        thrown(IllegalStateException)
+    }
+
+    def "SubstringMatcher chooses algorithm by pattern"() {
+        expect:
+        Chapter1.SubstringMatcher.compile(pattern).algorithm() == algorithm
+        where:
+        pattern           | algorithm
+        'a'               | Chapter1.SubstringMatcher.Algorithm.SINGLE_CHARACTER
+        'abc'             | Chapter1.SubstringMatcher.Algorithm.BOYER_MOORE_HORSPOOL
+        'abab'            | Chapter1.SubstringMatcher.Algorithm.KNUTH_MORRIS_PRATT
+        'a' * 20          | Chapter1.SubstringMatcher.Algorithm.KNUTH_MORRIS_PRATT
+        'quick brown fox' | Chapter1.SubstringMatcher.Algorithm.TWO_WAY
+    }
+
+    def "SubstringMatcher finds overlapping occurrences"() {
+        given:
+        def matcher = Chapter1.SubstringMatcher.compile(pattern)
+        expect:
+        matcher.count(text) == count
+        matcher.count(new StringBuilder(text)) == count
+        matcher.indexOf(text, 0) == text.indexOf(pattern)
+        matcher.indexOf(new StringBuilder(text), 0) == text.indexOf(pattern)
+        where:
+        text                       | pattern         | count
+        'aaaa'                     | 'aa'            | 3
+        'abababa'                  | 'aba'           | 3
+        'xyz'                      | 'q'             | 0
+        'a' * 100                  | 'a' * 10        | 91
+        'a' * 100                  | 'a' * 9 + 'b'   | 0
+        'baaaaaaaaab' * 3          | 'aaaaaaaab'     | 3
+        'the quick brown fox'      | 'quick brown f' | 1
+        'abcabcabdabcabcabd'       | 'abcabcabd'     | 2
+    }
+
+    def "SubstringMatcher rejects empty pattern"() {
+        when:
+        Chapter1.SubstringMatcher.compile('')
+        then:
+        thrown(IllegalArgumentException)
+    }
 }
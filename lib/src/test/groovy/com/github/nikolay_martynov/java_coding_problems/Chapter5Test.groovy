@@ -2,6 +2,15 @@ package com.github.nikolay_martynov.java_coding_problems
 
 import spock.lang.Specification
 
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.CharBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.time.Duration
+
 class Chapter5Test extends Specification {
 
     def "SuffixTree initially empty"() {
@@ -222,4 +231,843 @@ class Chapter5Test extends Specification {
         then:
         content ==~ ['cat', 'dog']
     }
+
+    def "SuffixTree removing longer word keeps shorter one"() {
+        given:
+        Chapter5.SuffixTree tree = new Chapter5.SuffixTree()
+        tree.addAll(['', 'cat', 'catalog', 'dog'])
+        when:
+        boolean deleted = tree.remove('catalog')
+        then:
+        deleted
+        tree.size() == 3
+        tree.contains('cat')
+        tree.iterator().toList() ==~ ['', 'cat', 'dog']
+        when:
+        ['cat', 'dog'].each { tree.remove(it) }
+        then:
+        tree.size() == 1
+        tree.contains('')
+        tree.iterator().toList() == ['']
+    }
+
+    def "SuffixTree compact layout"() {
+        given:
+        Chapter5.SuffixTree tree = Chapter5.SuffixTree.builder().compact().build()
+        when:
+        tree.addAll(words)
+        then:
+        tree.size() == words.size()
+        words.every { tree.contains(it) }
+        !tree.contains('ca')
+        tree.iterator().toList() ==~ words
+        when:
+        words.findAll { it.length() % 2 == 0 }.each { tree.remove(it) }
+        then:
+        tree.iterator().toList() ==~ words.findAll { it.length() % 2 != 0 }
+        where:
+        words << [
+                ['cat', 'catalog', 'dog', ''],
+                ('a'..'z').collect { it + it },
+                ('a'..'z').collect { it + it } + ['\u4e00'],
+                ('a'..'z').collectMany { [it, it + 'z'] },
+        ]
+    }
+
+    def "SuffixTree compact layout takes several times less memory than maps"() {
+        given:
+        List<String> words = (0..<1000).collect { Integer.toString(it * 7919, 36) }
+        Chapter5.SuffixTree maps = Chapter5.SuffixTree.builder().build()
+        Chapter5.SuffixTree compact = Chapter5.SuffixTree.builder().compact().build()
+        when:
+        maps.addAll(words)
+        compact.addAll(words)
+        then:
+        compact.shape().nodeCount() == maps.shape().nodeCount()
+        compact.shape().estimatedBytes() * 3 < maps.shape().estimatedBytes()
+    }
+
+    def "SuffixTree custom character map"() {
+        given:
+        Chapter5.SuffixTree tree = Chapter5.SuffixTree.builder().characterMapSupplier { new TreeMap<>() }.build()
+        when:
+        tree.addAll(['cat', 'catalog', 'dog'])
+        then:
+        tree.size() == 3
+        tree.contains('catalog')
+        tree.iterator().toList() ==~ ['cat', 'catalog', 'dog']
+    }
+
+    def "SuffixTree path compressed"() {
+        given:
+        Chapter5.SuffixTree tree = builder.pathCompressed().build()
+        when:
+        tree.addAll(['catalog', 'cat', 'catastrophe', 'dog', ''])
+        then:
+        tree.size() == 5
+        tree.contains('cat')
+        tree.contains('catalog')
+        !tree.contains('ca')
+        !tree.contains('cata')
+        !tree.contains('catalogs')
+        tree.iterator().toList() ==~ ['catalog', 'cat', 'catastrophe', 'dog', '']
+        when:
+        boolean deleted = tree.remove('cat')
+        then:
+        deleted
+        !tree.remove('cata')
+        tree.size() == 4
+        tree.contains('catalog')
+        tree.contains('catastrophe')
+        when:
+        tree.remove('catastrophe')
+        tree.add('cats')
+        then:
+        tree.size() == 4
+        tree.iterator().toList() ==~ ['catalog', 'cats', 'dog', '']
+        where:
+        builder << [Chapter5.SuffixTree.builder(), Chapter5.SuffixTree.builder().compact()]
+    }
+
+    def "ConcurrentSuffixTree operations"() {
+        given:
+        Chapter5.ConcurrentSuffixTree tree = new Chapter5.ConcurrentSuffixTree()
+        when:
+        tree.addAll(['catalog', 'cat', 'dog', ''])
+        then:
+        tree.size() == 4
+        tree.contains('cat')
+        tree.contains('')
+        !tree.contains('ca')
+        !tree.add('cat')
+        tree.iterator().toList() == ['', 'cat', 'catalog', 'dog']
+        when:
+        boolean deleted = tree.remove('cat')
+        then:
+        deleted
+        !tree.remove('cat')
+        !tree.remove('ca')
+        tree.size() == 3
+        tree.contains('catalog')
+        tree.iterator().toList() == ['', 'catalog', 'dog']
+    }
+
+    def "ConcurrentSuffixTree iterator and snapshot are not affected by modifications"() {
+        given:
+        Chapter5.ConcurrentSuffixTree tree = new Chapter5.ConcurrentSuffixTree()
+        tree.addAll(['cat', 'dog'])
+        Iterator<String> iterator = tree.iterator()
+        Chapter5.ConcurrentSuffixTree snapshot = tree.snapshot()
+        when:
+        tree.remove('cat')
+        tree.add('cow')
+        snapshot.add('bat')
+        then:
+        iterator.toList() == ['cat', 'dog']
+        tree.iterator().toList() == ['cow', 'dog']
+        snapshot.iterator().toList() == ['bat', 'cat', 'dog']
+    }
+
+    def "ConcurrentSuffixTree concurrent modifications"() {
+        given:
+        Chapter5.ConcurrentSuffixTree tree = new Chapter5.ConcurrentSuffixTree()
+        int threads = 4
+        int words = 1000
+        when:
+        List<Thread> workers = (0..<threads).collect { thread ->
+            Thread.start {
+                for (int i = 0; i < words; i++) {
+                    tree.add("$thread-$i".toString())
+                    if (i % 2 == 1) {
+                        tree.remove("$thread-$i".toString())
+                    }
+                    tree.iterator().toList()
+                }
+            }
+        }
+        workers*.join()
+        then:
+        tree.size() == threads * words / 2
+        tree.iterator().toList() ==~ (0..<threads).collectMany { thread ->
+            (0..<words).findAll { it % 2 == 0 }.collect { "$thread-$it".toString() }
+        }
+    }
+
+    def "SuffixTree words with prefix"() {
+        given:
+        Chapter5.SuffixTree tree = builder.build()
+        tree.addAll(['cat', 'catalog', 'catastrophe', 'cow', 'dog', ''])
+        expect:
+        tree.countWithPrefix(prefix) == words.size()
+        tree.prefixView(prefix).size() == words.size()
+        tree.prefixView(prefix).iterator().toList() == words
+        tree.completions(prefix, 2) == words.take(2)
+        where:
+        [builder, prefix, words] << [
+                [Chapter5.SuffixTree.builder(), Chapter5.SuffixTree.builder().compact().pathCompressed()],
+                [
+                        ['', ['', 'cat', 'catalog', 'catastrophe', 'cow', 'dog']],
+                        ['c', ['cat', 'catalog', 'catastrophe', 'cow']],
+                        ['cata', ['catalog', 'catastrophe']],
+                        ['catal', ['catalog']],
+                        ['catalogs', []],
+                        ['x', []],
+                ]
+        ].combinations { b, p -> [b, p[0], p[1]] }
+    }
+
+    def "SuffixTree prefix view is backed by the tree"() {
+        given:
+        Chapter5.SuffixTree tree = new Chapter5.SuffixTree()
+        Set<String> view = tree.prefixView('ca')
+        when:
+        tree.addAll(['cat', 'dog'])
+        view.add('cab')
+        then:
+        view.iterator().toList() == ['cab', 'cat']
+        view.contains('cat')
+        !view.contains('dog')
+        tree.size() == 3
+        when:
+        view.add('dog')
+        then:
+        thrown(IllegalArgumentException)
+        when:
+        view.clear()
+        then:
+        view.isEmpty()
+        tree.iterator().toList() == ['dog']
+    }
+
+    def "SuffixTree top completions by weight"() {
+        given:
+        Chapter5.SuffixTree tree = builder.build()
+        tree.add('car', 5)
+        tree.add('cat', 10)
+        tree.add('catalog', 7)
+        tree.add('cow', 7)
+        tree.add('dog', 100)
+        tree.add('cab')
+        expect:
+        tree.topCompletions('c', 3) == ['cat', 'catalog', 'cow']
+        tree.topCompletions('ca', 10) == ['cat', 'catalog', 'car', 'cab']
+        tree.topCompletions('x', 3) == []
+        when:
+        tree.add('cat', 1)
+        tree.remove('catalog')
+        then:
+        tree.topCompletions('c', 3) == ['cow', 'car', 'cat']
+        where:
+        builder << [Chapter5.SuffixTree.builder().weighted(),
+                    Chapter5.SuffixTree.builder().compact().pathCompressed().weighted()]
+    }
+
+    def "SuffixTree forgets weights of removed words"() {
+        given:
+        Chapter5.SuffixTree tree = builder.build()
+        tree.addAll(['ca', 'cab', 'd'])
+        when:
+        tree.add('car', 5)
+        tree.add('cart', 9)
+        tree.add('cab', 3)
+        tree.add('cart', 2)
+        then:
+        tree.topCompletions('ca', 2) == ['car', 'cab']
+        when:
+        tree.remove('car')
+        tree.remove('cart')
+        tree.add('cab', 0)
+        tree.add('cart')
+        then:
+        tree.topCompletions('', 4) == ['ca', 'cab', 'cart', 'd']
+        where:
+        builder << [Chapter5.SuffixTree.builder().weighted(),
+                    Chapter5.SuffixTree.builder().compact().pathCompressed().weighted()]
+    }
+
+    def "SuffixTree keeps weights only when built weighted"() {
+        given:
+        Chapter5.SuffixTree plain = Chapter5.SuffixTree.builder().compact().build()
+        Chapter5.SuffixTree weighted = Chapter5.SuffixTree.builder().compact().weighted().build()
+        plain.addAll(['cab', 'car'])
+        weighted.addAll(['cab', 'car'])
+        expect:
+        plain.topCompletions('ca', 2) == ['cab', 'car']
+        weighted.shape().estimatedBytes() > plain.shape().estimatedBytes()
+        when:
+        plain.add('cab', 1)
+        then:
+        thrown(IllegalStateException)
+    }
+
+    def "SuffixTree freeze"() {
+        given:
+        Chapter5.SuffixTree tree = builder.build()
+        tree.addAll(['cat', 'cats', 'catalog', 'catalogs', 'dog', 'dogs', ''])
+        when:
+        Chapter5.FrozenSuffixTree frozen = tree.freeze()
+        then:
+        frozen == tree
+        frozen.size() == 7
+        frozen.contains('catalogs')
+        frozen.contains('')
+        !frozen.contains('cata')
+        !frozen.contains('catalogss')
+        frozen.countWithPrefix('cat') == 4
+        frozen.countWithPrefix('x') == 0
+        frozen.iterator().toList() == ['', 'cat', 'catalog', 'catalogs', 'cats', 'dog', 'dogs']
+        // Shared "s" endings are merged.
+        frozen.stateCount() < 'catalogsdogs'.length()
+        when:
+        tree.remove('cat')
+        then:
+        frozen.contains('cat')
+        when:
+        frozen.add('cow')
+        then:
+        thrown(UnsupportedOperationException)
+        where:
+        builder << [Chapter5.SuffixTree.builder(), Chapter5.SuffixTree.builder().compact().pathCompressed()]
+    }
+
+    def "SuffixTree freeze empty"() {
+        when:
+        Chapter5.FrozenSuffixTree frozen = new Chapter5.SuffixTree().freeze()
+        then:
+        frozen.isEmpty()
+        !frozen.contains('')
+        !frozen.iterator().hasNext()
+    }
+
+    def "FrozenSuffixTree write and map"() {
+        given:
+        Chapter5.SuffixTree tree = new Chapter5.SuffixTree()
+        tree.addAll(['cat', 'cats', 'catalog', 'dog', 'dogs', ''])
+        Path file = Files.createTempFile('suffix-tree', '.bin')
+        when:
+        tree.freeze().write(file)
+        Chapter5.FrozenSuffixTree mapped = Chapter5.FrozenSuffixTree.map(file)
+        then:
+        mapped == tree
+        mapped.iterator().toList() == ['', 'cat', 'catalog', 'cats', 'dog', 'dogs']
+        mapped.contains('cats')
+        !mapped.contains('ca')
+        mapped.countWithPrefix('cat') == 3
+        mapped.completions('cat', 2) == ['cat', 'catalog']
+        mapped.completions('x', 2) == []
+        when:
+        Chapter5.SuffixTree copy = new Chapter5.SuffixTree()
+        copy.addAll(mapped)
+        then:
+        copy == tree
+        cleanup:
+        Files.deleteIfExists(file)
+    }
+
+    def "FrozenSuffixTree map rejects other files"() {
+        given:
+        Path file = Files.createTempFile('suffix-tree', '.bin')
+        Files.writeString(file, 'This is not a suffix tree')
+        when:
+        Chapter5.FrozenSuffixTree.map(file)
+        then:
+        thrown(IOException)
+        cleanup:
+        Files.deleteIfExists(file)
+    }
+
+    def "FrozenSuffixTree map rejects files with broken counts"() {
+        given:
+        Chapter5.SuffixTree tree = new Chapter5.SuffixTree()
+        tree.addAll(['cat', 'cats', 'dog'])
+        Path file = Files.createTempFile('suffix-tree', '.bin')
+        tree.freeze().write(file)
+        FileChannel.open(file, StandardOpenOption.WRITE).withCloseable {
+            it.write(ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).putInt(0, value), position)
+        }
+        when:
+        Chapter5.FrozenSuffixTree.map(file)
+        then:
+        thrown(IOException)
+        cleanup:
+        Files.deleteIfExists(file)
+        where:
+        position | value
+        // State count, edge count and root in the header.
+        8        | -1
+        12       | -1
+        16       | -1
+        16       | 1000
+        // The first edge of the first state right after the end of word bits.
+        32       | 1
+    }
+
+    def "SuffixTree build from sorted words"() {
+        given:
+        List<String> words = ['', 'cat', 'catalog', 'catalog', 'cats', 'dog', 'dogs']
+        when:
+        Chapter5.SuffixTree sequential = builder.buildSorted(words.stream())
+        Chapter5.SuffixTree parallel = builder.buildSorted(words.parallelStream())
+        then:
+        sequential.iterator().toList() == ['', 'cat', 'catalog', 'cats', 'dog', 'dogs']
+        sequential.size() == 6
+        sequential.countWithPrefix('cat') == 3
+        parallel == sequential
+        parallel.countWithPrefix('dog') == 2
+        when:
+        sequential.add('catapult')
+        sequential.remove('cat')
+        then:
+        sequential.iterator().toList() == ['', 'catalog', 'catapult', 'cats', 'dog', 'dogs']
+        where:
+        builder << [Chapter5.SuffixTree.builder(),
+                    Chapter5.SuffixTree.builder().compact(),
+                    Chapter5.SuffixTree.builder().pathCompressed()]
+    }
+
+    def "SuffixTree build from sorted file"() {
+        given:
+        Path file = Files.createTempFile('words', '.txt')
+        Files.write(file, ['apple', 'apples', 'banana'])
+        when:
+        Chapter5.SuffixTree tree = Chapter5.SuffixTree.builder().buildSorted(file)
+        then:
+        tree.iterator().toList() == ['apple', 'apples', 'banana']
+        cleanup:
+        Files.deleteIfExists(file)
+    }
+
+    def "SuffixTree build rejects unsorted words"() {
+        when:
+        Chapter5.SuffixTree.builder().buildSorted(['dog', 'cat'].iterator())
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    def "SuffixTree cursor"() {
+        given:
+        Chapter5.SuffixTree tree = builder.build()
+        tree.addAll(['', 'cat', 'catalog', 'cats', 'dog'])
+        Chapter5.SuffixTree.Cursor cursor = tree.cursor('')
+        List<String> words = []
+        when:
+        while (cursor.next()) {
+            words << cursor.word().toString()
+        }
+        then:
+        words == ['', 'cat', 'catalog', 'cats', 'dog']
+        when:
+        cursor.reset('cat')
+        words.clear()
+        while (cursor.next()) {
+            words << cursor.word().toString()
+        }
+        then:
+        words == ['cat', 'catalog', 'cats']
+        !cursor.reset('cow').next()
+        when:
+        cursor.word()
+        then:
+        thrown(IllegalStateException)
+        where:
+        builder << [Chapter5.SuffixTree.builder(),
+                    Chapter5.SuffixTree.builder().compact(),
+                    Chapter5.SuffixTree.builder().pathCompressed()]
+    }
+
+    def "SuffixTree cursor detects modification"() {
+        given:
+        Chapter5.SuffixTree tree = new Chapter5.SuffixTree()
+        tree.addAll(['a', 'b'])
+        Chapter5.SuffixTree.Cursor cursor = tree.cursor('')
+        cursor.next()
+        when:
+        tree.add('c')
+        cursor.next()
+        then:
+        thrown(ConcurrentModificationException)
+    }
+
+    def "SuffixTree visit"() {
+        given:
+        Chapter5.SuffixTree tree = new Chapter5.SuffixTree()
+        tree.addAll(['cat', 'catalog', 'cats', 'dog'])
+        List<String> words = []
+        expect:
+        tree.visit('cat') { words << it.toString(); true }
+        words == ['cat', 'catalog', 'cats']
+        when:
+        words.clear()
+        boolean completed = tree.visit { words << it.toString(); words.size() < 2 }
+        then:
+        !completed
+        words == ['cat', 'catalog']
+    }
+
+    def "SuffixTree spliterator"() {
+        given:
+        Chapter5.SuffixTree tree = builder.build()
+        List<String> words = (0..<1000).collect { 'word' + it }.sort()
+        tree.addAll(words)
+        Spliterator<String> suffix = tree.spliterator()
+        when:
+        Spliterator<String> prefix = suffix.trySplit()
+        then:
+        prefix.estimateSize() + suffix.estimateSize() == 1000
+        Math.abs(prefix.estimateSize() - suffix.estimateSize()) < 200
+        suffix.hasCharacteristics(Spliterator.SORTED | Spliterator.SUBSIZED)
+        when:
+        List<String> visited = []
+        prefix.forEachRemaining { visited << it }
+        suffix.forEachRemaining { visited << it }
+        then:
+        visited == words
+        tree.parallelStream().filter { it.endsWith('7') }.count() == 100
+        tree.prefixView('word9').parallelStream().toList() == words.findAll { it.startsWith('word9') }
+        where:
+        builder << [Chapter5.SuffixTree.builder(),
+                    Chapter5.SuffixTree.builder().compact(),
+                    Chapter5.SuffixTree.builder().pathCompressed()]
+    }
+
+    def "GeneralizedSuffixTree substrings"() {
+        given:
+        Chapter5.GeneralizedSuffixTree tree = new Chapter5.GeneralizedSuffixTree(texts)
+        expect:
+        tree.contains(substring) == (occurrences > 0)
+        tree.countOccurrences(substring) == occurrences
+        tree.textsContaining(substring).toList() == containing
+        where:
+        texts                                 | substring || occurrences | containing
+        ['banana']                            | 'ana'     || 2           | [0]
+        ['banana']                            | 'nab'     || 0           | []
+        ['red apple', 'green apple', 'grape'] | 'ap'      || 3           | [0, 1, 2]
+        ['red apple', 'green apple', 'grape'] | 'apple'   || 2           | [0, 1]
+        ['red apple', 'green apple', 'grape'] | 'gr'      || 2           | [1, 2]
+        ['red apple', 'green apple', 'grape'] | 'e g'     || 0           | []
+        ['aaaa', 'aa']                        | 'aa'      || 4           | [0, 1]
+        []                                    | 'a'       || 0           | []
+    }
+
+    def "GeneralizedSuffixTree longest repeated substring"() {
+        expect:
+        new Chapter5.GeneralizedSuffixTree(texts).longestRepeatedSubstring() == repeated
+        where:
+        texts                   || repeated
+        ['banana']              || 'ana'
+        ['abc', 'xbcy']         || 'bc'
+        ['abc']                 || ''
+        ['mississippi']         || 'issi'
+        []                      || ''
+    }
+
+    def "SuffixTree fuzzy matches"() {
+        given:
+        Chapter5.SuffixTree tree = builder.build()
+        tree.addAll(['cat', 'cats', 'coat', 'cut', 'dog', 'at', 'scat'])
+        expect:
+        tree.fuzzyMatches('cat', 0) == ['cat']
+        tree.fuzzyMatches('cat', 1) == ['at', 'cat', 'cats', 'coat', 'cut', 'scat']
+        tree.fuzzyMatches('cta', 1) == []
+        tree.fuzzyMatches('cta', 2) == ['at', 'cat', 'cats', 'coat', 'cut']
+        tree.fuzzyMatches('dgo', 2) == ['dog']
+        tree.fuzzyMatches('cat', 1, 3) == ['cat', 'at', 'cats']
+        tree.fuzzyMatches('cat', 1, 0) == []
+        tree.fuzzyMatches('', 2) == ['at']
+        where:
+        builder << [Chapter5.SuffixTree.builder(),
+                    Chapter5.SuffixTree.builder().compact(),
+                    Chapter5.SuffixTree.builder().pathCompressed()]
+    }
+
+    def "SuffixTree fuzzy matches reject negative limits"() {
+        when:
+        new Chapter5.SuffixTree().fuzzyMatches('cat', maxEdits, limit)
+        then:
+        thrown(IllegalArgumentException)
+        where:
+        maxEdits | limit
+        -1       | 1
+        1        | -1
+    }
+
+    def "KeywordMatcher counts like countSubstring"() {
+        given:
+        Chapter5.SuffixTree tree = new Chapter5.SuffixTree()
+        tree.addAll(['he', 'she', 'his', 'hers', 'aa', ''])
+        Chapter5.KeywordMatcher matcher = tree.compileMatcher()
+        String text = 'ushers said his aaaa'
+        expect:
+        matcher.patterns() == ['aa', 'he', 'hers', 'his', 'she']
+        matcher.count(text).toList() == matcher.patterns().collect { Chapter1.countSubstring(text, it) }
+        matcher.count(new StringReader(text)).toList() == [3, 1, 1, 1, 1]
+    }
+
+    def "KeywordMatcher scan"() {
+        given:
+        Chapter5.SuffixTree tree = new Chapter5.SuffixTree()
+        tree.addAll(['he', 'she', 'hers'])
+        Chapter5.KeywordMatcher matcher = tree.compileMatcher()
+        List<List<Object>> matches = []
+        when:
+        matcher.scan(text) { pattern, start -> matches << [matcher.patterns()[pattern], start] }
+        then:
+        matches == [['she', 1L], ['he', 2L], ['hers', 2L]]
+        where:
+        text << ['ushers', CharBuffer.wrap('ushers'), new StringReader('ushers')]
+    }
+
+    def "SuffixTree navigation"() {
+        given:
+        Chapter5.SuffixTree tree = builder.build()
+        tree.addAll(['', 'cat', 'catalog', 'cats', 'dog'])
+        expect:
+        tree.first() == ''
+        tree.last() == 'dog'
+        tree.lower('cat') == ''
+        tree.floor('cat') == 'cat'
+        tree.floor('catz') == 'cats'
+        tree.ceiling('cata') == 'catalog'
+        tree.higher('cats') == 'dog'
+        tree.higher('dog') == null
+        tree.lower('') == null
+        tree.descendingIterator().toList() == ['dog', 'cats', 'catalog', 'cat', '']
+        where:
+        builder << [Chapter5.SuffixTree.builder(),
+                    Chapter5.SuffixTree.builder().compact(),
+                    Chapter5.SuffixTree.builder().pathCompressed()]
+    }
+
+    def "SuffixTree keeps order of wide hash map nodes while they change"() {
+        given:
+        Chapter5.SuffixTree tree = Chapter5.SuffixTree.builder().build()
+        List<String> words = (0..<200).collect { String.valueOf((char) (0x400 + it * 7)) }
+        tree.addAll(words.reverse())
+        List<String> kept = (0..<200).findAll { it % 3 != 0 }.collect { words[it] }
+        when:
+        (0..<200).step(3).each { tree.remove(words[it]) }
+        then:
+        tree.iterator().toList() == kept
+        tree.descendingIterator().toList() == kept.reverse()
+        tree.higher(kept[10]) == kept[11]
+        when:
+        tree.add('a')
+        then:
+        tree.first() == 'a'
+        tree.pollLast() == kept[-1]
+        tree.last() == kept[-2]
+    }
+
+    def "SuffixTree range views"() {
+        given:
+        Chapter5.SuffixTree tree = new Chapter5.SuffixTree()
+        tree.addAll(['ant', 'bee', 'cat', 'cow', 'dog', 'eel'])
+        when:
+        NavigableSet<String> range = tree.subSet('b', true, 'dog', false)
+        then:
+        range.toList() == ['bee', 'cat', 'cow']
+        range.size() == 3
+        range.first() == 'bee'
+        range.last() == 'cow'
+        range.higher('cow') == null
+        range.descendingSet().toList() == ['cow', 'cat', 'bee']
+        tree.headSet('cat').toList() == ['ant', 'bee']
+        tree.tailSet('cow', false).toList() == ['dog', 'eel']
+        when:
+        range.add('cod')
+        range.remove('bee')
+        then:
+        tree.toList() == ['ant', 'cat', 'cod', 'cow', 'dog', 'eel']
+        when:
+        range.add('fox')
+        then:
+        thrown(IllegalArgumentException)
+        when:
+        range.clear()
+        then:
+        tree.toList() == ['ant', 'dog', 'eel']
+        range.isEmpty()
+    }
+
+    def "SuffixTreeMap"() {
+        given:
+        Chapter5.SuffixTreeMap<Integer> map = new Chapter5.SuffixTreeMap<>(builder)
+        when:
+        map.put('cat', 1)
+        map.put('cats', 2)
+        map.put('dog', 3)
+        map.merge('cat', 10, Integer::sum)
+        then:
+        map == [cat: 11, cats: 2, dog: 3]
+        map.keySet().toList() == ['cat', 'cats', 'dog']
+        map.get('ca') == null
+        map.countWithPrefix('cat') == 2
+        when:
+        map.remove('cat')
+        map.entrySet().removeIf { it.value == 3 }
+        map.put('cow', 4)
+        then:
+        map == [cats: 2, cow: 4]
+        where:
+        builder << [Chapter5.SuffixTree.builder(),
+                    Chapter5.SuffixTree.builder().compact(),
+                    Chapter5.SuffixTree.builder().pathCompressed()]
+    }
+
+    def "SuffixTreeMap iterator removes keys on the way"() {
+        given:
+        Chapter5.SuffixTreeMap<Integer> map = new Chapter5.SuffixTreeMap<>(builder)
+        ['a', 'ab', 'abc', 'abcd', 'abd', 'b', 'ba'].eachWithIndex { key, i -> map.put(key, i) }
+        when:
+        map.entrySet().removeIf { it.value % 2 == 0 }
+        then:
+        map == [ab: 1, abcd: 3, b: 5]
+        map.entrySet().toList()*.key == ['ab', 'abcd', 'b']
+        when:
+        map.put('abc', 7)
+        then:
+        map.entrySet().toList()*.value == [1, 7, 3, 5]
+        where:
+        builder << [Chapter5.SuffixTree.builder(),
+                    Chapter5.SuffixTree.builder().compact(),
+                    Chapter5.SuffixTree.builder().pathCompressed()]
+    }
+
+    def "SuffixTreeMap of long"() {
+        given:
+        Chapter5.SuffixTreeMap.OfLong map = new Chapter5.SuffixTreeMap.OfLong()
+        when:
+        ['to', 'be', 'or', 'not', 'to', 'be', 'too'].each { map.addTo(it, 1) }
+        map.put('or', 5_000_000_000)
+        then:
+        map.getOrDefault('to', 0) == 2
+        map.getOrDefault('in', -1) == -1
+        map.sumWithPrefix('to') == 3
+        map.sumWithPrefix('') == 5_000_000_006
+        map.toString() == '{be=2, not=1, or=5000000000, to=2, too=1}'
+        when:
+        map.remove('to')
+        then:
+        !map.containsKey('to')
+        map.sumWithPrefix('to') == 1
+        map.size() == 4
+    }
+
+    def "SuffixTreeMap of int"() {
+        given:
+        Chapter5.SuffixTreeMap.OfInt map = new Chapter5.SuffixTreeMap.OfInt(Chapter5.SuffixTree.builder().pathCompressed())
+        when:
+        ['to', 'be', 'or', 'not', 'to', 'be', 'too'].each { map.addTo(it, 1) }
+        map.put('not', -3)
+        then:
+        map.getOrDefault('be', 0) == 2
+        map.sumWithPrefix('to') == 3
+        map.sumWithPrefix('') == 3
+        map.keySet().toList() == ['be', 'not', 'or', 'to', 'too']
+        when:
+        map.remove('to')
+        then:
+        map.addTo('to', 5) == 5
+        when:
+        map.remove('too')
+        then:
+        map.toString() == '{be=2, not=-3, or=1, to=5}'
+    }
+
+    def "StringPool returns canonical strings"() {
+        given:
+        Chapter5.StringPool pool = new Chapter5.StringPool(10)
+        String canonical = pool.intern(new String('host-1'))
+        expect:
+        pool.intern(new StringBuilder('host-1')).is(canonical)
+        pool.intern('a host-1 b'.toCharArray(), 2, 6).is(canonical)
+        pool.intern(CharBuffer.wrap('[host-1]'), 1, 7).is(canonical)
+        pool.intern('host-2') == 'host-2'
+        pool.size() == 2
+        pool.statistics() == new Chapter5.StringPool.Statistics(3, 2, 0)
+        pool.statistics().hitRate() == 0.6d
+    }
+
+    def "StringPool evicts least recently used strings"() {
+        given:
+        Chapter5.StringPool pool = new Chapter5.StringPool(2)
+        String a = pool.intern(new String('a'))
+        pool.intern('b')
+        when:
+        pool.intern('a')
+        pool.intern('c')
+        then:
+        pool.size() == 2
+        pool.intern(new String('a')).is(a)
+        pool.statistics().evictions() == 1
+        when:
+        String b = new String('b')
+        then:
+        pool.intern(b).is(b)
+    }
+
+    def "SuffixTree counts operations with recording metrics"() {
+        given:
+        Chapter5.SuffixTree.RecordingMetrics metrics = new Chapter5.SuffixTree.RecordingMetrics()
+        Chapter5.SuffixTree tree = Chapter5.SuffixTree.builder().compact().pathCompressed().metrics(metrics).build()
+        when:
+        tree.addAll(['abc', 'abd', 'abc', 'x'])
+        tree.contains('abc')
+        tree.contains('ab')
+        tree.contains('q')
+        tree.remove('x')
+        tree.remove('zz')
+        then:
+        metrics.counters() == new Chapter5.SuffixTree.RecordingMetrics.Counters(3, 1, 1, 1, 1, 2)
+        metrics.containsLatencies().length == 64
+        metrics.containsLatencies().sum() == 3
+    }
+
+    def "SuffixTree reports every top completions traversal"() {
+        given:
+        List<List<Object>> traversals = []
+        Chapter5.SuffixTree.Metrics metrics = new Chapter5.SuffixTree.Metrics() {
+            @Override
+            void traversal(String operation, String prefix, int visited, long start) {
+                traversals << [operation, prefix, visited]
+            }
+        }
+        Chapter5.SuffixTree tree = Chapter5.SuffixTree.builder().metrics(metrics).weighted().build()
+        tree.add('ab', 1)
+        when:
+        tree.topCompletions('x', 3)
+        tree.topCompletions('a', 0)
+        tree.topCompletions('a', 1)
+        then:
+        traversals == [['topCompletions', 'x', 0], ['topCompletions', 'a', 0], ['topCompletions', 'a', 2]]
+    }
+
+    def "SuffixTree recording metrics reject invalid thresholds"() {
+        when:
+        new Chapter5.SuffixTree.RecordingMetrics(slowOperation, largeTraversal)
+        then:
+        thrown(IllegalArgumentException)
+        where:
+        slowOperation         | largeTraversal
+        Duration.ofMillis(-1) | 1
+        Duration.ZERO         | 0
+    }
+
+    def "SuffixTree describes its shape"(Chapter5.SuffixTree.Builder builder) {
+        given:
+        Chapter5.SuffixTree tree = builder.build()
+        tree.addAll(['ab', 'abc', 'abd', 'x'])
+        when:
+        Chapter5.SuffixTree.Shape shape = tree.shape()
+        then:
+        shape.nodeCount() == nodeCount
+        shape.wordDepths().toList() == wordDepths
+        shape.fanOuts().toList() == fanOuts
+        shape.estimatedBytes() > 0
+        builder.build().shape().nodeCount() == 0
+        where:
+        builder                                                     | nodeCount | wordDepths   | fanOuts
+        Chapter5.SuffixTree.builder()                               | 6         | [0, 1, 1, 2] | [3, 1, 2]
+        Chapter5.SuffixTree.builder().compact().pathCompressed()    | 5         | [0, 2, 2]    | [3, 0, 2]
+    }
 }